@@ -6,8 +6,10 @@ import java.util.*;
  */
 public abstract class AIPlayer extends Player {
     public static void registerAllAIPlayers() {
-        registerAIPlayerType("RandomAI", RandomAI.class);
-        registerAIPlayerType("GreedyAI", GreedyAI.class);
+        registerIfPresent("RandomAI");
+        registerIfPresent("GreedyAI");
+        registerAIPlayerType("AlphaBetaAI", AlphaBetaAI.class);
+        registerAIPlayerType("MctsAI", MctsAI.class);
         // Add more AIPlayer subclasses here as needed
     }
     @Override
@@ -18,10 +20,26 @@ public abstract class AIPlayer extends Player {
     // Map of AI player types and their corresponding classes
     private static final Map<String, Class<? extends AIPlayer>> aiPlayerRegistry = new HashMap<>();
 
+    // The book consulted by bookMove before searching, or null for none
+    private OpeningBook openingBook = OpeningBook.getDefault();
+
+    // Makes the discs of the moves returned by toMove
+    private final PlayerDiscs discs = new PlayerDiscs(this);
+
     public AIPlayer(boolean isPlayerOne) {
         super(isPlayerOne);
     }
 
+    // Registers a class by name, so that the tools that do not play RandomAI or GreedyAI (LogicBenchmark, Perft,
+    // ReferenceCheck) compile and run in a checkout without them
+    private static void registerIfPresent(String className) {
+        try {
+            registerAIPlayerType(className, Class.forName(className).asSubclass(AIPlayer.class));
+        } catch (ClassNotFoundException e) {
+            // Not part of this build
+        }
+    }
+
     // Register AI player types
     protected static void registerAIPlayerType(String name, Class<? extends AIPlayer> aiPlayerClass) {
         aiPlayerRegistry.put(name, aiPlayerClass);
@@ -45,4 +63,49 @@ public abstract class AIPlayer extends Player {
         return new ArrayList<>(aiPlayerRegistry.keySet());
     }
     public abstract Move makeMove(PlayableLogic gameStatus);
+
+    /**
+     * Looks the current position up in the opening book, so that makeMove can answer at once
+     * in the first moves of the game instead of searching.
+     *
+     * @param gameStatus The current game state.
+     * @return The book move, or null if there is no book, the board is not 8x8 or the position is not in the book.
+     */
+    protected Move bookMove(PlayableLogic gameStatus) {
+        if (openingBook == null || gameStatus.getBoardSize() != Bitboard.SIZE)
+            return null;
+        int move = openingBook.probe(Bitboard.from(gameStatus));
+        return move < 0 ? null : toMove(move);
+    }
+
+    /**
+     * Converts an encoded move to a Move with a new disc of this player.
+     *
+     * @param move A move encoded by {@link AlphaBetaSearch#encode(int, int)}.
+     * @return The corresponding Move.
+     */
+    protected Move toMove(int move) {
+        int square = AlphaBetaSearch.square(move);
+        return toMove(new Position(square / Bitboard.SIZE, square % Bitboard.SIZE), AlphaBetaSearch.type(move));
+    }
+
+    /**
+     * @param position The square to place the disc on.
+     * @param type     The disc type, SIMPLE, UNFLIPPABLE or BOMB of Bitboard.
+     * @return The Move with a new disc of this player of that type.
+     */
+    protected Move toMove(Position position, int type) {
+        return new Move(position, discs.get(type));
+    }
+
+    /**
+     * @param openingBook The book to consult before searching, or null not to use one.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
 }
\ No newline at end of file
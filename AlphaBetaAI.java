@@ -0,0 +1,293 @@
+/**
+ * An AI player that searches the game tree with negamax alpha-beta pruning and iterative deepening.
+ * Every move is searched for a fixed time budget (in milliseconds), which can be set with the
+ * "reversi.ai.budgetMs" system property or with {@link #setTimeBudget(long)}.
+ * The budget is enforced inside the search itself, so makeMove returns on time even when it is
+ * called from the GUI's Swing timer. The search aims a tenth of the budget (at most 5 ms) early, to leave room
+ * for the clock polling interval, unwinding the search and the thread being descheduled.
+ * The search can run on several threads (Lazy SMP, see {@link LazySmpSearch}); the number of threads
+ * is set with the "reversi.ai.threads" system property or with {@link #setThreads(int)}.
+ * The leaves are evaluated with the pattern weights named by "reversi.ai.weights" when there are some (see
+ * {@link PatternEvaluator}), and with classic positional weights otherwise.
+ * The opening book, if any, is consulted before searching (see {@link OpeningBook}).
+ * Once few squares are left empty ("reversi.ai.endgameEmpties", 14 by default, 0 to turn it off), the game is
+ * solved exactly instead (see {@link EndgameSolver}); if the solver cannot finish within three quarters of the
+ * budget, the usual search gets the rest of it.
+ * With pondering turned on ("reversi.ai.ponder" or {@link #setPondering(boolean)}), the AI goes on searching on
+ * the opponent's time after each searched move, on the position the predicted reply leads to (see
+ * {@link Ponderer}); the predicted reply is the best move the transposition table holds for the opponent.
+ * On boards of other sizes (see {@link GridGameLogic}), the move is searched by a single-threaded
+ * {@link GridSearch} for the same budget, without book, patterns or endgame solver.
+ */
+public class AlphaBetaAI extends AIPlayer {
+    private static final long DEFAULT_BUDGET_MS = 500;
+    private static final int TABLE_MEGABYTES = 16;
+    private static final int DEFAULT_ENDGAME_EMPTIES = 14;
+    private static final long MAX_SAFETY_MARGIN_NANOS = 5_000_000L;
+
+    private final TranspositionTable table = TranspositionTable.ofMegabytes(TABLE_MEGABYTES);
+    private PatternWeights weights = PatternWeights.getDefault();
+    private LazySmpSearch search = new LazySmpSearch(table, Integer.getInteger("reversi.ai.threads", 1), weights);
+    private final EndgameSolver solver = new EndgameSolver(table);
+    private GridSearch gridSearch; // created on the first move on a board that is not 8x8
+    private Ponderer ponderer = Boolean.getBoolean("reversi.ai.ponder") ? new Ponderer(table, weights) : null;
+    private long timeBudgetMs = Long.getLong("reversi.ai.budgetMs", DEFAULT_BUDGET_MS);
+    private int endgameEmpties = Integer.getInteger("reversi.ai.endgameEmpties", DEFAULT_ENDGAME_EMPTIES);
+    private boolean lastSolved;
+    private int lastDepth;
+    private long lastNodes;
+    private long lastNanos;
+    private long lastPonderedNanos;
+
+    public AlphaBetaAI(boolean isPlayerOne) {
+        super(isPlayerOne);
+    }
+
+    @Override
+    public Move makeMove(PlayableLogic gameStatus) {
+        long start = System.nanoTime();
+        long budget = timeBudgetMs * 1_000_000L;
+        budget -= Math.min(budget / 10, MAX_SAFETY_MARGIN_NANOS);
+        lastPonderedNanos = 0;
+        if (ponderer != null && ponderer.isPondering()) {
+            Move pondered = ponderedMove(gameStatus, start, start + budget);
+            if (pondered != null)
+                return pondered;
+        }
+        Move book = bookMove(gameStatus);
+        if (book != null) {
+            lastNanos = System.nanoTime() - start;
+            lastNodes = 0;
+            lastDepth = 0;
+            lastSolved = false;
+            return book;
+        }
+        if (gameStatus.getBoardSize() != Bitboard.SIZE)
+            return gridMove(gameStatus, start, budget);
+        Bitboard root = Bitboard.from(gameStatus);
+        int empties = Long.bitCount(root.empty());
+        if (empties <= endgameEmpties) {
+            int move = solver.solve(root, start + budget / 4 * 3);
+            if (SearchStats.ENABLED)
+                solver.addStatsTo(SearchStats.current());
+            if (move >= 0) {
+                lastNanos = System.nanoTime() - start;
+                lastNodes = solver.getNodes();
+                lastDepth = empties;
+                lastSolved = true;
+                if (SearchStats.ENABLED)
+                    SearchStats.current().depth = empties;
+                return toMove(move);
+            }
+        }
+        lastSolved = false;
+        int move = search.search(root, start + budget - System.nanoTime());
+        lastNanos = System.nanoTime() - start;
+        lastNodes = search.getNodes();
+        lastDepth = search.getCompletedDepth();
+        if (SearchStats.ENABLED) {
+            search.addStatsTo(SearchStats.current());
+            SearchStats.current().depth = lastDepth;
+        }
+        if (getOpeningBook() != null)
+            getOpeningBook().recordSearch(lastNanos);
+        if (move < 0)
+            return null;
+        if (ponderer != null)
+            ponder(root, move);
+        return toMove(move);
+    }
+
+    /**
+     * Resolves the pondering search against the position to move in.
+     *
+     * @return The move of the pondering search on a ponder hit, or null on a miss.
+     */
+    private Move ponderedMove(PlayableLogic gameStatus, long start, long deadline) {
+        if (gameStatus.getBoardSize() != Bitboard.SIZE) {
+            ponderer.cancel();
+            return null;
+        }
+        Bitboard root = Bitboard.from(gameStatus);
+        int move = ponderer.resolve(root, deadline);
+        if (move < 0)
+            return null;
+        lastPonderedNanos = ponderer.getLastGainedNanos();
+        lastNanos = System.nanoTime() - start + lastPonderedNanos;
+        lastNodes = ponderer.getNodes();
+        lastDepth = ponderer.getCompletedDepth();
+        lastSolved = false;
+        if (SearchStats.ENABLED) {
+            ponderer.addStatsTo(SearchStats.current());
+            SearchStats.current().depth = lastDepth;
+        }
+        ponder(root, move);
+        return toMove(move);
+    }
+
+    /**
+     * Starts pondering on the position after the move and the opponent's predicted reply, unless there is no
+     * prediction, the game ends, or the endgame solver will take over anyway.
+     */
+    private void ponder(Bitboard root, int move) {
+        Bitboard expected = root.copy();
+        expected.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+        int reply = TranspositionTable.move(table.probe(expected.hash()));
+        if (reply < 0 || !expected.play(AlphaBetaSearch.square(reply), AlphaBetaSearch.type(reply)))
+            return;
+        if (expected.legalMoves() == 0 || Long.bitCount(expected.empty()) <= endgameEmpties)
+            return;
+        ponderer.start(expected);
+    }
+
+    private Move gridMove(PlayableLogic gameStatus, long start, long budget) {
+        if (gridSearch == null)
+            gridSearch = new GridSearch();
+        GridBitboard root = GridBitboard.from(gameStatus);
+        int move = gridSearch.search(root, start + budget - System.nanoTime());
+        lastNanos = System.nanoTime() - start;
+        lastNodes = gridSearch.getNodes();
+        lastDepth = gridSearch.getCompletedDepth();
+        lastSolved = false;
+        if (SearchStats.ENABLED) {
+            gridSearch.addStatsTo(SearchStats.current());
+            SearchStats.current().depth = lastDepth;
+        }
+        if (move < 0)
+            return null;
+        int square = GridSearch.square(move);
+        return toMove(new Position(root.row(square), root.col(square)), GridSearch.type(move));
+    }
+
+    /**
+     * Sets the time each move may be searched for.
+     *
+     * @param milliseconds The per-move budget, in milliseconds.
+     */
+    public void setTimeBudget(long milliseconds) {
+        this.timeBudgetMs = milliseconds;
+    }
+
+    public long getTimeBudget() {
+        return timeBudgetMs;
+    }
+
+    /**
+     * Sets the number of threads searching each move.
+     *
+     * @param threads The number of search threads, at least 1.
+     */
+    public void setThreads(int threads) {
+        if (threads == search.getThreads())
+            return;
+        LazySmpSearch old = search;
+        search = new LazySmpSearch(table, threads, weights);
+        old.shutdown();
+    }
+
+    /**
+     * Sets the weights the search evaluates positions with.
+     *
+     * @param weights The pattern weights, or null for the classic evaluation.
+     */
+    public void setPatternWeights(PatternWeights weights) {
+        if (weights == this.weights)
+            return;
+        this.weights = weights;
+        if (ponderer != null) {
+            ponderer.shutdown();
+            ponderer = new Ponderer(table, weights);
+        }
+        LazySmpSearch old = search;
+        search = new LazySmpSearch(table, old.getThreads(), weights);
+        old.shutdown();
+        table.clear(); // the scores of the other evaluation are not comparable
+    }
+
+    /**
+     * Turns pondering on or off.
+     *
+     * @param pondering Whether to search on the opponent's time.
+     */
+    public void setPondering(boolean pondering) {
+        if (pondering && ponderer == null) {
+            ponderer = new Ponderer(table, weights);
+        } else if (!pondering && ponderer != null) {
+            ponderer.shutdown();
+            ponderer = null;
+        }
+    }
+
+    public boolean isPondering() {
+        return ponderer != null;
+    }
+
+    /**
+     * @return The fraction of the pondering searches that the opponent's move confirmed, 0 without pondering.
+     */
+    public double getPonderHitRate() {
+        return ponderer == null ? 0 : ponderer.getHitRate();
+    }
+
+    /**
+     * @return The time the last move was searched on the opponent's time, in milliseconds, 0 if it was not.
+     */
+    public double getLastPonderedMillis() {
+        return lastPonderedNanos / 1e6;
+    }
+
+    public PatternWeights getPatternWeights() {
+        return weights;
+    }
+
+    public int getThreads() {
+        return search.getThreads();
+    }
+
+    /**
+     * Sets the number of empty squares from which the game is solved exactly.
+     *
+     * @param empties The largest number of empty squares to solve, 0 never to solve.
+     */
+    public void setEndgameEmpties(int empties) {
+        this.endgameEmpties = empties;
+    }
+
+    public int getEndgameEmpties() {
+        return endgameEmpties;
+    }
+
+    /**
+     * @return Whether the last move was chosen by the endgame solver, i.e. is perfect play.
+     */
+    public boolean wasLastMoveSolved() {
+        return lastSolved;
+    }
+
+    /**
+     * @return The deepest iteration completed during the last move.
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return The number of nodes searched during the last move.
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    /**
+     * @return The search speed of the last move, in nodes per second.
+     */
+    public long getLastNodesPerSecond() {
+        return lastNanos == 0 ? 0 : lastNodes * 1_000_000_000L / lastNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "AlphaBetaAI(" + (lastSolved ? "solved " : "depth ") + lastDepth + ", " + lastNodes + " nodes, "
+                + getLastNodesPerSecond() + " nodes/s)";
+    }
+}
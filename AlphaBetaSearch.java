@@ -0,0 +1,366 @@
+/**
+ * A negamax alpha-beta search over {@link Bitboard} positions, with iterative deepening and move ordering.
+ * The search polls the clock every 256 nodes (well under a millisecond) and gives up as soon as the deadline
+ * passes, returning the best move of the last fully searched depth.
+ * A move is encoded as an int: the square index in the low 6 bits and the disc type above them,
+ * so placing a simple, an unflippable or a bomb disc on the same square are distinct moves.
+ * Positions are cached in a {@link TranspositionTable}, which may be shared with other searches.
+ * The leaves are scored by a {@link PatternEvaluator} when the search is given pattern weights, and by
+ * classic positional weights otherwise.
+ * An instance is not thread safe; every searching thread needs its own.
+ */
+public class AlphaBetaSearch {
+    static final int INFINITY = 1_000_000;
+    static final int WIN = 100_000;
+    private static final int MAX_PLY = 64;
+    private static final int MAX_MOVES = 3 * 64; // every square, with up to 3 disc types
+    private static final int CLOCK_CHECK_INTERVAL = 256; // nodes between two deadline checks
+
+    // Classic positional weights: corners are stable, the squares next to them give corners away
+    private static final int[] SQUARE_WEIGHTS = {
+            100, -20, 10, 5, 5, 10, -20, 100,
+            -20, -50, -2, -2, -2, -2, -50, -20,
+            10, -2, 1, 1, 1, 1, -2, 10,
+            5, -2, 1, 0, 0, 1, -2, 5,
+            5, -2, 1, 0, 0, 1, -2, 5,
+            10, -2, 1, 1, 1, 1, -2, 10,
+            -20, -50, -2, -2, -2, -2, -50, -20,
+            100, -20, 10, 5, 5, 10, -20, 100
+    };
+
+    private final TranspositionTable table;
+    private final PatternEvaluator evaluator; // null for the classic evaluation
+    private final Bitboard board = new Bitboard(); // the searched position, changed with play/undo
+    private final int[][] moves = new int[MAX_PLY + 1][MAX_MOVES];
+    private final int[][] orderScores = new int[MAX_PLY + 1][MAX_MOVES];
+    private long deadline;
+    private boolean aborted;
+    private volatile boolean stopped; // set by another thread to end the search early
+    private long nodes;
+    private long tableProbes;   // the statistics counters are only kept when SearchStats.ENABLED
+    private long tableHits;
+    private long expandedNodes;
+    private long generatedMoves;
+    private int completedDepth;
+    private int bestScore;
+
+    /**
+     * @param table The transposition table to use; it may be shared with other searches.
+     */
+    public AlphaBetaSearch(TranspositionTable table) {
+        this(table, null);
+    }
+
+    /**
+     * @param table   The transposition table to use; it may be shared with other searches.
+     * @param weights The weights to evaluate the leaves with, or null for the classic evaluation.
+     */
+    public AlphaBetaSearch(TranspositionTable table, PatternWeights weights) {
+        this.table = table;
+        this.evaluator = weights == null ? null : new PatternEvaluator(weights);
+    }
+
+    public static int encode(int square, int type) {
+        return square | (type << 6);
+    }
+
+    public static int square(int move) {
+        return move & 63;
+    }
+
+    public static int type(int move) {
+        return move >>> 6;
+    }
+
+    /**
+     * Searches the position with iterative deepening until the deadline passes or the game tree is exhausted.
+     *
+     * @param root        The position to search; it is not modified.
+     * @param budgetNanos The time budget of the search in nanoseconds.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(Bitboard root, long budgetNanos) {
+        stopped = false;
+        return search(root, System.nanoTime() + budgetNanos, 1, Bitboard.SIZE * Bitboard.SIZE);
+    }
+
+    /**
+     * Searches the position with iterative deepening, from the first to the last given depth,
+     * until the deadline passes, {@link #stop()} is called or the game tree is exhausted.
+     * Unlike {@link #search(Bitboard, long)}, this does not clear a previous stop request
+     * (see {@link #clearStop()}), so that a coordinator may stop a search that has not started yet.
+     *
+     * @param root       The position to search; it is not modified.
+     * @param deadline   The System.nanoTime() value at which the search must end.
+     * @param firstDepth The depth of the first iteration.
+     * @param lastDepth  The depth of the last iteration.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(Bitboard root, long deadline, int firstDepth, int lastDepth) {
+        this.deadline = deadline;
+        aborted = stopped;
+        nodes = 0;
+        tableProbes = tableHits = expandedNodes = generatedMoves = 0;
+        completedDepth = 0;
+        bestScore = 0;
+        board.copyFrom(root);
+        if (evaluator != null)
+            evaluator.reset(board);
+
+        long legal = root.legalMoves();
+        if (legal == 0)
+            return -1;
+        int count = generateMoves(legal, 0, TranspositionTable.move(table.probe(root.hash())));
+        sortByScore(moves[0], orderScores[0], count);
+        int bestMove = moves[0][0];
+        int maxDepth = Math.min(lastDepth, Long.bitCount(root.empty()));
+        for (int depth = Math.min(firstDepth, maxDepth); depth <= maxDepth && !aborted; depth++) {
+            int move = searchRoot(count, depth, bestMove);
+            if (aborted)
+                break;
+            bestMove = move;
+            completedDepth = depth;
+            table.store(root.hash(), bestMove, depth, TranspositionTable.EXACT, bestScore);
+        }
+        return bestMove;
+    }
+
+    /**
+     * Searches every root move to the given depth, trying the best move of the previous iteration first.
+     */
+    private int searchRoot(int count, int depth, int previousBest) {
+        int[] rootMoves = moves[0];
+        for (int i = 0; i < count; i++) {
+            if (rootMoves[i] == previousBest) {
+                rootMoves[i] = rootMoves[0];
+                rootMoves[0] = previousBest;
+                break;
+            }
+        }
+        int alpha = -INFINITY;
+        int bestMove = rootMoves[0];
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            play(move);
+            int score = -negamax(1, depth - 1, -INFINITY, -alpha);
+            undo();
+            if (aborted)
+                return bestMove;
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+            }
+        }
+        bestScore = alpha;
+        return bestMove;
+    }
+
+    private int negamax(int ply, int depth, int alpha, int beta) {
+        // The stop flag is read at every node (a plain load on most CPUs), so that a stopped pondering search
+        // returns within microseconds of its thread running; the clock is only read every CLOCK_CHECK_INTERVAL nodes
+        if (stopped || ++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline)
+            aborted = true;
+        if (aborted)
+            return 0;
+
+        long legal = board.legalMoves();
+        if (legal == 0)
+            return finalScore(board);
+        if (depth == 0)
+            return evaluator != null ? evaluator.evaluate(board) : evaluate(board);
+
+        long hash = board.hash();
+        long entry = table.probe(hash);
+        if (SearchStats.ENABLED) {
+            tableProbes++;
+            if (entry != 0)
+                tableHits++;
+        }
+        if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= beta)
+                    || (bound == TranspositionTable.UPPER && score <= alpha))
+                return score;
+        }
+
+        int originalAlpha = alpha;
+        int count = generateMoves(legal, ply, TranspositionTable.move(entry));
+        if (SearchStats.ENABLED) {
+            expandedNodes++;
+            generatedMoves += count;
+        }
+        int[] plyMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        int best = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            // Selection sort step: bring the most promising remaining move to index i
+            int pick = i;
+            for (int j = i + 1; j < count; j++)
+                if (scores[j] > scores[pick])
+                    pick = j;
+            int move = plyMoves[pick];
+            plyMoves[pick] = plyMoves[i];
+            scores[pick] = scores[i];
+            plyMoves[i] = move;
+
+            play(move);
+            int score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+            undo();
+            if (aborted)
+                return 0;
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        int bound = best >= beta ? TranspositionTable.LOWER
+                : best <= originalAlpha ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+        table.store(hash, bestMove, depth, bound, best);
+        return best;
+    }
+
+    // Plays a move on the searched board, keeping the pattern indices in step
+    private void play(int move) {
+        board.play(square(move), type(move));
+        if (evaluator != null)
+            evaluator.play(square(move), board.lastFlips(), !board.isFirstToMove());
+    }
+
+    private void undo() {
+        if (evaluator != null)
+            evaluator.undo(square(board.lastMove()), board.lastFlips(), !board.isFirstToMove());
+        board.undo();
+    }
+
+    /**
+     * Writes every legal move of the position (one per available disc type and square) into the ply's buffers,
+     * with an ordering score: the move stored in the transposition table first, then by square weight.
+     */
+    private int generateMoves(long legal, int ply, int tableMove) {
+        int[] plyMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        boolean bombs = board.hasInventory(Bitboard.BOMB);
+        boolean unflippables = board.hasInventory(Bitboard.UNFLIPPABLE);
+        int count = 0;
+        while (legal != 0) {
+            int sq = Long.numberOfTrailingZeros(legal);
+            legal &= legal - 1;
+            int weight = SQUARE_WEIGHTS[sq];
+            plyMoves[count] = encode(sq, Bitboard.SIMPLE);
+            scores[count++] = weight;
+            if (unflippables) {
+                // An unflippable disc is worth spending where the square is valuable
+                plyMoves[count] = encode(sq, Bitboard.UNFLIPPABLE);
+                scores[count++] = weight - 10;
+            }
+            if (bombs) {
+                plyMoves[count] = encode(sq, Bitboard.BOMB);
+                scores[count++] = weight - 20;
+            }
+        }
+        for (int i = 0; i < count; i++)
+            if (plyMoves[i] == tableMove)
+                scores[i] = INFINITY;
+        return count;
+    }
+
+    private static void sortByScore(int[] plyMoves, int[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = plyMoves[i], score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                plyMoves[j + 1] = plyMoves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            plyMoves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Static evaluation from the point of view of the side to move: positional weights,
+     * mobility and the number of unflippable (permanently stable) discs.
+     */
+    static int evaluate(Bitboard board) {
+        long own = board.own(), opp = board.opponent();
+        int score = weightSum(own) - weightSum(opp);
+        int mobility = Long.bitCount(board.legalMoves(board.isFirstToMove()))
+                - Long.bitCount(board.legalMoves(!board.isFirstToMove()));
+        score += 8 * mobility;
+        score += 20 * (Long.bitCount(own & board.unflippable) - Long.bitCount(opp & board.unflippable));
+        return score;
+    }
+
+    /**
+     * The exact score of a finished game from the point of view of the side to move.
+     * Wins and losses dominate every static evaluation; the disc difference breaks ties between them.
+     */
+    static int finalScore(Bitboard board) {
+        int diff = Long.bitCount(board.own()) - Long.bitCount(board.opponent());
+        if (diff > 0)
+            return WIN + diff;
+        if (diff < 0)
+            return -WIN + diff;
+        return 0;
+    }
+
+    private static int weightSum(long mask) {
+        int sum = 0;
+        while (mask != 0) {
+            sum += SQUARE_WEIGHTS[Long.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+        }
+        return sum;
+    }
+
+    /**
+     * Asks a running search to return as soon as possible. It can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Clears a previous {@link #stop()} request, before starting a new search.
+     */
+    public void clearStop() {
+        stopped = false;
+    }
+
+    /**
+     * @return The number of nodes visited by the last search.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Adds the work of the last search to the statistics of the move being chosen.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        record.addSearch(nodes, tableProbes, tableHits, expandedNodes, generatedMoves);
+    }
+
+    /**
+     * @return The deepest iteration the last search completed.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return The score of the best move at the deepest completed iteration, for the side to move.
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+}
@@ -0,0 +1,763 @@
+import java.util.Arrays;
+
+/**
+ * A compact 8x8 Reversi position stored as bitboards.
+ * Each player owns one 64-bit mask, and two more masks mark the squares holding
+ * unflippable and bomb discs (of either owner). Square {@code row * 8 + col} maps to bit
+ * {@code row * 8 + col}.
+ * All the rules (move generation, flipping and bomb chain reactions) are computed
+ * with shift-and-mask operations, so no Disc or Position objects are needed.
+ * Moves are taken back with a make-unmake stack: every move records only its flipped-square mask and
+ * the square and type of the placed disc, so {@link #undo()} neither copies nor allocates.
+ */
+public final class Bitboard {
+    public static final int SIZE = 8;
+
+    // Disc types, in the order of Disc.getType(): "⬤", "⭕", "💣"
+    public static final int SIMPLE = 0;
+    public static final int UNFLIPPABLE = 1;
+    public static final int BOMB = 2;
+    // The last move of a pass, square | type << 6 with the type 3 that no disc has
+    public static final int PASS = 3 << 6;
+
+    private static final long NOT_A_FILE = 0xfefefefefefefefeL; // every column except column 0
+    private static final long NOT_H_FILE = 0x7f7f7f7f7f7f7f7fL; // every column except column 7
+
+    // The 8 directions as shift amounts (positive = towards higher squares), and the mask that
+    // removes the bits that wrapped around the board edge after shifting in that direction.
+    private static final int[] SHIFTS = {1, -1, 8, -8, 9, 7, -7, -9};
+    private static final long[] WRAP_MASKS = {NOT_A_FILE, NOT_H_FILE, -1L, -1L,
+            NOT_A_FILE, NOT_H_FILE, NOT_A_FILE, NOT_H_FILE};
+
+    // The directions in the order the reference GameLogic flips them: rows -1..1, then columns -1..1
+    private static final int[] FLIP_ORDER = {7, 3, 6, 1, 0, 5, 2, 4};
+
+    // The squares adjacent to each square
+    private static final long[] NEIGHBOURS = new long[64];
+    // Up to this many candidate squares, flipCounts counts them one by one, which is cheaper than the batch
+    private static final int FLIP_COUNTS_PER_SQUARE = 2;
+
+    static {
+        for (int square = 0; square < 64; square++)
+            NEIGHBOURS[square] = neighbours(1L << square);
+    }
+
+    long first;  // discs of the first player
+    long second; // discs of the second player
+    long unflippable;
+    long bombs;
+    int firstBombs, firstUnflippables;
+    int secondBombs, secondUnflippables;
+    boolean firstToMove;
+    long hash; // Zobrist hash, kept up to date by play()
+
+    // The undo stack, allocated on the first move: the flipped discs, the placed disc and the previous hash of every move
+    private long[] undoFlips;
+    private byte[] undoMoves; // square | type << 6, or PASS
+    private long[] undoHashes;
+    private int plies;
+
+    /**
+     * Creates the starting position: four simple discs in the center and full special-disc inventories.
+     *
+     * @return The initial position, with the first player to move.
+     */
+    public static Bitboard initial() {
+        Bitboard board = new Bitboard();
+        board.first = bit(3, 3) | bit(4, 4);
+        board.second = bit(3, 4) | bit(4, 3);
+        board.firstBombs = board.secondBombs = Player.initial_number_of_bombs;
+        board.firstUnflippables = board.secondUnflippables = Player.initial_number_of_unflippedable;
+        board.firstToMove = true;
+        board.hash = Zobrist.hash(board);
+        return board;
+    }
+
+    /**
+     * @return A deep copy of this position. The moves that led to it are not copied, so the copy cannot undo them.
+     */
+    public Bitboard copy() {
+        Bitboard copy = new Bitboard();
+        copy.first = first;
+        copy.second = second;
+        copy.unflippable = unflippable;
+        copy.bombs = bombs;
+        copy.firstBombs = firstBombs;
+        copy.firstUnflippables = firstUnflippables;
+        copy.secondBombs = secondBombs;
+        copy.secondUnflippables = secondUnflippables;
+        copy.firstToMove = firstToMove;
+        copy.hash = hash;
+        return copy;
+    }
+
+    /**
+     * Overwrites this position with another one, so that a search can reuse preallocated boards.
+     * The undo stack is cleared.
+     *
+     * @param other The position to copy.
+     */
+    public void copyFrom(Bitboard other) {
+        first = other.first;
+        second = other.second;
+        unflippable = other.unflippable;
+        bombs = other.bombs;
+        firstBombs = other.firstBombs;
+        firstUnflippables = other.firstUnflippables;
+        secondBombs = other.secondBombs;
+        secondUnflippables = other.secondUnflippables;
+        firstToMove = other.firstToMove;
+        hash = other.hash;
+        plies = 0;
+    }
+
+    /**
+     * Builds the bitboard of the current state of any PlayableLogic, so that AI players can search
+     * on it without going through Disc objects.
+     *
+     * @param logic The game to read (its board must be 8x8).
+     * @return A new position equal to the current state of the game.
+     */
+    public static Bitboard from(PlayableLogic logic) {
+        if (logic instanceof BitboardGameLogic)
+            return ((BitboardGameLogic) logic).getBitboard();
+        if (logic.getBoardSize() != SIZE)
+            throw new IllegalArgumentException("Only " + SIZE + "x" + SIZE + " boards are supported: " + logic.getBoardSize());
+
+        Bitboard board = new Bitboard();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                Disc disc = logic.getDiscAtPosition(new Position(row, col));
+                if (disc == null)
+                    continue;
+                long b = bit(row, col);
+                if (disc.getOwner().isPlayerOne())
+                    board.first |= b;
+                else
+                    board.second |= b;
+                if (disc instanceof UnflippableDisc)
+                    board.unflippable |= b;
+                else if (disc instanceof BombDisc)
+                    board.bombs |= b;
+            }
+        }
+        Player firstPlayer = logic.getFirstPlayer();
+        Player secondPlayer = logic.getSecondPlayer();
+        board.firstBombs = firstPlayer.getNumber_of_bombs();
+        board.firstUnflippables = firstPlayer.getNumber_of_unflippedable();
+        board.secondBombs = secondPlayer.getNumber_of_bombs();
+        board.secondUnflippables = secondPlayer.getNumber_of_unflippedable();
+        board.firstToMove = logic.isFirstPlayerTurn();
+        board.hash = Zobrist.hash(board);
+        return board;
+    }
+
+    /**
+     * Reads a position written by {@link #toText()}.
+     *
+     * @param text The 64 squares row by row, then the player to move (1 or 2), then the remaining bombs and
+     *             unflippable discs of the first player and of the second player, separated by spaces.
+     * @return The position.
+     * @throws IllegalArgumentException If the text is not a valid position.
+     */
+    public static Bitboard parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+        if (parts.length != 6 || parts[0].length() != SIZE * SIZE)
+            throw new IllegalArgumentException("Expected 64 squares, the player to move and 4 counters: " + text);
+        Bitboard board = new Bitboard();
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            char c = parts[0].charAt(square);
+            if (c == '.')
+                continue;
+            long b = 1L << square;
+            if (Character.isUpperCase(c))
+                board.first |= b;
+            else
+                board.second |= b;
+            switch (Character.toUpperCase(c)) {
+                case 'S':
+                    break;
+                case 'U':
+                    board.unflippable |= b;
+                    break;
+                case 'B':
+                    board.bombs |= b;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown square '" + c + "' in " + text);
+            }
+        }
+        if (!parts[1].equals("1") && !parts[1].equals("2"))
+            throw new IllegalArgumentException("The player to move must be 1 or 2: " + text);
+        board.firstToMove = parts[1].equals("1");
+        board.firstBombs = counter(parts[2], Player.initial_number_of_bombs);
+        board.firstUnflippables = counter(parts[3], Player.initial_number_of_unflippedable);
+        board.secondBombs = counter(parts[4], Player.initial_number_of_bombs);
+        board.secondUnflippables = counter(parts[5], Player.initial_number_of_unflippedable);
+        board.hash = Zobrist.hash(board);
+        return board;
+    }
+
+    private static int counter(String text, int max) {
+        int value = Integer.parseInt(text);
+        if (value < 0 || value > max)
+            throw new IllegalArgumentException("Counter out of range [0, " + max + "]: " + text);
+        return value;
+    }
+
+    /**
+     * Writes the position as one line of text: the 64 squares row by row ('.' for an empty square, S, U or B
+     * for a simple, unflippable or bomb disc, upper case for the first player and lower case for the second),
+     * the player to move (1 or 2), then the remaining bombs and unflippable discs of both players.
+     *
+     * @return The position as text, readable by {@link #parse(String)}.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder(80);
+        for (int square = 0; square < SIZE * SIZE; square++) {
+            int type = typeAt(square);
+            if (type < 0) {
+                text.append('.');
+                continue;
+            }
+            char c = "SUB".charAt(type);
+            text.append((first & (1L << square)) != 0 ? c : Character.toLowerCase(c));
+        }
+        return text.append(' ').append(firstToMove ? 1 : 2)
+                .append(' ').append(firstBombs).append(' ').append(firstUnflippables)
+                .append(' ').append(secondBombs).append(' ').append(secondUnflippables)
+                .toString();
+    }
+
+    public static long bit(int row, int col) {
+        return 1L << (row * SIZE + col);
+    }
+
+    public static int square(int row, int col) {
+        return row * SIZE + col;
+    }
+
+    public long own() {
+        return firstToMove ? first : second;
+    }
+
+    public long opponent() {
+        return firstToMove ? second : first;
+    }
+
+    public long empty() {
+        return ~(first | second);
+    }
+
+    /**
+     * @return Whether the two positions are the same: the same discs, player to move and inventories. The moves
+     * that led to them do not matter.
+     */
+    static boolean samePosition(Bitboard a, Bitboard b) {
+        return a.hash == b.hash && a.first == b.first && a.second == b.second && a.bombs == b.bombs
+                && a.unflippable == b.unflippable && a.firstToMove == b.firstToMove
+                && a.firstBombs == b.firstBombs && a.secondBombs == b.secondBombs
+                && a.firstUnflippables == b.firstUnflippables && a.secondUnflippables == b.secondUnflippables;
+    }
+
+    /**
+     * @return The Zobrist hash of the position (discs, side to move and special-disc inventories).
+     */
+    public long hash() {
+        return hash;
+    }
+
+    public boolean isFirstToMove() {
+        return firstToMove;
+    }
+
+    /**
+     * @param firstPlayer Which player's discs to count.
+     * @return The number of discs the player has on the board.
+     */
+    public int discCount(boolean firstPlayer) {
+        return Long.bitCount(firstPlayer ? first : second);
+    }
+
+    /**
+     * @param square A square index in [0, 64).
+     * @return The type of the disc on the square (SIMPLE, UNFLIPPABLE or BOMB), or -1 if it is empty.
+     */
+    public int typeAt(int square) {
+        long b = 1L << square;
+        if (((first | second) & b) == 0)
+            return -1;
+        if ((unflippable & b) != 0)
+            return UNFLIPPABLE;
+        return (bombs & b) != 0 ? BOMB : SIMPLE;
+    }
+
+    /**
+     * Checks whether the side to move may still place a disc of the given type.
+     *
+     * @param type SIMPLE, UNFLIPPABLE or BOMB.
+     * @return true if the player has this disc type left.
+     */
+    public boolean hasInventory(int type) {
+        switch (type) {
+            case SIMPLE:
+                return true;
+            case BOMB:
+                return (firstToMove ? firstBombs : secondBombs) > 0;
+            case UNFLIPPABLE:
+                return (firstToMove ? firstUnflippables : secondUnflippables) > 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Computes the legal squares for the side to move.
+     * For every direction, a Kogge-Stone fill from the own discs over the opponent discs finds the runs
+     * that could be captured, and a second fill from the flippable discs inside those runs keeps only
+     * the runs that would flip at least one disc (a run made only of unflippable discs is not a move).
+     *
+     * @return A mask of the empty squares where the side to move can place a disc.
+     */
+    public long legalMoves() {
+        return legalMoves(firstToMove);
+    }
+
+    /**
+     * Computes the legal squares of either player, regardless of whose turn it is
+     * (used for instance to compare the mobility of both players).
+     *
+     * @param firstPlayer Which player's moves to compute.
+     * @return A mask of the empty squares where the player can place a disc.
+     */
+    public long legalMoves(boolean firstPlayer) {
+        long own = firstPlayer ? first : second;
+        long opp = firstPlayer ? second : first;
+        long flippable = opp & ~unflippable;
+        long empty = ~(own | opp);
+        long moves = 0;
+        for (int d = 0; d < 8; d++) {
+            int s = SHIFTS[d];
+            long wrap = WRAP_MASKS[d];
+            long run = fill(own, opp & wrap, s) & ~own;
+            long capturing = fill(run & flippable, run & wrap, s);
+            moves |= shift(capturing, s) & wrap & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Fills caller-owned buffers with the legal moves of the side to move and the number of discs each one flips.
+     * Nothing is allocated, so this can be called in a loop by the GUI hint overlay or by AI players.
+     *
+     * @param squares    Receives the square index of every legal move; 64 entries are always enough.
+     * @param flipCounts Receives, at the same index, the number of discs the move flips (bombs included), as
+     *                   {@link #flipMask(int)} counts them.
+     * @return The number of legal moves written to the buffers.
+     */
+    public int legalMoves(int[] squares, int[] flipCounts) {
+        long moves = legalMoves();
+        int count = 0;
+        while (moves != 0) {
+            int square = Long.numberOfTrailingZeros(moves);
+            squares[count] = square;
+            flipCounts[count] = Long.bitCount(flipMask(square));
+            count++;
+            moves &= moves - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the discs that a move on each of the 64 squares would flip, for all the squares at once: the same
+     * counts as {@code Long.bitCount(flipMask(square))}, square by square, for a fraction of the cost.
+     * The counts are computed for the 64 squares in parallel, one bit per square in every mask, as bit-sliced
+     * counters: bit k of the count of every square is held in plane k. For every direction and every distance,
+     * a mask holds the empty squares that capture a run of exactly that length, and another the number of
+     * flippable discs in the first squares of the run (unflippable discs are enclosed but not counted); the
+     * runs of one direction do not overlap, so their counts are merged with OR and added to the total once per
+     * direction. A square whose runs capture a bomb falls back to {@link #flipMask(int)}, as the chain reaction
+     * depends on the square.
+     * The batch costs about as much as 3 calls of flipMask, so when at most 2 empty squares touch an opponent
+     * disc (and so at most 2 moves are legal, as late in the game), these squares are counted one by one instead.
+     *
+     * @param counts Receives at index {@code square} the number of discs flipped by a move there, 0 where the
+     *               move is not legal; 64 entries.
+     * @return The mask of the legal squares, as {@link #legalMoves()}.
+     */
+    public long flipCounts(int[] counts) {
+        long own = own(), opp = opponent();
+        long empty = ~(own | opp);
+        long candidates = 0; // the empty squares next to an opponent disc, a superset of the legal moves
+        for (int d = 0; d < 8; d++)
+            candidates |= shift(opp, SHIFTS[d]) & WRAP_MASKS[d];
+        candidates &= empty;
+        if (Long.bitCount(candidates) <= FLIP_COUNTS_PER_SQUARE) {
+            Arrays.fill(counts, 0, 64, 0);
+            long legal = 0;
+            for (long m = candidates; m != 0; m &= m - 1) {
+                int square = Long.numberOfTrailingZeros(m);
+                counts[square] = Long.bitCount(flipMask(square));
+                if (counts[square] > 0)
+                    legal |= 1L << square;
+            }
+            return legal;
+        }
+        long flippable = opp & ~unflippable;
+        long flippableBombs = flippable & bombs;
+        long total0 = 0, total1 = 0, total2 = 0, total3 = 0, total4 = 0, total5 = 0; // the count planes
+        long moves = 0, bombMoves = 0;
+        for (int d = 0; d < 8; d++) {
+            int s = SHIFTS[d];
+            long wrap = WRAP_MASKS[d];
+            // Shifted k times, a mask holds at every square what lies k squares away in the opposite direction
+            long opponentAt = shift(opp, s) & wrap;
+            long ownBeyond = shift(own, s) & wrap;
+            long flippableAt = shift(flippable, s) & wrap;
+            long bombAt = shift(flippableBombs, s) & wrap;
+            long prefix0 = 0, prefix1 = 0, prefix2 = 0; // flippable discs among the first squares of the run
+            long bombInRun = 0;
+            long count0 = 0, count1 = 0, count2 = 0;    // the count of the direction, at most 6
+            long run = empty & opponentAt; // the empty squares followed by k opponent discs
+            while (run != 0) {
+                long carry = flippableAt;
+                prefix0 ^= carry;
+                carry &= ~prefix0;
+                prefix1 ^= carry;
+                carry &= ~prefix1;
+                prefix2 ^= carry;
+                bombInRun |= bombAt;
+                ownBeyond = shift(ownBeyond, s) & wrap;
+                long captured = run & ownBeyond;
+                count0 |= captured & prefix0;
+                count1 |= captured & prefix1;
+                count2 |= captured & prefix2;
+                moves |= captured & (prefix0 | prefix1 | prefix2);
+                bombMoves |= captured & bombInRun;
+                opponentAt = shift(opponentAt, s) & wrap;
+                run &= opponentAt;
+                flippableAt = shift(flippableAt, s) & wrap;
+                bombAt = shift(bombAt, s) & wrap;
+            }
+            // Adds the 3-bit count of the direction to the 6-bit total
+            long carry = total0 & count0;
+            total0 ^= count0;
+            long sum = total1 ^ count1;
+            long nextCarry = (total1 & count1) | (sum & carry);
+            total1 = sum ^ carry;
+            carry = nextCarry;
+            sum = total2 ^ count2;
+            nextCarry = (total2 & count2) | (sum & carry);
+            total2 = sum ^ carry;
+            carry = nextCarry;
+            total3 ^= carry;
+            carry &= ~total3;
+            total4 ^= carry;
+            carry &= ~total4;
+            total5 ^= carry;
+        }
+
+        Arrays.fill(counts, 0, 64, 0);
+        for (long m = moves & ~bombMoves; m != 0; m &= m - 1) {
+            int square = Long.numberOfTrailingZeros(m);
+            counts[square] = (int) ((total0 >>> square & 1) | (total1 >>> square & 1) << 1
+                    | (total2 >>> square & 1) << 2 | (total3 >>> square & 1) << 3
+                    | (total4 >>> square & 1) << 4 | (total5 >>> square & 1) << 5);
+        }
+        for (long m = moves & bombMoves; m != 0; m &= m - 1) {
+            int square = Long.numberOfTrailingZeros(m);
+            counts[square] = Long.bitCount(flipMask(square));
+        }
+        return moves;
+    }
+
+    /**
+     * Computes every disc that changes owner when the side to move places a disc on the square,
+     * including the discs flipped by bomb chain reactions, with every line read from the board before the move.
+     * This is the count that countFlips reports. When a bomb's blast reaches another line of the move,
+     * {@link #play(int, int)} may flip a different set; see {@link #playFlips(int)}.
+     *
+     * @param square A square index in [0, 64).
+     * @return The mask of flipped discs, or 0 if the square is not a legal move.
+     */
+    public long flipMask(int square) {
+        long flips = lineFlips(square);
+        return (flips & bombs) == 0 ? flips : detonate(flips, opponent());
+    }
+
+    /**
+     * Computes the discs that {@link #play(int, int)} flips. The reference GameLogic flips one direction after
+     * the other on the live board, and a bomb flipped in a line explodes before the next direction is looked at,
+     * so a blast that already flipped part of a later line ends that line early, and a blast may complete a line
+     * that did not capture before the move. Without a bomb in the lines nothing depends on the order, and this is
+     * {@link #flipMask(int)}.
+     *
+     * @param square A square index in [0, 64).
+     * @return The mask of flipped discs, or 0 if the square is not a legal move.
+     */
+    public long playFlips(int square) {
+        long flips = lineFlips(square);
+        return (flips & bombs) == 0 ? flips : orderedFlips(square);
+    }
+
+    /**
+     * Replays the reference's walk for {@link #playFlips(int)}: the directions in {@link #FLIP_ORDER}, each
+     * one capturing on the board left by the previous ones.
+     */
+    private long orderedFlips(int square) {
+        long b = 1L << square;
+        long own = own(), opp = opponent();
+        long flips = 0;
+        for (int d : FLIP_ORDER) {
+            int s = SHIFTS[d];
+            long wrap = WRAP_MASKS[d];
+            long line = fill(b, opp & ~flips & wrap, s);
+            if ((shift(line, s) & wrap & (own | flips)) == 0)
+                continue;
+            long hit = line & ~b & ~unflippable;
+            flips = (hit & bombs) == 0 ? flips | hit : detonate(flips | hit, opp);
+        }
+        return flips;
+    }
+
+    /**
+     * Computes the discs flipped directly by placing a disc on the square, i.e. the flippable opponent discs
+     * enclosed in a line, without the discs flipped by bombs.
+     *
+     * @param square A square index in [0, 64).
+     * @return The mask of discs flipped in lines, or 0 if the square is not a legal move.
+     */
+    public long lineFlips(int square) {
+        long b = 1L << square;
+        if (((first | second) & b) != 0)
+            return 0;
+        long own = own(), opp = opponent();
+        long flips = 0;
+        for (int d = 0; d < 8; d++) {
+            int s = SHIFTS[d];
+            long wrap = WRAP_MASKS[d];
+            long line = fill(b, opp & wrap, s);
+            if ((shift(line, s) & wrap & own) != 0)
+                flips |= line & ~b;
+        }
+        return flips & ~unflippable;
+    }
+
+    /**
+     * Resolves bomb chain reactions: every flipped bomb flips all of its flippable opponent neighbours,
+     * which may be bombs themselves.
+     * This is an iterative worklist over bitmaps, without recursion: the worklist holds the bombs that
+     * were just flipped, and the visited bitmap the bombs that already exploded. Each round explodes the
+     * whole worklist at once, and only bombs that were not visited yet enter the next one. Every square
+     * is therefore flipped and every bomb exploded at most once, and the cost is bounded by the number of
+     * bombs on the board, however they chain.
+     *
+     * @param flips The discs flipped directly by the move.
+     * @param opp   The opponent discs before the move.
+     * @return The flips including all the discs flipped by bombs.
+     */
+    private long detonate(long flips, long opp) {
+        long victims = opp & ~unflippable;
+        long exploded = 0;
+        long worklist = flips & bombs;
+        while (worklist != 0) {
+            exploded |= worklist;
+            // A lone bomb (the common case) is a single table load instead of 8 shifts
+            long blast = (worklist & (worklist - 1)) == 0
+                    ? NEIGHBOURS[Long.numberOfTrailingZeros(worklist)]
+                    : neighbours(worklist);
+            long hit = blast & victims & ~flips;
+            flips |= hit;
+            worklist = hit & bombs & ~exploded;
+        }
+        return flips;
+    }
+
+    /**
+     * Places a disc for the side to move, flips the captured discs ({@link #playFlips(int)}) and passes the turn.
+     *
+     * @param square A square index in [0, 64).
+     * @param type   SIMPLE, UNFLIPPABLE or BOMB.
+     * @return true if the move was legal and has been played, false otherwise (the position is unchanged).
+     */
+    public boolean play(int square, int type) {
+        if (!hasInventory(type))
+            return false;
+        long flips = playFlips(square);
+        if (flips == 0)
+            return false;
+        if (undoFlips == null) {
+            undoFlips = new long[SIZE * SIZE];
+            undoMoves = new byte[SIZE * SIZE];
+            undoHashes = new long[SIZE * SIZE];
+        }
+        undoHashes[plies] = hash;
+        undoFlips[plies] = flips;
+        undoMoves[plies++] = (byte) (square | type << 6);
+
+        long b = 1L << square;
+        long h = hash ^ Zobrist.disc(firstToMove, type, square) ^ Zobrist.SECOND_TO_MOVE ^ flipHash(flips);
+        if (firstToMove) {
+            first |= flips | b;
+            second &= ~flips;
+        } else {
+            second |= flips | b;
+            first &= ~flips;
+        }
+        if (type == BOMB) {
+            bombs |= b;
+            if (firstToMove) {
+                h ^= Zobrist.bombs(true, firstBombs) ^ Zobrist.bombs(true, --firstBombs);
+            } else {
+                h ^= Zobrist.bombs(false, secondBombs) ^ Zobrist.bombs(false, --secondBombs);
+            }
+        } else if (type == UNFLIPPABLE) {
+            unflippable |= b;
+            if (firstToMove) {
+                h ^= Zobrist.unflippables(true, firstUnflippables) ^ Zobrist.unflippables(true, --firstUnflippables);
+            } else {
+                h ^= Zobrist.unflippables(false, secondUnflippables) ^ Zobrist.unflippables(false, --secondUnflippables);
+            }
+        }
+        firstToMove = !firstToMove;
+        hash = h;
+        return true;
+    }
+
+    /**
+     * Passes the turn without placing a disc. The rules of this game have no passes (a player without a valid
+     * move ends the game), so the engine never passes; this replays records of variants that have them (see
+     * {@link GameRecordWriter#PASS}). A pass goes on the undo stack like a move, and {@link #lastMove()} is then
+     * {@link #PASS}.
+     *
+     * @return true if the turn was passed, false if the side to move has a legal move or the last move was
+     * already a pass (the position is unchanged).
+     */
+    public boolean pass() {
+        if (legalMoves() != 0 || lastMove() == PASS)
+            return false;
+        // The stack holds one entry per empty square, for the moves; a pass takes one more
+        int needed = plies + 1 + Long.bitCount(empty());
+        if (undoFlips == null || undoFlips.length < needed) {
+            int capacity = Math.max(needed, undoFlips == null ? SIZE * SIZE : 2 * undoFlips.length);
+            undoFlips = undoFlips == null ? new long[capacity] : Arrays.copyOf(undoFlips, capacity);
+            undoMoves = undoMoves == null ? new byte[capacity] : Arrays.copyOf(undoMoves, capacity);
+            undoHashes = undoHashes == null ? new long[capacity] : Arrays.copyOf(undoHashes, capacity);
+        }
+        undoHashes[plies] = hash;
+        undoFlips[plies] = 0;
+        undoMoves[plies++] = (byte) PASS;
+        firstToMove = !firstToMove;
+        hash ^= Zobrist.SECOND_TO_MOVE;
+        return true;
+    }
+
+    /**
+     * Takes back the last move played on this board: removes the placed disc, gives the flipped discs
+     * back to the opponent, returns the special disc to the inventory and passes the turn back.
+     * It costs a few mask operations (the previous hash is kept on the stack) and allocates nothing.
+     *
+     * @return true if a move was taken back, false if there was no move to undo.
+     */
+    public boolean undo() {
+        if (plies == 0)
+            return false;
+        plies--;
+        if ((undoMoves[plies] & 0xff) == PASS) {
+            firstToMove = !firstToMove;
+            hash = undoHashes[plies];
+            return true;
+        }
+        long flips = undoFlips[plies];
+        int square = undoMoves[plies] & 63;
+        int type = (undoMoves[plies] & 0xff) >>> 6;
+        long b = 1L << square;
+
+        firstToMove = !firstToMove;
+        if (firstToMove) {
+            first &= ~(flips | b);
+            second |= flips;
+        } else {
+            second &= ~(flips | b);
+            first |= flips;
+        }
+        if (type == BOMB) {
+            bombs &= ~b;
+            if (firstToMove)
+                firstBombs++;
+            else
+                secondBombs++;
+        } else if (type == UNFLIPPABLE) {
+            unflippable &= ~b;
+            if (firstToMove)
+                firstUnflippables++;
+            else
+                secondUnflippables++;
+        }
+        hash = undoHashes[plies];
+        return true;
+    }
+
+    /**
+     * @return The number of moves that can be taken back with {@link #undo()}.
+     */
+    public int plies() {
+        return plies;
+    }
+
+    /**
+     * @return The last move played on this board, encoded as {@code square | type << 6}, {@link #PASS} for a pass,
+     * or -1 if there is none.
+     */
+    public int lastMove() {
+        return plies == 0 ? -1 : undoMoves[plies - 1] & 0xff;
+    }
+
+    /**
+     * @return The discs flipped by the last move played on this board (bombs included), or 0 if there is none.
+     */
+    public long lastFlips() {
+        return plies == 0 ? 0 : undoFlips[plies - 1];
+    }
+
+    /**
+     * The part of the hash that changes when the given discs change owner.
+     * Unflippable discs never flip, so the flipped discs are either bombs or simple discs.
+     */
+    private long flipHash(long flips) {
+        long h = 0;
+        for (long f = flips & bombs; f != 0; f &= f - 1)
+            h ^= Zobrist.FLIP[BOMB][Long.numberOfTrailingZeros(f)];
+        for (long f = flips & ~bombs; f != 0; f &= f - 1)
+            h ^= Zobrist.FLIP[SIMPLE][Long.numberOfTrailingZeros(f)];
+        return h;
+    }
+
+    /**
+     * @param mask A set of squares.
+     * @return All the squares adjacent (in any of the 8 directions) to a square of the mask.
+     */
+    static long neighbours(long mask) {
+        long result = 0;
+        for (int d = 0; d < 8; d++)
+            result |= shift(mask, SHIFTS[d]) & WRAP_MASKS[d];
+        return result;
+    }
+
+    /**
+     * Kogge-Stone occluded fill: extends the generator bits along one direction through the propagator bits.
+     * The propagator must already be masked against board-edge wrap for this direction.
+     */
+    static long fill(long gen, long pro, int s) {
+        gen |= pro & shift(gen, s);
+        pro &= shift(pro, s);
+        gen |= pro & shift(gen, 2 * s);
+        pro &= shift(pro, 2 * s);
+        gen |= pro & shift(gen, 4 * s);
+        return gen;
+    }
+
+    static long shift(long b, int s) {
+        return s > 0 ? b << s : b >>> -s;
+    }
+}
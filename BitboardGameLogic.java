@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PlayableLogic implementation backed by a {@link Bitboard}.
+ * The board is kept as a handful of 64-bit masks instead of a grid of Disc objects, so move generation
+ * and flip counting do not allocate. getDiscAtPosition makes a new disc of the owner and type of the square
+ * ({@link PlayerDiscs}) on every call, as the caller may keep it and change its owner.
+ * It can be used anywhere a GameLogic is expected, e.g. behind GUI_for_chess_like_games, and plays as the reference
+ * GameLogic of reversi.jar: locate_disc flips the directions one after the other on the live board, so a bomb's
+ * blast that reaches a later line of the move changes what that line flips ({@link Bitboard#playFlips(int)}),
+ * while countFlips reads every line from the board before the move ({@link Bitboard#flipMask(int)}), and the two
+ * may then differ, in the reference too. {@code ReferenceCheck reference} plays random games against the jar.
+ * Moves are taken back with the board's make-unmake stack, so undoing never copies the board.
+ * Every move, undo and reset is published to the registered {@link BoardListener}s as a {@link BoardChange},
+ * so that a view can repaint only the squares that changed.
+ * When the {@link PositionCache} is turned on, the valid moves and flip counts are read from the cache of the
+ * calling thread; the position is looked up once after every change of the board, not on every call.
+ */
+public class BitboardGameLogic implements PlayableLogic {
+    private Bitboard board = Bitboard.initial();
+    private Player firstPlayer;
+    private Player secondPlayer;
+    private PlayerDiscs firstDiscs = new PlayerDiscs(null);
+    private PlayerDiscs secondDiscs = new PlayerDiscs(null);
+    private boolean winRecorded = false; // So that a finished game is only counted once
+    private final List<BoardListener> listeners = new ArrayList<>();
+    private PositionCache cache; // the cache that holds the current position, null until it is looked up
+    private long cacheHandle;
+
+    @Override
+    public boolean locate_disc(Position a, Disc disc) {
+        if (!isOnBoard(a) || disc == null)
+            return false;
+        boolean firstMoves = board.isFirstToMove();
+        int type = typeOf(disc);
+        int square = Bitboard.square(a.row(), a.col());
+        long lineFlips = listeners.isEmpty() ? 0 : board.lineFlips(square);
+        if (!board.play(square, type))
+            return false;
+        cache = null;
+        if (!listeners.isEmpty())
+            fire(BoardChange.Kind.MOVE, square, type, board.lastFlips() & lineFlips, board.lastFlips() & ~lineFlips);
+
+        Player mover = firstMoves ? firstPlayer : secondPlayer;
+        if (mover != null) {
+            if (type == Bitboard.BOMB)
+                mover.reduce_bomb();
+            else if (type == Bitboard.UNFLIPPABLE)
+                mover.reduce_unflippedable();
+        }
+        return true;
+    }
+
+    @Override
+    public Disc getDiscAtPosition(Position position) {
+        if (!isOnBoard(position))
+            return null;
+        long b = Bitboard.bit(position.row(), position.col());
+        PlayerDiscs discs;
+        if ((board.first & b) != 0)
+            discs = firstDiscs;
+        else if ((board.second & b) != 0)
+            discs = secondDiscs;
+        else
+            return null;
+
+        if ((board.unflippable & b) != 0)
+            return discs.get(Bitboard.UNFLIPPABLE);
+        if ((board.bombs & b) != 0)
+            return discs.get(Bitboard.BOMB);
+        return discs.get(Bitboard.SIMPLE);
+    }
+
+    @Override
+    public int getBoardSize() {
+        return Bitboard.SIZE;
+    }
+
+    @Override
+    public List<Position> ValidMoves() {
+        if (SearchStats.ENABLED)
+            SearchStats.validMovesCalled();
+        PositionCache cache = cached();
+        long moves = cache != null ? cache.legalMoves(cacheHandle) : board.legalMoves();
+        List<Position> positions = new ArrayList<>(Long.bitCount(moves));
+        while (moves != 0) {
+            int square = Long.numberOfTrailingZeros(moves);
+            positions.add(new Position(square / Bitboard.SIZE, square % Bitboard.SIZE));
+            moves &= moves - 1;
+        }
+        return positions;
+    }
+
+    /**
+     * Allocation-free companion of ValidMoves(): the legal moves of the current player as a bit mask,
+     * where bit {@code row * 8 + col} is set for every valid position.
+     *
+     * @return The mask of valid positions.
+     */
+    public long validMovesMask() {
+        if (SearchStats.ENABLED)
+            SearchStats.validMovesCalled();
+        PositionCache cache = cached();
+        return cache != null ? cache.legalMoves(cacheHandle) : board.legalMoves();
+    }
+
+    /**
+     * Allocation-free companion of ValidMoves() and countFlips(Position): one pass fills caller-owned
+     * buffers with every valid square ({@code row * 8 + col}) and the number of discs it would flip.
+     *
+     * @param squares    Receives the valid squares; 64 entries are always enough.
+     * @param flipCounts Receives the flip count of each square, at the same index.
+     * @return The number of valid moves written to the buffers.
+     */
+    public int validMoves(int[] squares, int[] flipCounts) {
+        if (SearchStats.ENABLED)
+            SearchStats.validMovesCalled();
+        PositionCache cache = cached();
+        if (cache == null)
+            return board.legalMoves(squares, flipCounts);
+        int count = 0;
+        for (long moves = cache.legalMoves(cacheHandle); moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            squares[count] = square;
+            flipCounts[count++] = cache.flipCount(cacheHandle, board, square);
+        }
+        return count;
+    }
+
+    @Override
+    public int countFlips(Position a) {
+        if (SearchStats.ENABLED)
+            SearchStats.countFlipsCalled();
+        if (!isOnBoard(a))
+            return 0;
+        int square = Bitboard.square(a.row(), a.col());
+        PositionCache cache = cached();
+        return cache != null ? cache.flipCount(cacheHandle, board, square) : Long.bitCount(board.flipMask(square));
+    }
+
+    /**
+     * Batch companion of countFlips(Position): the flip counts of all 64 squares in one call, computed for all
+     * the squares at once by {@link Bitboard#flipCounts(int[])}, which is much cheaper than 64 single calls, and
+     * than one call per legal move unless there are only 1 or 2 of them.
+     *
+     * @param flipCounts Receives at index {@code row * 8 + col} the number of discs a move there flips, 0 where
+     *                   the move is not valid; 64 entries.
+     * @return The mask of valid positions, as {@link #validMovesMask()}.
+     */
+    public long countFlips(int[] flipCounts) {
+        if (SearchStats.ENABLED)
+            SearchStats.countFlipsCalled();
+        return board.flipCounts(flipCounts);
+    }
+
+    /**
+     * @return The cache of the calling thread, holding the current position under cacheHandle, or null if the
+     * cache is turned off or stepped aside for the current position.
+     */
+    private PositionCache cached() {
+        PositionCache current = PositionCache.forCurrentThread();
+        if (current != null && (current != cache
+                || cacheHandle != PositionCache.NONE && !current.isValid(cacheHandle))) {
+            cacheHandle = current.find(board);
+            cache = current;
+        }
+        return cacheHandle == PositionCache.NONE ? null : current;
+    }
+
+    @Override
+    public Player getFirstPlayer() {
+        return firstPlayer;
+    }
+
+    @Override
+    public Player getSecondPlayer() {
+        return secondPlayer;
+    }
+
+    @Override
+    public void setPlayers(Player player1, Player player2) {
+        this.firstPlayer = player1;
+        this.secondPlayer = player2;
+        this.firstDiscs = new PlayerDiscs(player1);
+        this.secondDiscs = new PlayerDiscs(player2);
+    }
+
+    @Override
+    public boolean isFirstPlayerTurn() {
+        return board.isFirstToMove();
+    }
+
+    @Override
+    public boolean isGameFinished() {
+        if (board.legalMoves() != 0)
+            return false;
+        if (!winRecorded) {
+            winRecorded = true;
+            int firstDiscs = board.discCount(true);
+            int secondDiscs = board.discCount(false);
+            if (firstDiscs > secondDiscs && firstPlayer != null)
+                firstPlayer.addWin();
+            else if (secondDiscs > firstDiscs && secondPlayer != null)
+                secondPlayer.addWin();
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        board = Bitboard.initial();
+        cache = null;
+        winRecorded = false;
+        if (firstPlayer != null)
+            firstPlayer.reset_bombs_and_unflippedable();
+        if (secondPlayer != null)
+            secondPlayer.reset_bombs_and_unflippedable();
+        if (!listeners.isEmpty())
+            fire(BoardChange.Kind.RESET, -1, -1, 0, 0);
+    }
+
+    @Override
+    public void undoLastMove() {
+        // Undo is only allowed when both players are human
+        if (firstPlayer == null || secondPlayer == null || !firstPlayer.isHuman() || !secondPlayer.isHuman())
+            return;
+        int move = board.lastMove();
+        long flips = board.lastFlips();
+        if (!board.undo())
+            return;
+        cache = null;
+        winRecorded = false;
+        if (!listeners.isEmpty()) {
+            int square = AlphaBetaSearch.square(move);
+            long lineFlips = board.lineFlips(square);
+            fire(BoardChange.Kind.UNDO, square, AlphaBetaSearch.type(move), flips & lineFlips, flips & ~lineFlips);
+        }
+        firstPlayer.number_of_bombs = board.firstBombs;
+        firstPlayer.number_of_unflippedable = board.firstUnflippables;
+        secondPlayer.number_of_bombs = board.secondBombs;
+        secondPlayer.number_of_unflippedable = board.secondUnflippables;
+    }
+
+    /**
+     * The Zobrist hash of the current position. It is updated incrementally by locate_disc and restored by
+     * undoLastMove, and covers the discs (owner and type), the player to move and both players'
+     * remaining bombs and unflippable discs.
+     *
+     * @return The hash of the current position.
+     */
+    public long getHash() {
+        return board.hash();
+    }
+
+    /**
+     * Registers a listener to be told about every change of the board.
+     *
+     * @param listener The listener to add.
+     */
+    public void addBoardListener(BoardListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeBoardListener(BoardListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(BoardChange.Kind kind, int square, int type, long lineFlips, long bombFlips) {
+        BoardChange change = new BoardChange(kind, square, type, lineFlips, bombFlips,
+                board.first, board.second, board.unflippable, board.bombs,
+                board.legalMoves(), board.isFirstToMove());
+        for (BoardListener listener : listeners)
+            listener.boardChanged(change);
+    }
+
+    /**
+     * @return A copy of the current position, which the caller is free to modify.
+     */
+    public Bitboard getBitboard() {
+        return board.copy();
+    }
+
+    private static boolean isOnBoard(Position a) {
+        return a != null && a.row() >= 0 && a.row() < Bitboard.SIZE && a.col() >= 0 && a.col() < Bitboard.SIZE;
+    }
+
+    private static int typeOf(Disc disc) {
+        if (disc instanceof BombDisc)
+            return Bitboard.BOMB;
+        if (disc instanceof UnflippableDisc)
+            return Bitboard.UNFLIPPABLE;
+        return Bitboard.SIMPLE;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * The change of the board caused by one event of a {@link BitboardGameLogic}: a move, the undo of a move,
+ * or a reset. Besides what changed, it carries the whole board after the change (as bit masks, square
+ * {@code row * 8 + col} being bit {@code row * 8 + col}), so that a listener can repaint from it on another
+ * thread, without reading the game logic again.
+ *
+ * @param kind         What happened.
+ * @param square       The square where the disc was placed (or removed, for an undo), or -1 for a reset.
+ * @param discType     The type of that disc (Bitboard.SIMPLE, UNFLIPPABLE or BOMB), or -1 for a reset.
+ * @param lineFlips    The discs that changed owner because they were enclosed in a line.
+ * @param bombFlips    The discs that changed owner because a bomb next to them was flipped.
+ * @param first        The discs of the first player after the change.
+ * @param second       The discs of the second player after the change.
+ * @param unflippable  The unflippable discs after the change.
+ * @param bombs        The bomb discs after the change.
+ * @param legalMoves   The valid moves of the player to move after the change.
+ * @param firstToMove  Whether the first player is to move after the change.
+ */
+public record BoardChange(Kind kind, int square, int discType, long lineFlips, long bombFlips,
+                          long first, long second, long unflippable, long bombs,
+                          long legalMoves, boolean firstToMove) {
+
+    public enum Kind {
+        MOVE, UNDO, RESET
+    }
+
+    /**
+     * @return The squares whose disc changed (all of them for a reset).
+     */
+    public long changedSquares() {
+        if (kind == Kind.RESET)
+            return -1L;
+        return (1L << square) | lineFlips | bombFlips;
+    }
+}
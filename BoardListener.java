@@ -0,0 +1,13 @@
+/**
+ * Receives the changes of a {@link BitboardGameLogic} board, one per move, undo or reset.
+ * The listener is called on the thread that changed the game, right after the change.
+ */
+public interface BoardListener {
+
+    /**
+     * Called after each change of the board.
+     *
+     * @param change What changed, and the board after the change.
+     */
+    void boardChanged(BoardChange change);
+}
@@ -0,0 +1,122 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * A read-only Swing view of a Reversi board, driven by {@link BoardChange} events instead of polling the
+ * game logic. Each change only repaints the buttons of the squares that changed: the placed disc, the
+ * flipped discs, and the valid-move hints that appeared, disappeared or whose flip count may have changed.
+ * It looks like the board of GUI_for_chess_like_games, and is meant for viewers that replay or watch
+ * many games quickly. Like every Swing component, it must only be used on the event dispatch thread.
+ */
+public class BoardView extends JPanel {
+    private static final int BUTTON_SIZE = 55;
+    private static final int FONT_SIZE = 20;
+    private static final String[] SYMBOLS = {"⬤", "⭕", "💣"};
+    private static final Color DARK_SQUARE = new Color(0, 0, 0);
+    private static final Color LIGHT_SQUARE = Color.WHITE;
+    private static final Color DARK_HINT = new Color(0, 100, 0);
+    private static final Color LIGHT_HINT = new Color(199, 255, 199);
+    private static final Color FIRST_PLAYER = Color.BLUE;
+    private static final Color SECOND_PLAYER = new Color(255, 0, 0);
+
+    private final JButton[] buttons = new JButton[64];
+    private final Bitboard shown = new Bitboard(); // the board currently painted
+    private long legal;      // the valid moves of the board currently painted
+    private long shownHints; // the valid moves currently highlighted
+    private boolean showHints = true;
+    private boolean showNumbers = true;
+    private long repaintedSquares;
+
+    public BoardView() {
+        super(new GridLayout(Bitboard.SIZE, Bitboard.SIZE));
+        Font font = new Font("DejaVu Sans", Font.PLAIN, FONT_SIZE);
+        for (int square = 0; square < 64; square++) {
+            JButton button = new JButton();
+            button.setPreferredSize(new Dimension(BUTTON_SIZE, BUTTON_SIZE));
+            button.setFont(font);
+            button.setBorderPainted(false);
+            button.setFocusable(false);
+            buttons[square] = button;
+            add(button);
+        }
+        update(-1L, 0, 0, 0, 0, 0, true);
+    }
+
+    /**
+     * Brings the view up to date with a change of the board, repainting only what the change affects.
+     *
+     * @param change The change, as published by {@link BitboardGameLogic}.
+     */
+    public void apply(BoardChange change) {
+        update(change.changedSquares(), change.first(), change.second(), change.unflippable(), change.bombs(),
+                change.legalMoves(), change.firstToMove());
+    }
+
+    /**
+     * Shows a whole board, e.g. after skipping several changes: only the squares whose content differs
+     * from the current view are repainted.
+     *
+     * @param board The board to show.
+     */
+    public void show(Bitboard board) {
+        long differs = (board.first ^ shown.first) | (board.second ^ shown.second)
+                | (board.unflippable ^ shown.unflippable) | (board.bombs ^ shown.bombs);
+        update(differs, board.first, board.second, board.unflippable, board.bombs,
+                board.legalMoves(), board.isFirstToMove());
+    }
+
+    private void update(long changed, long first, long second, long unflippable, long bombs,
+                        long legalMoves, boolean firstToMove) {
+        long hints = showHints ? legalMoves : 0;
+        long dirty = changed | (hints ^ shownHints);
+        if (showNumbers)
+            dirty |= hints; // flip counts depend on the whole board
+        shown.first = first;
+        shown.second = second;
+        shown.unflippable = unflippable;
+        shown.bombs = bombs;
+        shown.firstToMove = firstToMove;
+        legal = legalMoves;
+        shownHints = hints;
+        for (; dirty != 0; dirty &= dirty - 1)
+            paint(Long.numberOfTrailingZeros(dirty));
+    }
+
+    private void paint(int square) {
+        repaintedSquares++;
+        JButton button = buttons[square];
+        long b = 1L << square;
+        boolean dark = ((square / Bitboard.SIZE + square % Bitboard.SIZE) & 1) != 0;
+        boolean hint = (shownHints & b) != 0;
+        button.setBackground(hint ? (dark ? DARK_HINT : LIGHT_HINT) : (dark ? DARK_SQUARE : LIGHT_SQUARE));
+        int type = shown.typeAt(square);
+        if (type >= 0) {
+            button.setForeground((shown.first & b) != 0 ? FIRST_PLAYER : SECOND_PLAYER);
+            button.setText(SYMBOLS[type]);
+        } else if (hint && showNumbers) {
+            button.setForeground(Color.BLACK);
+            button.setText(String.valueOf(Long.bitCount(shown.flipMask(square))));
+        } else {
+            button.setText("");
+        }
+    }
+
+    /**
+     * @param showHints   Whether to color the valid moves.
+     * @param showNumbers Whether to write on the valid moves how many discs they flip.
+     */
+    public void setHints(boolean showHints, boolean showNumbers) {
+        this.showHints = showHints;
+        this.showNumbers = showNumbers;
+        shownHints = showHints ? legal : 0;
+        for (int square = 0; square < 64; square++)
+            paint(square);
+    }
+
+    /**
+     * @return The number of squares repainted since the view was created.
+     */
+    public long getRepaintedSquares() {
+        return repaintedSquares;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * A special disc that, when flipped, flips all of its neighbours as well,
+ * possibly setting off other bombs.
+ */
+public class BombDisc implements Disc {
+    private Player owner;
+
+    /**
+     * Creates a new disc owned by the given player.
+     *
+     * @param owner The player who owns the disc.
+     */
+    public BombDisc(Player owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public Player getOwner() {
+        return owner;
+    }
+
+    @Override
+    public void setOwner(Player player) {
+        this.owner = player;
+    }
+
+    @Override
+    public String getType() {
+        return "💣";
+    }
+}
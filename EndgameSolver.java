@@ -0,0 +1,497 @@
+import java.util.Random;
+
+/**
+ * An exact solver for the end of the game: it searches every move to the end of the game, so the move
+ * it returns is perfect play, and its score is the final disc difference rather than an estimate.
+ * It is meant for the last 14 to 20 empty squares, where the tree is small enough to be searched whole.
+ * <p>
+ * The remaining bombs and unflippable discs of both players are part of the position (they are read from the
+ * Player objects by {@link Bitboard#from(PlayableLogic)}), so every available disc type is tried on every
+ * square, as in {@link AlphaBetaSearch}. There are no passes: a player without a valid move ends the game.
+ * <p>
+ * Move ordering: with many empty squares, fastest-first (the moves that leave the opponent the fewest replies
+ * first), which keeps the tree narrow; with few, parity, that is the squares of the board quadrants with an
+ * odd number of empty squares first, so that the player to move tends to get the last move of each region.
+ * Where a disc can never be flipped again, the special disc types are not searched there, since they would play
+ * exactly like a simple disc while using up the inventory.
+ * Moves after the first are searched with a null window (principal variation search).
+ * The last 3, 2 and 1 empty squares have their own routines, which work on the empty squares directly
+ * without generating, scoring or storing moves; the last one does not even play its move.
+ * Scores are on the scale of {@link AlphaBetaSearch#finalScore(Bitboard)}, so the solver can share a
+ * transposition table with the search: a position solved with n empty squares is stored with depth n,
+ * which no depth-limited search can exceed.
+ * Usage: java EndgameSolver [--empties n] [--positions n] [--seed n] [--with-inventory]
+ * [--position "&lt;position text&gt;"]
+ */
+public class EndgameSolver {
+    private static final int MAX_EMPTIES = 64;
+    private static final int MAX_MOVES = 3 * 64;
+    private static final int FASTEST_FIRST_EMPTIES = 6; // above, order by opponent mobility; below, by parity
+    private static final int TABLE_EMPTIES = 6;         // positions with fewer empty squares are not stored
+    private static final int CLOCK_CHECK_INTERVAL = 1024; // nodes between two deadline checks
+    private static final long[] QUADRANTS = {
+            0x000000000f0f0f0fL, 0x00000000f0f0f0f0L, 0x0f0f0f0f00000000L, 0xf0f0f0f000000000L
+    };
+    private static final long[] QUADRANT_OF = new long[64]; // the quadrant of every square
+    private static final long[] LINES = new long[64];       // the row, column and diagonals through every square
+    private static final long[] NEIGHBOURS = new long[64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            for (long quadrant : QUADRANTS)
+                if ((quadrant & (1L << square)) != 0)
+                    QUADRANT_OF[square] = quadrant;
+            int row = square / Bitboard.SIZE, col = square % Bitboard.SIZE;
+            for (int other = 0; other < 64; other++) {
+                int r = other / Bitboard.SIZE, c = other % Bitboard.SIZE;
+                if (other != square && (r == row || c == col || r - c == row - col || r + c == row + col))
+                    LINES[square] |= 1L << other;
+            }
+            NEIGHBOURS[square] = Bitboard.neighbours(1L << square);
+        }
+    }
+
+    private final TranspositionTable table;
+    private final Bitboard board = new Bitboard();
+    private final int[][] moves = new int[MAX_EMPTIES + 1][MAX_MOVES];
+    private final int[][] orderScores = new int[MAX_EMPTIES + 1][MAX_MOVES];
+    private long deadline;
+    private boolean aborted;
+    private volatile boolean stopped;
+    private long nodes;
+    private long tableProbes; // the statistics counters are only kept when SearchStats.ENABLED
+    private long tableHits;
+    private long expandedNodes;
+    private long generatedMoves;
+    private int score;
+
+    /**
+     * @param table The transposition table to use; it may be shared with an {@link AlphaBetaSearch}.
+     */
+    public EndgameSolver(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Solves the position: finds the move with the best final result for the player to move.
+     *
+     * @param root     The position; it is not modified.
+     * @param deadline The System.nanoTime() value at which to give up.
+     * @return The best move, encoded as by {@link AlphaBetaSearch#encode(int, int)}; -1 if the player to move
+     * has no valid move, or if the deadline passed or {@link #stop()} was called before the position was solved.
+     */
+    public int solve(Bitboard root, long deadline) {
+        this.deadline = deadline;
+        aborted = stopped = false;
+        nodes = 0;
+        tableProbes = tableHits = expandedNodes = generatedMoves = 0;
+        score = 0;
+        board.copyFrom(root);
+        long legal = board.legalMoves();
+        if (legal == 0) {
+            score = AlphaBetaSearch.finalScore(board);
+            return -1;
+        }
+        int empties = Long.bitCount(board.empty());
+        int count = orderMoves(legal, empties, TranspositionTable.move(table.probe(board.hash())));
+        int[] rootMoves = moves[empties];
+        int alpha = -AlphaBetaSearch.INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int move = next(rootMoves, orderScores[empties], i, count);
+            board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+            int value;
+            if (i == 0) {
+                value = -negamax(empties - 1, -AlphaBetaSearch.INFINITY, AlphaBetaSearch.INFINITY);
+            } else {
+                value = -negamax(empties - 1, -alpha - 1, -alpha);
+                if (value > alpha && !aborted)
+                    value = -negamax(empties - 1, -AlphaBetaSearch.INFINITY, -alpha);
+            }
+            board.undo();
+            if (aborted)
+                return -1;
+            if (value > alpha) {
+                alpha = value;
+                bestMove = move;
+            }
+        }
+        score = alpha;
+        table.store(root.hash(), bestMove, empties, TranspositionTable.EXACT, alpha);
+        return bestMove;
+    }
+
+    private int negamax(int empties, int alpha, int beta) {
+        if (++nodes % CLOCK_CHECK_INTERVAL == 0 && (stopped || System.nanoTime() >= deadline))
+            aborted = true;
+        if (aborted)
+            return 0;
+        switch (empties) {
+            case 0:
+                return AlphaBetaSearch.finalScore(board);
+            case 1:
+                return last1(Long.numberOfTrailingZeros(board.empty()));
+            case 2:
+                return last2(alpha, beta);
+            case 3:
+                return last3(alpha, beta);
+            default:
+                break;
+        }
+
+        long legal = board.legalMoves();
+        if (legal == 0)
+            return AlphaBetaSearch.finalScore(board);
+        long hash = board.hash();
+        int tableMove = -1;
+        if (empties >= TABLE_EMPTIES) {
+            long entry = table.probe(hash);
+            if (SearchStats.ENABLED) {
+                tableProbes++;
+                if (entry != 0)
+                    tableHits++;
+            }
+            if (entry != 0 && TranspositionTable.depth(entry) >= empties) {
+                int value = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && value >= beta)
+                        || (bound == TranspositionTable.UPPER && value <= alpha))
+                    return value;
+            }
+            tableMove = TranspositionTable.move(entry);
+        }
+
+        int originalAlpha = alpha;
+        int count = orderMoves(legal, empties, tableMove);
+        if (SearchStats.ENABLED) {
+            expandedNodes++;
+            generatedMoves += count;
+        }
+        int[] plyMoves = moves[empties];
+        int[] scores = orderScores[empties];
+        int best = -AlphaBetaSearch.INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int move = next(plyMoves, scores, i, count);
+            board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+            int value;
+            if (i == 0) {
+                value = -negamax(empties - 1, -beta, -alpha);
+            } else {
+                // Principal variation search: prove that the move is no better with a null window first
+                value = -negamax(empties - 1, -alpha - 1, -alpha);
+                if (value > alpha && value < beta && !aborted)
+                    value = -negamax(empties - 1, -beta, -alpha);
+            }
+            board.undo();
+            if (aborted)
+                return 0;
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        if (empties >= TABLE_EMPTIES) {
+            int bound = best >= beta ? TranspositionTable.LOWER
+                    : best <= originalAlpha ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+            table.store(hash, bestMove, empties, bound, best);
+        }
+        return best;
+    }
+
+    /**
+     * The last empty square: the disc type does not matter any more (nothing can be played after it),
+     * so the result is counted from the flips without playing the move.
+     */
+    private int last1(int square) {
+        nodes++;
+        int flipped = Long.bitCount(board.playFlips(square)); // 0 when the square is not a valid move
+        int own = Long.bitCount(board.own()), opp = Long.bitCount(board.opponent());
+        if (flipped != 0) {
+            own += flipped + 1;
+            opp -= flipped;
+        }
+        return score(own - opp);
+    }
+
+    /**
+     * The last two empty squares, each answered by {@link #last1(int)}. The special disc types are only tried
+     * where the last move would flip a simple disc.
+     */
+    private int last2(int alpha, int beta) {
+        long empty = board.empty();
+        int a = Long.numberOfTrailingZeros(empty);
+        int b = 63 - Long.numberOfLeadingZeros(empty);
+        int best = -AlphaBetaSearch.INFINITY;
+        for (int i = 0; i < 2; i++) {
+            int square = i == 0 ? a : b;
+            int other = i == 0 ? b : a;
+            boolean flippable = true;
+            for (int type = Bitboard.SIMPLE; type <= Bitboard.BOMB && flippable; type++) {
+                if (!board.play(square, type)) {
+                    if (type == Bitboard.SIMPLE)
+                        break; // not a valid move
+                    continue;
+                }
+                if (type == Bitboard.SIMPLE) // a special disc the last move does not flip plays like a simple one
+                    flippable = (board.playFlips(other) & (1L << square)) != 0;
+                int value = -last1(other);
+                board.undo();
+                if (value > best) {
+                    best = value;
+                    if (value > alpha) {
+                        alpha = value;
+                        if (alpha >= beta)
+                            return best;
+                    }
+                }
+            }
+        }
+        return best == -AlphaBetaSearch.INFINITY ? AlphaBetaSearch.finalScore(board) : best;
+    }
+
+    /**
+     * The last three empty squares, with the special disc types where they may matter. Parity ordering: when two of the squares are in the
+     * same quadrant, the lone one is tried first, so that the opponent is left with the pair.
+     */
+    private int last3(int alpha, int beta) {
+        long empty = board.empty();
+        int a = Long.numberOfTrailingZeros(empty);
+        empty &= empty - 1;
+        int b = Long.numberOfTrailingZeros(empty);
+        int c = Long.numberOfTrailingZeros(empty & (empty - 1));
+        if (QUADRANT_OF[a] == QUADRANT_OF[c]) {
+            int t = a;
+            a = b;
+            b = t;
+        } else if (QUADRANT_OF[a] == QUADRANT_OF[b]) {
+            int t = a;
+            a = c;
+            c = t;
+        }
+        int best = -AlphaBetaSearch.INFINITY;
+        for (int i = 0; i < 3; i++) {
+            int square = i == 0 ? a : i == 1 ? b : c;
+            int types = mayFlip(square) ? Bitboard.BOMB : Bitboard.SIMPLE;
+            for (int type = Bitboard.SIMPLE; type <= types; type++) {
+                if (!board.play(square, type)) {
+                    if (type == Bitboard.SIMPLE)
+                        break; // not a valid move
+                    continue;
+                }
+                nodes++;
+                int value = -last2(-beta, -alpha);
+                board.undo();
+                if (value > best) {
+                    best = value;
+                    if (value > alpha) {
+                        alpha = value;
+                        if (alpha >= beta)
+                            return best;
+                    }
+                }
+            }
+        }
+        return best == -AlphaBetaSearch.INFINITY ? AlphaBetaSearch.finalScore(board) : best;
+    }
+
+    /**
+     * Writes every move of the position into the buffers of this depth, with an ordering score: the move of the
+     * transposition table first; then, with many empty squares, the fewest replies for the opponent, and with
+     * few, the squares of odd quadrants; simple discs before special ones. The special disc types are left out
+     * where the disc can never be flipped (see {@link #mayFlip(int)}).
+     */
+    private int orderMoves(long legal, int empties, int tableMove) {
+        int[] plyMoves = moves[empties];
+        int[] scores = orderScores[empties];
+        long empty = board.empty();
+        int count = 0;
+        for (; legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            int order = (Long.bitCount(empty & QUADRANT_OF[square]) & 1) != 0 ? 4 : 0;
+            if (empties > FASTEST_FIRST_EMPTIES) {
+                board.play(square, Bitboard.SIMPLE); // the replies hardly depend on the disc type
+                long replies = board.legalMoves();
+                if (replies != 0)
+                    order -= 16 * Long.bitCount(replies);
+                else // the move ends the game: first if it wins, last if it loses
+                    order += AlphaBetaSearch.finalScore(board) < 0 ? 1000 : -1000;
+                board.undo();
+            }
+            int types = mayFlip(square) ? Bitboard.BOMB : Bitboard.SIMPLE;
+            for (int type = Bitboard.SIMPLE; type <= types; type++) {
+                if (!board.hasInventory(type))
+                    continue;
+                int move = AlphaBetaSearch.encode(square, type);
+                plyMoves[count] = move;
+                scores[count++] = move == tableMove ? AlphaBetaSearch.INFINITY : order - type;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tells whether a disc placed on the square might ever be flipped in the rest of the game. When it cannot,
+     * an unflippable or a bomb disc there plays exactly like a simple disc, which keeps the special disc in
+     * the inventory for later, so only the simple disc needs to be searched. A disc can only be flipped by a
+     * move on one of its 4 lines, or by the explosion of a bomb next to it; the test is that no empty square
+     * is left on its lines, and that no bomb is or can be placed next to it.
+     *
+     * @param square An empty square.
+     * @return false if a disc placed there can never be flipped.
+     */
+    private boolean mayFlip(int square) {
+        long empty = board.empty() & ~(1L << square);
+        if ((LINES[square] & empty) != 0)
+            return true;
+        long around = NEIGHBOURS[square];
+        return (around & board.bombs) != 0
+                || ((around & empty) != 0 && board.firstBombs + board.secondBombs > 0);
+    }
+
+    /**
+     * Selection sort step: brings the best remaining move to index i and returns it.
+     */
+    private static int next(int[] plyMoves, int[] scores, int i, int count) {
+        int pick = i;
+        for (int j = i + 1; j < count; j++)
+            if (scores[j] > scores[pick])
+                pick = j;
+        int move = plyMoves[pick];
+        plyMoves[pick] = plyMoves[i];
+        scores[pick] = scores[i];
+        plyMoves[i] = move;
+        return move;
+    }
+
+    // The same scale as AlphaBetaSearch.finalScore
+    private static int score(int diff) {
+        return diff > 0 ? AlphaBetaSearch.WIN + diff : diff < 0 ? -AlphaBetaSearch.WIN + diff : 0;
+    }
+
+    /**
+     * Asks a running solve to return as soon as possible. It can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return The number of nodes visited by the last solve.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Adds the work of the last solve to the statistics of the move being chosen. The last 3 empty squares
+     * are solved by dedicated routines, whose nodes count but whose moves are not generated.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        record.addSearch(nodes, tableProbes, tableHits, expandedNodes, generatedMoves);
+    }
+
+    /**
+     * @return The exact score of the last solved position, on the scale of AlphaBetaSearch.finalScore.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @param score A score on the scale of AlphaBetaSearch.finalScore.
+     * @return The final disc difference it stands for, from the point of view of the player to move.
+     */
+    public static int discDifference(int score) {
+        return score > AlphaBetaSearch.WIN / 2 ? score - AlphaBetaSearch.WIN
+                : score < -AlphaBetaSearch.WIN / 2 ? score + AlphaBetaSearch.WIN : 0;
+    }
+
+    /**
+     * Solves a benchmark set of positions with the same number of empty squares, and reports the time per solve
+     * and the speed. The set is generated from a fixed seed by random games where the players sometimes spend
+     * their special discs, so that it is the same on every run and has bombs and unflippable discs on the board.
+     * Like the usual benchmark sets, its positions have no special discs left to play, unless --with-inventory
+     * keeps the inventories reached by the random games: every special disc in hand multiplies the tree.
+     */
+    public static void main(String[] args) {
+        int empties = 20, positions = 10;
+        long seed = 20;
+        boolean withInventory = false;
+        String position = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--empties":
+                    empties = Integer.parseInt(args[++i]);
+                    break;
+                case "--positions":
+                    positions = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--with-inventory":
+                    withInventory = true;
+                    break;
+                case "--position":
+                    position = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Bitboard[] set = position != null ? new Bitboard[]{Bitboard.parse(position)}
+                : benchmarkSet(new Random(seed), empties, positions);
+        if (position == null && !withInventory) {
+            for (Bitboard board : set) {
+                board.firstBombs = board.firstUnflippables = board.secondBombs = board.secondUnflippables = 0;
+                board.hash = Zobrist.hash(board);
+            }
+        }
+
+        EndgameSolver solver = new EndgameSolver(TranspositionTable.ofMegabytes(64));
+        System.out.printf("%-80s %5s %6s %12s %10s %12s%n", "position", "move", "diff", "nodes", "seconds", "nodes/s");
+        long totalNodes = 0, totalNanos = 0;
+        for (Bitboard board : set) {
+            solver.table.clear();
+            long start = System.nanoTime();
+            int move = solver.solve(board, Long.MAX_VALUE);
+            long nanos = System.nanoTime() - start;
+            totalNodes += solver.getNodes();
+            totalNanos += nanos;
+            String played = move < 0 ? "-" : AlphaBetaSearch.square(move) + (AlphaBetaSearch.type(move) == 0 ? ""
+                    : AlphaBetaSearch.type(move) == Bitboard.BOMB ? "b" : "u");
+            System.out.printf("%-80s %5s %+6d %12d %10.3f %12.0f%n", board.toText(), played,
+                    discDifference(solver.getScore()), solver.getNodes(), nanos / 1e9, solver.getNodes() / (nanos / 1e9));
+        }
+        System.out.printf("%d positions: %.3f s per solve, %.0f nodes/s%n", set.length,
+                totalNanos / 1e9 / set.length, totalNodes / (totalNanos / 1e9));
+    }
+
+    /**
+     * Generates positions with the given number of empty squares, where the player to move has a valid move.
+     */
+    static Bitboard[] benchmarkSet(Random random, int empties, int count) {
+        Bitboard[] set = new Bitboard[count];
+        for (int n = 0; n < count; ) {
+            Bitboard board = Bitboard.initial();
+            while (Long.bitCount(board.empty()) > empties && board.legalMoves() != 0) {
+                long legal = board.legalMoves();
+                for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+                    legal &= legal - 1;
+                int type = random.nextInt(8) == 0 ? 1 + random.nextInt(2) : Bitboard.SIMPLE;
+                if (!board.play(Long.numberOfTrailingZeros(legal), type))
+                    board.play(Long.numberOfTrailingZeros(legal), Bitboard.SIMPLE);
+            }
+            if (Long.bitCount(board.empty()) == empties && board.legalMoves() != 0)
+                set[n++] = board.copy();
+        }
+        return set;
+    }
+}
@@ -0,0 +1,410 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses the games of a record file (see {@link GameRecordReader}) in bulk: every position of every game is
+ * searched to a fixed depth, and one line per position is written with the played move, the best move, the
+ * scores of both for the player to move, and whether the move was a blunder (it lost at least the blunder
+ * threshold against the best move) or a swing point (the side ahead, by at least the blunder threshold, changed
+ * with it: a position that was even, won or lost became another one of the three).
+ * The games are streamed: the reader hands them one at a time to a pool of analysis threads, and at most
+ * {@link #GAMES_IN_FLIGHT_PER_THREAD} games per thread are between the reader and the output at any time. When
+ * they are all taken, the reader waits (backpressure), so the memory used does not grow with the file.
+ * A game is replayed and searched by one thread, on a {@link Bitboard}, with a small transposition table that is
+ * cleared for every game, so that the results of a game depend neither on the number of threads nor on the games
+ * the thread analysed before.
+ * The results are written in the order of the games, as JSON lines if the output file ends with ".jsonl" and as
+ * CSV otherwise. A checkpoint file (the output file name with ".checkpoint" appended, unless set) records after
+ * every {@link #CHECKPOINT_GAMES} games how many games and bytes of output are complete; a run that was stopped
+ * at any point resumes from it: the output is cut back to the checkpointed length and the analysed games are
+ * skipped, so the output ends up the same as that of a run without interruption. The checkpoint also records
+ * the depth, the blunder threshold, the output format and the size and CRC-32 of the record file, and a run
+ * with other ones refuses to resume from it rather than mix two analyses in one output.
+ * Usage: java GameAnalyzer &lt;record file&gt; &lt;output file&gt; [--depth &lt;plies&gt;] [--threads &lt;n&gt;]
+ * [--blunder &lt;score loss&gt;] [--checkpoint &lt;file&gt;]
+ */
+public class GameAnalyzer {
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_BLUNDER = 100; // a corner, in the classic evaluation
+    public static final int GAMES_IN_FLIGHT_PER_THREAD = 4;
+    public static final int CHECKPOINT_GAMES = 1000;
+    private static final int TABLE_MEGABYTES = 1;
+    private static final String CSV_HEADER = "game,ply,player,row,col,type,best_row,best_col,best_type,"
+            + "best_score,played_score,loss,blunder,swing\n";
+
+    /**
+     * The moves of one game, as read from the record file, {@code square | type << 6} per byte.
+     */
+    record Game(long index, byte[] moves) {
+    }
+
+    /**
+     * The output lines of one analysed game.
+     */
+    record Result(long index, byte[] lines, int positions, int blunders) {
+    }
+
+    /**
+     * What a thread needs to analyse games: its own search, table and board.
+     */
+    private final class Analyst {
+        final TranspositionTable table = TranspositionTable.ofMegabytes(TABLE_MEGABYTES);
+        final AlphaBetaSearch search = new AlphaBetaSearch(table, weights);
+        final Bitboard board = new Bitboard();
+        final StringBuilder lines = new StringBuilder();
+    }
+
+    private final int depth;
+    private final int blunder;
+    private final boolean json;
+    private final PatternWeights weights = PatternWeights.getDefault();
+    private final ThreadLocal<Analyst> analysts = ThreadLocal.withInitial(Analyst::new);
+    private final BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+    private volatile Throwable failure;
+    private long positions;
+    private long resumedPositions; // the positions the checkpoint covered when the run started
+    private long blunders;
+    private int maxInFlight;
+
+    /**
+     * @param depth   The depth every position is searched to, at least 2.
+     * @param blunder The score a move must lose against the best move to be a blunder.
+     * @param json    Whether to write JSON lines rather than CSV.
+     */
+    public GameAnalyzer(int depth, int blunder, boolean json) {
+        if (depth < 2)
+            throw new IllegalArgumentException("The search depth must be at least 2: " + depth);
+        this.depth = depth;
+        this.blunder = blunder;
+        this.json = json;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java GameAnalyzer <record file> <output file> [--depth <plies>] [--threads <n>]"
+                    + " [--blunder <score loss>] [--checkpoint <file>]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Path checkpoint = Paths.get(args[1] + ".checkpoint");
+        int depth = DEFAULT_DEPTH;
+        int blunder = DEFAULT_BLUNDER;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--depth"))
+                depth = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--blunder"))
+                blunder = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--checkpoint"))
+                checkpoint = Paths.get(args[++i]);
+            else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+        GameAnalyzer analyzer = new GameAnalyzer(depth, blunder, output.toString().endsWith(".jsonl"));
+        long start = System.nanoTime();
+        long games = analyzer.analyse(input, output, checkpoint, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d games, %d positions analysed to depth %d in %.1f s (%.0f positions/s)%n", input,
+                games, analyzer.positions - analyzer.resumedPositions, depth, seconds,
+                (analyzer.positions - analyzer.resumedPositions) / seconds);
+        System.out.printf("  %d positions and %d blunders in the output, at most %d games in flight, %.1f MB of heap in use at the end%n",
+                analyzer.positions, analyzer.blunders, analyzer.maxInFlight,
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576.0);
+    }
+
+    /**
+     * Analyses the games of a record file that the checkpoint does not cover yet, and appends their lines to the
+     * output.
+     *
+     * @param input      The record file.
+     * @param output     The file the lines are written to.
+     * @param checkpoint The checkpoint of the output; it is created if it does not exist.
+     * @param threads    The number of analysis threads.
+     * @return The number of games analysed by this run.
+     * @throws IOException If a file cannot be read or written, or the checkpoint does not match the output.
+     */
+    public long analyse(Path input, Path output, Path checkpoint, int threads) throws IOException {
+        GameRecordReader reader = new GameRecordReader(input);
+        String inputKey = inputKey(input);
+        long skipped = 0;
+        long bytes = 0;
+        if (Files.exists(checkpoint)) {
+            long[] state = readCheckpoint(checkpoint, input, inputKey);
+            skipped = state[0];
+            bytes = state[1];
+            positions = resumedPositions = state[2];
+            blunders = state[3];
+            if (!Files.exists(output) || Files.size(output) < bytes)
+                throw new IOException(output + " is shorter than its checkpoint " + checkpoint);
+            for (long i = 0; i < skipped; i++)
+                if (!reader.next())
+                    throw new IOException(checkpoint + " covers more games than " + input + " holds");
+        }
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(bytes); // drops the lines written after the last checkpoint
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * GAMES_IN_FLIGHT_PER_THREAD);
+        long next = skipped;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output, StandardOpenOption.APPEND))) {
+            if (bytes == 0 && !json) {
+                byte[] header = CSV_HEADER.getBytes(StandardCharsets.US_ASCII);
+                out.write(header);
+                bytes = header.length;
+            }
+            Writer writer = new Writer(out, checkpoint, inputKey, skipped, bytes);
+            while (failure == null && reader.next()) {
+                byte[] moves = new byte[reader.moveCount()];
+                for (int i = 0; i < moves.length; i++)
+                    moves[i] = (byte) reader.move(i);
+                Game game = new Game(next++, moves);
+                acquire(inFlight, writer);
+                maxInFlight = Math.max(maxInFlight, threads * GAMES_IN_FLIGHT_PER_THREAD - inFlight.availablePermits());
+                pool.execute(() -> analyse(game));
+            }
+            while (failure == null && writer.written < next)
+                writer.drain(inFlight);
+            writer.checkpoint();
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure != null)
+            throw new IOException("The analysis failed", failure);
+        return next - skipped;
+    }
+
+    /**
+     * Takes a permit for a new game, writing the finished games while waiting, so that the reader never runs
+     * more than the permits ahead of the output.
+     */
+    private void acquire(Semaphore inFlight, Writer writer) throws IOException {
+        while (!inFlight.tryAcquire() && failure == null)
+            writer.drain(inFlight);
+    }
+
+    /**
+     * Writes the results in the order of the games, and the checkpoint every {@link #CHECKPOINT_GAMES} games.
+     * It runs on the reading thread, between reads.
+     */
+    private final class Writer {
+        private final OutputStream out;
+        private final Path checkpoint;
+        private final String inputKey;
+        private final Map<Long, Result> pending = new HashMap<>(); // finished ahead of an earlier game
+        long written;
+        long bytes;
+
+        Writer(OutputStream out, Path checkpoint, String inputKey, long written, long bytes) {
+            this.out = out;
+            this.checkpoint = checkpoint;
+            this.inputKey = inputKey;
+            this.written = written;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Waits a little for a finished game, and writes all the games that are next in order.
+         */
+        void drain(Semaphore inFlight) throws IOException {
+            Result result;
+            try {
+                result = results.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the analysis", e);
+            }
+            for (; result != null; result = results.poll())
+                pending.put(result.index(), result);
+            for (Result next = pending.remove(written); next != null; next = pending.remove(written)) {
+                out.write(next.lines());
+                bytes += next.lines().length;
+                positions += next.positions();
+                blunders += next.blunders();
+                written++;
+                inFlight.release();
+                if (written % CHECKPOINT_GAMES == 0)
+                    checkpoint();
+            }
+        }
+
+        /**
+         * Flushes the output, then replaces the checkpoint, so that it never covers lines that are not written.
+         */
+        void checkpoint() throws IOException {
+            out.flush();
+            Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            Files.writeString(temporary, "games " + written + " bytes " + bytes + " positions " + positions
+                    + " blunders " + blunders + " depth " + depth + " blunder " + blunder + " format " + format()
+                    + " " + inputKey + "\n");
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * @param input    The record file being analysed.
+     * @param inputKey The size and CRC-32 of the record file, see {@link #inputKey(Path)}.
+     * @return The games, bytes, positions and blunders the checkpoint covers.
+     * @throws IOException If the checkpoint cannot be read, or was written by another analysis.
+     */
+    private long[] readCheckpoint(Path checkpoint, Path input, String inputKey) throws IOException {
+        String[] words = Files.readString(checkpoint).trim().split("\\s+");
+        if (words.length != 18 || !words[0].equals("games") || !words[12].equals("format"))
+            throw new IOException(checkpoint + " is not a checkpoint of this version of GameAnalyzer");
+        if (Integer.parseInt(words[9]) != depth || Integer.parseInt(words[11]) != blunder)
+            throw new IOException(checkpoint + " was written with depth " + words[9] + " and blunder " + words[11]
+                    + ", not " + depth + " and " + blunder);
+        if (!words[13].equals(format()))
+            throw new IOException(checkpoint + " was written for " + words[13] + " output, not " + format());
+        String written = String.join(" ", words[14], words[15], words[16], words[17]);
+        if (!written.equals(inputKey))
+            throw new IOException(checkpoint + " was written for another record file (" + written + "), not "
+                    + input + " (" + inputKey + ")");
+        return new long[]{Long.parseLong(words[1]), Long.parseLong(words[3]), Long.parseLong(words[5]),
+                Long.parseLong(words[7])};
+    }
+
+    private String format() {
+        return json ? "jsonl" : "csv";
+    }
+
+    /**
+     * @return The size and CRC-32 of the record file, as written in the checkpoint: "input &lt;bytes&gt; crc &lt;hex&gt;".
+     */
+    static String inputKey(Path input) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+            return "input " + channel.size() + " crc " + Long.toHexString(crc.getValue());
+        }
+    }
+
+    /**
+     * Analyses one game on the calling thread and queues its lines for the writer. A game with an illegal move
+     * is reported and written without lines, so that the games after it are still analysed.
+     */
+    private void analyse(Game game) {
+        try {
+            Analyst analyst = analysts.get();
+            analyst.lines.setLength(0);
+            int[] counts;
+            try {
+                counts = analyse(game, analyst);
+            } catch (IllegalStateException e) {
+                System.err.println("Game " + game.index() + " skipped: " + e.getMessage());
+                analyst.lines.setLength(0);
+                counts = new int[2];
+            }
+            results.add(new Result(game.index(), analyst.lines.toString().getBytes(StandardCharsets.US_ASCII),
+                    counts[0], counts[1]));
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Replays the game, and searches the position before every move: to the full depth for the best move, and,
+     * when the played move is another one, the position after it one ply less deep for the played move's score.
+     *
+     * @return The number of positions and of blunders.
+     */
+    private int[] analyse(Game game, Analyst analyst) {
+        analyst.table.clear();
+        Bitboard board = analyst.board;
+        board.copyFrom(Bitboard.initial());
+        AlphaBetaSearch search = analyst.search;
+        int positions = 0, blunders = 0;
+        for (int ply = 0; ply < game.moves().length; ply++) {
+            int move = game.moves()[ply] & 0xff;
+            if (move == GameRecordWriter.PASS) {
+                if (!board.pass())
+                    throw new IllegalStateException("illegal pass at ply " + ply);
+                continue;
+            }
+            boolean firstMoves = board.isFirstToMove();
+            int best = search.search(board, Long.MAX_VALUE, 1, depth);
+            int bestScore = search.getBestScore();
+            if (!board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move)))
+                throw new IllegalStateException("illegal move at ply " + ply);
+            int playedScore = bestScore;
+            if (move != best && board.legalMoves() == 0) {
+                playedScore = -AlphaBetaSearch.finalScore(board);
+            } else if (move != best) {
+                search.search(board, Long.MAX_VALUE, 1, depth - 1);
+                playedScore = -search.getBestScore();
+            }
+            int loss = bestScore - playedScore;
+            boolean isBlunder = loss >= blunder;
+            int before = leader(firstMoves ? bestScore : -bestScore);
+            int after = leader(firstMoves ? playedScore : -playedScore);
+            appendLine(analyst.lines, game.index(), ply, firstMoves, move, best, bestScore, playedScore, loss,
+                    isBlunder, before != after);
+            positions++;
+            if (isBlunder)
+                blunders++;
+        }
+        return new int[]{positions, blunders};
+    }
+
+    /**
+     * @param score A score from the first player's point of view.
+     * @return 1 if the first player is ahead by at least the blunder threshold, -1 if the second player is, else 0.
+     */
+    private int leader(int score) {
+        return score >= blunder ? 1 : score <= -blunder ? -1 : 0;
+    }
+
+    private void appendLine(StringBuilder lines, long game, int ply, boolean firstMoves, int move, int best,
+                            int bestScore, int playedScore, int loss, boolean isBlunder, boolean isSwing) {
+        int square = AlphaBetaSearch.square(move), bestSquare = AlphaBetaSearch.square(best);
+        if (json) {
+            lines.append("{\"game\":").append(game).append(",\"ply\":").append(ply)
+                    .append(",\"player\":").append(firstMoves ? 1 : 2)
+                    .append(",\"move\":{\"row\":").append(square / Bitboard.SIZE)
+                    .append(",\"col\":").append(square % Bitboard.SIZE)
+                    .append(",\"type\":").append(AlphaBetaSearch.type(move))
+                    .append("},\"best\":{\"row\":").append(bestSquare / Bitboard.SIZE)
+                    .append(",\"col\":").append(bestSquare % Bitboard.SIZE)
+                    .append(",\"type\":").append(AlphaBetaSearch.type(best))
+                    .append("},\"bestScore\":").append(bestScore).append(",\"playedScore\":").append(playedScore)
+                    .append(",\"loss\":").append(loss).append(",\"blunder\":").append(isBlunder)
+                    .append(",\"swing\":").append(isSwing).append("}\n");
+        } else {
+            lines.append(game).append(',').append(ply).append(',').append(firstMoves ? 1 : 2).append(',')
+                    .append(square / Bitboard.SIZE).append(',').append(square % Bitboard.SIZE).append(',')
+                    .append(AlphaBetaSearch.type(move)).append(',')
+                    .append(bestSquare / Bitboard.SIZE).append(',').append(bestSquare % Bitboard.SIZE).append(',')
+                    .append(AlphaBetaSearch.type(best)).append(',')
+                    .append(bestScore).append(',').append(playedScore).append(',').append(loss).append(',')
+                    .append(isBlunder ? 1 : 0).append(',').append(isSwing ? 1 : 0).append('\n');
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file in the binary game-record format written by {@link GameRecordWriter}.
+ * The file is memory-mapped and read as a cursor over the games: {@link #next()} moves to the next game, and
+ * the moves of the current game are read straight from the mapped bytes, so scanning a file creates no objects
+ * per game or per move (the player types are only decoded when asked for). Games can be replayed on a
+ * {@link Bitboard} when statistics need the positions. A file can be at most 2 GB.
+ * Usage: java GameRecordReader &lt;record file&gt;  (prints statistics about the games in the file)
+ */
+public class GameRecordReader {
+    private final MappedByteBuffer bytes;
+    private final int limit;
+    private int next;        // the offset of the next game
+    private int firstType;   // the offsets of the current game's parts
+    private int secondType;
+    private int movesStart;
+    private int moveCount;
+    private int passes;
+    private int end;
+    private int diff;
+
+    /**
+     * Maps a record file and checks its header.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be read, is too large, or is not a game-record file.
+     */
+    public GameRecordReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(file + " is larger than 2 GB, split it into several record files");
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        limit = bytes.limit();
+        int header = GameRecordWriter.MAGIC.length + 1;
+        boolean valid = limit >= header;
+        for (int i = 0; valid && i < GameRecordWriter.MAGIC.length; i++)
+            valid = bytes.get(i) == GameRecordWriter.MAGIC[i];
+        if (!valid)
+            throw new IOException(file + " is not a game-record file");
+        if (bytes.get(header - 1) != GameRecordWriter.VERSION)
+            throw new IOException(file + " has the unsupported record version " + bytes.get(header - 1));
+        next = header;
+    }
+
+    /**
+     * Moves to the next game of the file.
+     *
+     * @return true if there is a next game, false at the end of the file.
+     * @throws IllegalStateException If the file ends in the middle of a game, e.g. while it is being written.
+     */
+    public boolean next() {
+        if (next >= limit)
+            return false;
+        int offset = next;
+        firstType = offset;
+        offset = skipType(offset);
+        secondType = offset;
+        offset = skipType(offset);
+        movesStart = offset;
+        passes = 0;
+        int marker;
+        while (true) {
+            if (offset >= limit)
+                throw truncated();
+            marker = bytes.get(offset) & 0xff;
+            if (marker == GameRecordWriter.END || marker == GameRecordWriter.ABORTED)
+                break;
+            if (marker == GameRecordWriter.PASS)
+                passes++;
+            offset++;
+        }
+        if (offset + 1 >= limit)
+            throw truncated();
+        moveCount = offset - movesStart;
+        end = marker;
+        diff = bytes.get(offset + 1);
+        next = offset + 2;
+        return true;
+    }
+
+    /**
+     * Skips a player type name of the game header: its length byte, then its bytes.
+     *
+     * @param offset The offset of the length byte.
+     * @return The offset after the name.
+     * @throws IllegalStateException If the file ends before the end of the name.
+     */
+    private int skipType(int offset) {
+        if (offset >= limit)
+            throw truncated();
+        offset += 1 + (bytes.get(offset) & 0xff);
+        if (offset > limit)
+            throw truncated();
+        return offset;
+    }
+
+    private IllegalStateException truncated() {
+        return new IllegalStateException("The record file ends in the middle of a game at offset " + next);
+    }
+
+    /**
+     * @return The number of moves of the current game, pass markers included.
+     */
+    public int moveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @param index The index of a move in the current game, from 0 to moveCount() - 1.
+     * @return The move, encoded as {@code square | type << 6} (see AlphaBetaSearch.encode), or
+     * {@link GameRecordWriter#PASS}.
+     */
+    public int move(int index) {
+        return bytes.get(movesStart + index) & 0xff;
+    }
+
+    /**
+     * @return The number of pass markers in the current game.
+     */
+    public int passes() {
+        return passes;
+    }
+
+    /**
+     * @return Whether the current game was played to its end (rather than reset before it).
+     */
+    public boolean isFinished() {
+        return end == GameRecordWriter.END;
+    }
+
+    /**
+     * @return The final disc difference of the current game, first player minus second player.
+     */
+    public int diff() {
+        return diff;
+    }
+
+    public String firstType() {
+        return type(firstType);
+    }
+
+    public String secondType() {
+        return type(secondType);
+    }
+
+    private String type(int offset) {
+        byte[] name = new byte[bytes.get(offset) & 0xff];
+        bytes.get(offset + 1, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Plays the current game on a board.
+     *
+     * @param board Receives the final position of the game; its previous content is discarded.
+     * @throws IllegalStateException If the record holds an illegal move.
+     */
+    public void replay(Bitboard board) {
+        board.copyFrom(Bitboard.initial());
+        for (int i = 0; i < moveCount; i++) {
+            int move = move(i);
+            if (move == GameRecordWriter.PASS ? !board.pass()
+                    : !board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move)))
+                throw new IllegalStateException("Illegal move " + i + " in the game ending before offset " + next);
+        }
+    }
+
+    /**
+     * Prints statistics about the games of a record file: results, game length, use of the special discs and
+     * the most played opening moves, with the scanning speed; then replays every game to check it.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java GameRecordReader <record file>");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        GameRecordReader reader = new GameRecordReader(file);
+        long games = 0, finished = 0, firstWins = 0, secondWins = 0, moves = 0, bombs = 0, unflippables = 0;
+        long[] openings = new long[64];
+        long start = System.nanoTime();
+        while (reader.next()) {
+            games++;
+            int count = reader.moveCount();
+            moves += count;
+            if (count > 0)
+                openings[AlphaBetaSearch.square(reader.move(0))]++;
+            for (int i = 0; i < count; i++) {
+                int type = AlphaBetaSearch.type(reader.move(i));
+                if (type == Bitboard.BOMB)
+                    bombs++;
+                else if (type == Bitboard.UNFLIPPABLE)
+                    unflippables++;
+            }
+            if (reader.isFinished()) {
+                finished++;
+                if (reader.diff() > 0)
+                    firstWins++;
+                else if (reader.diff() < 0)
+                    secondWins++;
+            }
+        }
+        double scanSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s: %d games (%d finished), %d moves%n", file, games, finished, moves);
+        if (games == 0)
+            return;
+        System.out.printf("  first player wins %.1f%%, second player wins %.1f%%, draws %.1f%% of finished games%n",
+                100.0 * firstWins / Math.max(finished, 1), 100.0 * secondWins / Math.max(finished, 1),
+                100.0 * (finished - firstWins - secondWins) / Math.max(finished, 1));
+        System.out.printf("  %.1f moves per game, %.2f bombs and %.2f unflippable discs per game%n",
+                (double) moves / games, (double) bombs / games, (double) unflippables / games);
+        System.out.print("  opening moves:");
+        for (int square = 0; square < 64; square++)
+            if (openings[square] > 0)
+                System.out.printf(" (%d,%d) %.1f%%", square / Bitboard.SIZE, square % Bitboard.SIZE,
+                        100.0 * openings[square] / games);
+        System.out.println();
+        System.out.printf("  scanned in %.3f s: %.0f games/s, %.0f MB/s%n", scanSeconds, games / scanSeconds,
+                reader.limit / 1e6 / scanSeconds);
+
+        reader = new GameRecordReader(file);
+        Bitboard board = new Bitboard();
+        start = System.nanoTime();
+        while (reader.next()) {
+            reader.replay(board);
+            if (reader.isFinished() && board.discCount(true) - board.discCount(false) != reader.diff())
+                throw new IllegalStateException("A game's recorded result does not match its moves");
+        }
+        double replaySeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  replayed and checked in %.3f s: %.0f games/s%n", replaySeconds, games / replaySeconds);
+    }
+}
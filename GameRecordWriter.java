@@ -0,0 +1,190 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes whole games in the compact binary game-record format, one game after the other, as they are played.
+ * <p>
+ * A record file starts with the 4 bytes {@code "RVGR"} and a version byte, followed by the games. Each game is:
+ * <ul>
+ *     <li>the type of the first and of the second player, each as a length byte and that many UTF-8 bytes,</li>
+ *     <li>one byte per move: the square ({@code row * 8 + col}) in the low 6 bits and the disc type
+ *     (Bitboard.SIMPLE, UNFLIPPABLE or BOMB) in the high 2 bits, the same encoding as the search uses,</li>
+ *     <li>a marker byte, with disc type 3: {@link #PASS} when the player to move passed,
+ *     {@link #END} after the last move of a finished game, or {@link #ABORTED} when the game was reset
+ *     before its end,</li>
+ *     <li>after the END or ABORTED marker, the final disc difference (first player minus second player)
+ *     as a signed byte.</li>
+ * </ul>
+ * Every game starts from the initial position, so a typical game takes about 80 bytes.
+ * The rules of this game have no passes (a player without a valid move ends the game), so PASS is never
+ * written by this writer; readers accept it so that the format can hold variants that have them.
+ * <p>
+ * A game logic is recorded by {@link #record(BitboardGameLogic)}, which listens to its moves: every game is
+ * kept in a small buffer (so that undone moves can be dropped), and written to the stream as soon as it ends
+ * or is reset. A writer can be shared by game logics running on several threads; each game is written whole.
+ */
+public class GameRecordWriter implements Closeable {
+    static final byte[] MAGIC = {'R', 'V', 'G', 'R'};
+    static final int VERSION = 1;
+    public static final int PASS = Bitboard.PASS;
+    public static final int ABORTED = (3 << 6) | 62;
+    public static final int END = (3 << 6) | 63;
+    private static final int MAX_TYPE_LENGTH = 255;
+
+    private final DataOutputStream out;
+    private long games;
+
+    /**
+     * Creates a writer, and writes the file header.
+     *
+     * @param out The stream to write to; it is closed by {@link #close()}.
+     * @throws IOException If the header cannot be written.
+     */
+    public GameRecordWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Starts recording the games of a game logic: the current game if it is still in the initial position,
+     * and every game started by a reset after that. The player types are read from the game logic when
+     * each game starts.
+     *
+     * @param logic The game logic to record.
+     * @return The listener registered on the game logic, to remove it when the recording should stop.
+     */
+    public BoardListener record(BitboardGameLogic logic) {
+        Recorder recorder = new Recorder(logic);
+        if (logic.getHash() == Bitboard.initial().hash())
+            recorder.start();
+        logic.addBoardListener(recorder);
+        return recorder;
+    }
+
+    /**
+     * Writes one whole game.
+     *
+     * @param firstType  The type of the first player.
+     * @param secondType The type of the second player.
+     * @param moves      The encoded moves, from the initial position.
+     * @param count      The number of moves.
+     * @param end        {@link #END} or {@link #ABORTED}.
+     * @param diff       The final disc difference, first player minus second player.
+     * @throws IOException If the game cannot be written.
+     */
+    public synchronized void writeGame(String firstType, String secondType, byte[] moves, int count,
+                                       int end, int diff) throws IOException {
+        writeType(firstType);
+        writeType(secondType);
+        out.write(moves, 0, count);
+        out.writeByte(end);
+        out.writeByte(diff);
+        games++;
+    }
+
+    private void writeType(String type) throws IOException {
+        byte[] bytes = type.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_TYPE_LENGTH);
+        out.writeByte(length);
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * @return The number of games written so far.
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * @param player A player, or null.
+     * @return The name of the player's type, as written in the game header.
+     */
+    static String typeName(Player player) {
+        return player == null ? "" : player.getClass().getSimpleName();
+    }
+
+    /**
+     * Buffers the game of one game logic, and hands it to the writer when it ends.
+     * It is called on the thread that plays the game, so it needs no synchronization of its own.
+     */
+    private class Recorder implements BoardListener {
+        private final BitboardGameLogic logic;
+        private byte[] moves = new byte[64];
+        private int count;
+        private boolean recording;
+        private String firstType;
+        private String secondType;
+
+        Recorder(BitboardGameLogic logic) {
+            this.logic = logic;
+        }
+
+        void start() {
+            count = 0;
+            recording = true;
+            firstType = typeName(logic.getFirstPlayer());
+            secondType = typeName(logic.getSecondPlayer());
+        }
+
+        @Override
+        public void boardChanged(BoardChange change) {
+            switch (change.kind()) {
+                case RESET:
+                    if (recording && count > 0)
+                        finish(change, ABORTED);
+                    start();
+                    break;
+                case UNDO:
+                    if (recording && count > 0)
+                        count--;
+                    break;
+                case MOVE:
+                    if (!recording)
+                        break;
+                    if (count == moves.length)
+                        moves = Arrays.copyOf(moves, 2 * count);
+                    moves[count++] = (byte) AlphaBetaSearch.encode(change.square(), change.discType());
+                    if (change.legalMoves() == 0)
+                        finish(change, END);
+                    break;
+            }
+        }
+
+        private void finish(BoardChange change, int end) {
+            recording = false;
+            // For an aborted game the change is the reset, so the difference is taken from the last position
+            int diff = end == END ? Long.bitCount(change.first()) - Long.bitCount(change.second()) : lastDiff();
+            try {
+                writeGame(firstType, secondType, moves, count, end, diff);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int lastDiff() {
+            Bitboard board = Bitboard.initial();
+            for (int i = 0; i < count; i++) {
+                int move = moves[i] & 0xff;
+                board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+            }
+            return board.discCount(true) - board.discCount(false);
+        }
+    }
+}
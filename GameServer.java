@@ -0,0 +1,507 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A headless server hosting many independent games, each with its own {@link BitboardGameLogic} and its own
+ * pair of players, played through a line-based protocol on a local socket. A game is a session that any
+ * connection may drive by its id; a connection is served by its own thread (a virtual thread on Java 21 and
+ * later), so thousands of sessions cost memory only. AI moves run on a bounded pool of worker threads: when
+ * it is an AI's turn, the session queues one AI move, and a game between two AIs queues its moves one by one,
+ * so that long games do not hold a worker.
+ * Every command is one line and gets one reply line, "OK ..." or "ERR &lt;reason&gt;":
+ * <pre>
+ * NEW &lt;player&gt; &lt;player&gt;         OK &lt;id&gt;     (a player is Human or a registered AI type)
+ * MOVE &lt;id&gt; &lt;row&gt; &lt;col&gt; [type]  OK          (type is SIMPLE, UNFLIPPABLE or BOMB; SIMPLE by default)
+ * VALID &lt;id&gt;                     OK &lt;row&gt;,&lt;col&gt; ...
+ * BOARD &lt;id&gt;                     OK &lt;position as Bitboard.toText()&gt; PLAYING|OVER
+ * WAIT &lt;id&gt;                      OK PLAYING|OVER  once no AI move is pending
+ * UNDO &lt;id&gt;                      OK          (only when both players are human)
+ * CLOSE &lt;id&gt;                     OK
+ * STATS                          OK &lt;key&gt;=&lt;value&gt; ...  (sessions, AI move latency percentiles, heap)
+ * QUIT                           OK, and the connection is closed
+ * </pre>
+ * Usage: java GameServer [port] [AI threads]
+ * or:    java GameServer --bench &lt;sessions&gt; [clients] [AI type]  (plays Human-vs-AI games over loopback and
+ * reports the move latency and the number of sessions per GB of heap)
+ */
+public class GameServer implements AutoCloseable {
+    static final int DEFAULT_PORT = 7878;
+    private static final int MAX_SESSIONS = 100_000;
+    private static final int AI_QUEUE_CAPACITY = 10_000;
+    private static final long WAIT_TIMEOUT_MS = 60_000;
+
+    /**
+     * A human player whose moves come from a client, as MOVE commands.
+     */
+    static class RemotePlayer extends Player {
+        RemotePlayer(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        boolean isHuman() {
+            return true;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final ThreadPoolExecutor aiPool;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LatencyHistogram aiMoveLatency = new LatencyHistogram();  // from the AI's turn to its move
+    private final LatencyHistogram commandLatency = new LatencyHistogram(); // from a command to its reply
+    private volatile boolean closed;
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port      The port to listen on, or 0 for any free port (see {@link #getPort()}).
+     * @param aiThreads The number of threads playing the AI moves of all the sessions.
+     * @throws IOException If the port cannot be opened.
+     */
+    public GameServer(int port, int aiThreads) throws IOException {
+        AIPlayer.registerAllAIPlayers();
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        aiPool = new ThreadPoolExecutor(aiThreads, aiThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(AI_QUEUE_CAPACITY), daemonThreads("ai-move"));
+        Thread acceptor = new Thread(this::acceptConnections, "game-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of open sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return The times from the start of an AI's turn (queueing included) to its move, over all sessions.
+     */
+    public LatencyHistogram getAiMoveLatency() {
+        return aiMoveLatency;
+    }
+
+    /**
+     * Stops accepting connections and stops the AI workers. Open connections are closed by their clients.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        aiPool.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException | RejectedExecutionException e) {
+                if (!closed)
+                    System.err.println("Could not accept a connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reads the commands of one connection and answers them, until QUIT or the end of the stream
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                long start = System.nanoTime();
+                String[] words = line.trim().split("\\s+");
+                String reply;
+                try {
+                    reply = execute(words);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    reply = "ERR malformed command: " + line;
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+                commandLatency.record(System.nanoTime() - start);
+                if (words[0].equalsIgnoreCase("QUIT"))
+                    return;
+            }
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
+
+    private String execute(String[] words) {
+        switch (words[0].toUpperCase()) {
+            case "NEW":
+                return newSession(words[1], words[2]);
+            case "STATS":
+                return stats();
+            case "QUIT":
+                return "OK";
+            case "MOVE":
+            case "VALID":
+            case "BOARD":
+            case "WAIT":
+            case "UNDO":
+            case "CLOSE":
+                break;
+            default:
+                return "ERR unknown command " + words[0];
+        }
+        Session session = sessions.get(Long.parseLong(words[1]));
+        if (session == null)
+            return "ERR no session " + words[1];
+        switch (words[0].toUpperCase()) {
+            case "MOVE":
+                return session.move(Integer.parseInt(words[2]), Integer.parseInt(words[3]),
+                        words.length > 4 ? words[4].toUpperCase() : "SIMPLE");
+            case "VALID":
+                return session.validMoves();
+            case "BOARD":
+                return session.board();
+            case "WAIT":
+                return session.await();
+            case "UNDO":
+                return session.undo();
+            default:
+                sessions.remove(session.id);
+                session.close();
+                return "OK";
+        }
+    }
+
+    private String newSession(String firstType, String secondType) {
+        if (sessions.size() >= MAX_SESSIONS)
+            return "ERR too many sessions";
+        Player first = createPlayer(firstType, true);
+        Player second = createPlayer(secondType, false);
+        if (first == null || second == null)
+            return "ERR unknown player type, expected Human or one of " + AIPlayer.getAIPlayerTypes();
+        Session session = new Session(nextId.getAndIncrement(), first, second);
+        sessions.put(session.id, session);
+        String queued = session.scheduleAiMove();
+        return queued != null ? queued : "OK " + session.id;
+    }
+
+    private static Player createPlayer(String type, boolean isPlayerOne) {
+        if (type.equalsIgnoreCase("Human"))
+            return new RemotePlayer(isPlayerOne);
+        return AIPlayer.getAIPlayerTypes().contains(type) ? AIPlayer.createAIPlayer(type, isPlayerOne) : null;
+    }
+
+    private String stats() {
+        Runtime runtime = Runtime.getRuntime();
+        return String.format("OK sessions=%d aiMoves=%d aiP50Us=%d aiP99Us=%d aiQueued=%d commandP50Us=%d"
+                        + " commandP99Us=%d heapUsedMB=%d", sessions.size(), aiMoveLatency.count(),
+                aiMoveLatency.percentile(0.5) / 1000, aiMoveLatency.percentile(0.99) / 1000, aiPool.getQueue().size(),
+                commandLatency.percentile(0.5) / 1000, commandLatency.percentile(0.99) / 1000,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+    }
+
+    /**
+     * One game. Its commands and its AI moves are serialized on the session's lock; an AI move holds the lock
+     * while it thinks, so the commands of the session wait for it (the other sessions do not).
+     */
+    private final class Session {
+        final long id;
+        final BitboardGameLogic logic = new BitboardGameLogic();
+        boolean aiMovePending;
+        long aiTurnStart;
+        String failure; // set if an AI played an illegal move, which ends the session's game
+        boolean closed;
+
+        Session(long id, Player first, Player second) {
+            this.id = id;
+            logic.setPlayers(first, second);
+        }
+
+        synchronized String move(int row, int col, String type) {
+            if (failure != null)
+                return "ERR " + failure;
+            if (logic.isGameFinished())
+                return "ERR the game is over";
+            Player player = currentPlayer();
+            if (!player.isHuman())
+                return "ERR it is the AI's turn";
+            Disc disc;
+            switch (type) {
+                case "SIMPLE":
+                    disc = new SimpleDisc(player);
+                    break;
+                case "UNFLIPPABLE":
+                    disc = new UnflippableDisc(player);
+                    break;
+                case "BOMB":
+                    disc = new BombDisc(player);
+                    break;
+                default:
+                    return "ERR unknown disc type " + type;
+            }
+            if (!logic.locate_disc(new Position(row, col), disc))
+                return "ERR illegal move";
+            String queued = scheduleAiMove();
+            return queued != null ? queued : "OK";
+        }
+
+        synchronized String validMoves() {
+            StringBuilder reply = new StringBuilder("OK");
+            for (Position position : logic.ValidMoves())
+                reply.append(' ').append(position.row()).append(',').append(position.col());
+            return reply.toString();
+        }
+
+        synchronized String board() {
+            return "OK " + logic.getBitboard().toText() + (logic.isGameFinished() ? " OVER" : " PLAYING");
+        }
+
+        synchronized String undo() {
+            long hash = logic.getHash();
+            logic.undoLastMove();
+            return logic.getHash() != hash ? "OK" : "ERR nothing to undo, or not both players are human";
+        }
+
+        synchronized String await() {
+            String queued = scheduleAiMove(); // in case the pool was full when the turn started
+            if (queued != null)
+                return queued;
+            long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+            try {
+                for (long left = WAIT_TIMEOUT_MS; aiMovePending && left > 0; left = deadline - System.currentTimeMillis())
+                    wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "ERR interrupted";
+            }
+            if (failure != null)
+                return "ERR " + failure;
+            if (aiMovePending)
+                return "ERR the AI move is still pending";
+            return logic.isGameFinished() ? "OK OVER" : "OK PLAYING";
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        /**
+         * Queues the AI move if it is an AI's turn and its move is not queued yet.
+         *
+         * @return null, or an error reply if the AI pool is full.
+         */
+        private String scheduleAiMove() {
+            if (aiMovePending || closed || failure != null || logic.isGameFinished() || currentPlayer().isHuman())
+                return null;
+            aiMovePending = true;
+            aiTurnStart = System.nanoTime();
+            try {
+                aiPool.execute(this::playAiMove);
+                return null;
+            } catch (RejectedExecutionException e) {
+                aiMovePending = false;
+                return "ERR the AI workers are busy, send WAIT " + id + " to retry";
+            }
+        }
+
+        private synchronized void playAiMove() {
+            aiMovePending = false;
+            if (!closed) {
+                AIPlayer ai = (AIPlayer) currentPlayer();
+                Move move = SearchStats.makeMove(ai, logic);
+                if (move == null || !logic.locate_disc(move.position(), move.disc()))
+                    failure = ai.getClass().getSimpleName() + " played an illegal move: " + move;
+                aiMoveLatency.record(System.nanoTime() - aiTurnStart);
+                scheduleAiMove(); // the next move of a game between two AIs
+            }
+            notifyAll();
+        }
+
+        private Player currentPlayer() {
+            return logic.isFirstPlayerTurn() ? logic.getFirstPlayer() : logic.getSecondPlayer();
+        }
+    }
+
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            // Java 21 and later: one virtual thread per connection
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("game-connection"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            if (args.length < 2) {
+                System.err.println("Usage: java GameServer --bench <sessions> [clients] [AI type]");
+                System.exit(1);
+            }
+            bench(Integer.parseInt(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 16,
+                    args.length > 3 ? args[3] : "GreedyAI");
+            return;
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int aiThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(port, aiThreads);
+        System.out.println("Game server listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getPort() + " with " + aiThreads + " AI threads");
+        Thread.currentThread().join(); // the server runs until the process is killed
+    }
+
+    /**
+     * Opens sessions of a human against an AI over loopback, measures the heap they use, then plays them all
+     * to the end with random human moves: every human move is a MOVE and a WAIT for the AI's reply, and the
+     * round trip of the pair is the move latency a player sees.
+     */
+    private static void bench(int sessionCount, int clients, String aiType) throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        try (GameServer server = new GameServer(0, runtime.availableProcessors())) {
+            if (!AIPlayer.getAIPlayerTypes().contains(aiType))
+                throw new IllegalArgumentException("Unknown AI type " + aiType + ", expected one of "
+                        + AIPlayer.getAIPlayerTypes());
+            long heapBefore = usedHeap();
+            LatencyHistogram moveLatency = new LatencyHistogram();
+            CountDownLatch opened = new CountDownLatch(clients);
+            CountDownLatch measured = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            AtomicLong games = new AtomicLong(), moves = new AtomicLong();
+            for (int c = 0; c < clients; c++) {
+                int first = (int) ((long) sessionCount * c / clients), last = (int) ((long) sessionCount * (c + 1) / clients);
+                Thread client = new Thread(() -> {
+                    try {
+                        benchClient(server.getPort(), last - first, aiType, opened, measured, moveLatency, games, moves);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, "bench-client-" + c);
+                threads.add(client);
+                client.start();
+            }
+            opened.await();
+            long heapOpen = usedHeap();
+            long start = System.nanoTime();
+            measured.countDown();
+            for (Thread client : threads)
+                client.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long heapPlayed = usedHeap(); // the finished games are still open, with their full undo stacks
+
+            System.out.printf("%d Human-vs-%s sessions over %d loopback connections, %d AI threads%n", sessionCount,
+                    aiType, clients, runtime.availableProcessors());
+            System.out.printf("  %d games, %d human moves in %.1f s: %.0f moves/s%n", games.get(), moves.get(),
+                    seconds, moves.get() / seconds);
+            System.out.printf("  move latency (MOVE + WAIT for the AI reply): p50 %.3f ms, p99 %.3f ms%n",
+                    moveLatency.percentile(0.5) / 1e6, moveLatency.percentile(0.99) / 1e6);
+            System.out.printf("  AI move latency on the server (queueing included): p50 %.3f ms, p99 %.3f ms%n",
+                    server.aiMoveLatency.percentile(0.5) / 1e6, server.aiMoveLatency.percentile(0.99) / 1e6);
+            System.out.printf("  heap per session: %.0f bytes new, %.0f bytes played: %.0f sessions per GB%n",
+                    (double) (heapOpen - heapBefore) / sessionCount, (double) (heapPlayed - heapBefore) / sessionCount,
+                    (double) sessionCount * (1L << 30) / Math.max(heapPlayed - heapBefore, 1));
+        }
+    }
+
+    private static void benchClient(int port, int count, String aiType, CountDownLatch opened, CountDownLatch measured,
+                                    LatencyHistogram moveLatency, AtomicLong games, AtomicLong moves) throws Exception {
+        SplittableRandom random = new SplittableRandom();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++)
+                ids[i] = Long.parseLong(request(in, out, "NEW Human " + aiType).substring(3));
+            opened.countDown();
+            measured.await();
+
+            // Every round plays one human move in each unfinished game
+            boolean[] over = new boolean[count];
+            for (int left = count; left > 0; ) {
+                for (int i = 0; i < count; i++) {
+                    if (over[i])
+                        continue;
+                    String[] valid = request(in, out, "VALID " + ids[i]).split(" ");
+                    if (valid.length == 1) { // the human has no move: the game is over
+                        over[i] = true;
+                        left--;
+                        games.incrementAndGet();
+                        continue;
+                    }
+                    String[] square = valid[1 + random.nextInt(valid.length - 1)].split(",");
+                    long start = System.nanoTime();
+                    request(in, out, "MOVE " + ids[i] + " " + square[0] + " " + square[1]);
+                    String state = request(in, out, "WAIT " + ids[i]);
+                    moveLatency.record(System.nanoTime() - start);
+                    moves.incrementAndGet();
+                    if (state.equals("OK OVER")) {
+                        over[i] = true;
+                        left--;
+                        games.incrementAndGet();
+                    }
+                }
+            }
+            request(in, out, "QUIT");
+        }
+    }
+
+    private static String request(BufferedReader in, Writer out, String command) throws IOException {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null || !reply.startsWith("OK"))
+            throw new IOException(command + ": " + reply);
+        return reply;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,691 @@
+/**
+ * A Reversi position on a square board of any even size from 6x6 to 16x16, stored as bitboards like
+ * {@link Bitboard} and played with the same rules (unflippable discs, bomb chain reactions).
+ * Square (row, col) is bit {@code row * stride + col} of the masks, where the stride is 8 for boards up to
+ * 8x8 and 16 for larger boards. A board up to 8x8 therefore fits in a single long, and its moves are generated
+ * with the one-word fills of Bitboard; a larger board takes four words, and the same Kogge-Stone fills run over
+ * the words, with shifts that carry the bits from one word to the next.
+ * Every direction is a shift by a fixed number of bits. After each shift, the direction's mask clears the bits
+ * that wrapped to the other edge of a row or left the board, so no fill ever crosses an edge.
+ * Moves are taken back with a make-unmake stack, as on Bitboard. There is no Zobrist hash, because the
+ * transposition table, the opening book and the patterns are all built for the 8x8 board.
+ * An instance is not thread safe: it keeps scratch masks for its fills.
+ */
+public final class GridBitboard {
+    public static final int MIN_SIZE = 6;
+    public static final int MAX_SIZE = 16;
+    // Every board larger than 8x8 takes 4 words (16 rows of 16 columns), so the multi-word loops have a
+    // constant length, which the JIT unrolls
+    private static final int WIDE_WORDS = 4;
+
+    private static final Geometry[] GEOMETRIES = new Geometry[MAX_SIZE + 1];
+
+    static {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size += 2)
+            GEOMETRIES[size] = new Geometry(size);
+    }
+
+    /**
+     * The layout of one board size: the masks of the squares on the board, the 8 directions and the
+     * neighbours of every square. It is shared by all the boards of that size.
+     */
+    private static final class Geometry {
+        final int size;
+        final int stride;
+        final int words;
+        final long[] onBoard;
+        final int[] shifts;   // the 8 directions, as in Bitboard
+        final long[][] wrap;  // [direction]: the squares a shift in that direction may land on
+        final long[] neighbours; // the squares adjacent to each square, words per square
+
+        Geometry(int size) {
+            this.size = size;
+            stride = size <= Bitboard.SIZE ? Bitboard.SIZE : 16;
+            words = size <= Bitboard.SIZE ? 1 : WIDE_WORDS;
+            onBoard = new long[words];
+            long[] notFirstColumn = new long[words];
+            long[] notLastColumn = new long[words];
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int square = row * stride + col;
+                    onBoard[square >>> 6] |= 1L << square;
+                    if (col != 0)
+                        notFirstColumn[square >>> 6] |= 1L << square;
+                    if (col != size - 1)
+                        notLastColumn[square >>> 6] |= 1L << square;
+                }
+            }
+            shifts = new int[]{1, -1, stride, -stride, stride + 1, stride - 1, -(stride - 1), -(stride + 1)};
+            // A shift towards higher columns may only land on a column other than the first, and vice versa
+            wrap = new long[][]{notFirstColumn, notLastColumn, onBoard, onBoard,
+                    notFirstColumn, notLastColumn, notFirstColumn, notLastColumn};
+
+            neighbours = new long[size * stride * words];
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int base = (row * stride + col) * words;
+                    for (int dr = -1; dr <= 1; dr++) {
+                        for (int dc = -1; dc <= 1; dc++) {
+                            int r = row + dr, c = col + dc;
+                            if ((dr != 0 || dc != 0) && r >= 0 && r < size && c >= 0 && c < size)
+                                neighbours[base + ((r * stride + c) >>> 6)] |= 1L << (r * stride + c);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final Geometry geometry;
+    final int size;
+    final int stride;
+    final int words;
+    final long[] first;  // discs of the first player
+    final long[] second; // discs of the second player
+    final long[] unflippable;
+    final long[] bombs;
+    int firstBombs, firstUnflippables;
+    int secondBombs, secondUnflippables;
+    boolean firstToMove;
+
+    // Scratch masks of the fills
+    private final long[] gen, pro, run, shifted, flips, legal;
+
+    // The undo stack, allocated on the first move: the flipped discs (words per move) and the placed disc
+    private long[] undoFlips;
+    private int[] undoMoves; // square | type << 8
+    private int plies;
+
+    private GridBitboard(Geometry geometry) {
+        this.geometry = geometry;
+        size = geometry.size;
+        stride = geometry.stride;
+        words = geometry.words;
+        first = new long[words];
+        second = new long[words];
+        unflippable = new long[words];
+        bombs = new long[words];
+        gen = new long[words];
+        pro = new long[words];
+        run = new long[words];
+        shifted = new long[words];
+        flips = new long[words];
+        legal = new long[words];
+    }
+
+    /**
+     * Creates an empty board, without discs or special-disc inventories, with the first player to move.
+     *
+     * @param size The number of rows and columns: an even number from {@link #MIN_SIZE} to {@link #MAX_SIZE}.
+     * @return The empty board.
+     * @throws IllegalArgumentException If the size is not supported.
+     */
+    public static GridBitboard empty(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+            throw new IllegalArgumentException("The board size must be even, from " + MIN_SIZE + " to " + MAX_SIZE
+                    + ": " + size);
+        GridBitboard board = new GridBitboard(GEOMETRIES[size]);
+        board.firstToMove = true;
+        return board;
+    }
+
+    /**
+     * Creates the starting position: four simple discs in the center and full special-disc inventories.
+     *
+     * @param size The number of rows and columns: an even number from {@link #MIN_SIZE} to {@link #MAX_SIZE}.
+     * @return The initial position, with the first player to move.
+     */
+    public static GridBitboard initial(int size) {
+        GridBitboard board = empty(size);
+        int center = size / 2;
+        set(board.first, board.square(center - 1, center - 1));
+        set(board.first, board.square(center, center));
+        set(board.second, board.square(center - 1, center));
+        set(board.second, board.square(center, center - 1));
+        board.firstBombs = board.secondBombs = Player.initial_number_of_bombs;
+        board.firstUnflippables = board.secondUnflippables = Player.initial_number_of_unflippedable;
+        return board;
+    }
+
+    /**
+     * Builds the position of the current state of any PlayableLogic, so that AI players can search it on boards
+     * of every supported size.
+     *
+     * @param logic The game to read.
+     * @return A new position equal to the current state of the game.
+     */
+    public static GridBitboard from(PlayableLogic logic) {
+        if (logic instanceof GridGameLogic)
+            return ((GridGameLogic) logic).getBoard();
+        GridBitboard board = empty(logic.getBoardSize());
+        for (int row = 0; row < board.size; row++) {
+            for (int col = 0; col < board.size; col++) {
+                Disc disc = logic.getDiscAtPosition(new Position(row, col));
+                if (disc == null)
+                    continue;
+                int square = board.square(row, col);
+                set(disc.getOwner().isPlayerOne() ? board.first : board.second, square);
+                if (disc instanceof UnflippableDisc)
+                    set(board.unflippable, square);
+                else if (disc instanceof BombDisc)
+                    set(board.bombs, square);
+            }
+        }
+        Player firstPlayer = logic.getFirstPlayer();
+        Player secondPlayer = logic.getSecondPlayer();
+        board.firstBombs = firstPlayer.getNumber_of_bombs();
+        board.firstUnflippables = firstPlayer.getNumber_of_unflippedable();
+        board.secondBombs = secondPlayer.getNumber_of_bombs();
+        board.secondUnflippables = secondPlayer.getNumber_of_unflippedable();
+        board.firstToMove = logic.isFirstPlayerTurn();
+        return board;
+    }
+
+    /**
+     * @return A deep copy of this position. The moves that led to it are not copied, so the copy cannot undo them.
+     */
+    public GridBitboard copy() {
+        GridBitboard copy = new GridBitboard(geometry);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Overwrites this position with another one of the same size, so that a search can reuse its board.
+     * The undo stack is cleared.
+     *
+     * @param other The position to copy.
+     */
+    public void copyFrom(GridBitboard other) {
+        if (other.size != size)
+            throw new IllegalArgumentException("Cannot copy a " + other.size + "x" + other.size + " board to a "
+                    + size + "x" + size + " board");
+        System.arraycopy(other.first, 0, first, 0, words);
+        System.arraycopy(other.second, 0, second, 0, words);
+        System.arraycopy(other.unflippable, 0, unflippable, 0, words);
+        System.arraycopy(other.bombs, 0, bombs, 0, words);
+        firstBombs = other.firstBombs;
+        firstUnflippables = other.firstUnflippables;
+        secondBombs = other.secondBombs;
+        secondUnflippables = other.secondUnflippables;
+        firstToMove = other.firstToMove;
+        plies = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of longs of every mask of this board (and of the buffers passed to it).
+     */
+    public int words() {
+        return words;
+    }
+
+    public int square(int row, int col) {
+        return row * stride + col;
+    }
+
+    public int row(int square) {
+        return square / stride;
+    }
+
+    public int col(int square) {
+        return square % stride;
+    }
+
+    public boolean isFirstToMove() {
+        return firstToMove;
+    }
+
+    /**
+     * @param firstPlayer Which player's discs to count.
+     * @return The number of discs the player has on the board.
+     */
+    public int discCount(boolean firstPlayer) {
+        return bitCount(firstPlayer ? first : second);
+    }
+
+    /**
+     * @return The number of empty squares.
+     */
+    public int emptyCount() {
+        return size * size - bitCount(first) - bitCount(second);
+    }
+
+    /**
+     * @param square A square of the board, see {@link #square(int, int)}.
+     * @return The type of the disc on the square (SIMPLE, UNFLIPPABLE or BOMB of Bitboard), or -1 if it is empty.
+     */
+    public int typeAt(int square) {
+        if (!test(first, square) && !test(second, square))
+            return -1;
+        if (test(unflippable, square))
+            return Bitboard.UNFLIPPABLE;
+        return test(bombs, square) ? Bitboard.BOMB : Bitboard.SIMPLE;
+    }
+
+    /**
+     * @param square A square of the board.
+     * @return true if the square holds a disc of the first player.
+     */
+    public boolean isFirstPlayerDisc(int square) {
+        return test(first, square);
+    }
+
+    /**
+     * Checks whether the side to move may still place a disc of the given type.
+     *
+     * @param type SIMPLE, UNFLIPPABLE or BOMB of Bitboard.
+     * @return true if the player has this disc type left.
+     */
+    public boolean hasInventory(int type) {
+        switch (type) {
+            case Bitboard.SIMPLE:
+                return true;
+            case Bitboard.BOMB:
+                return (firstToMove ? firstBombs : secondBombs) > 0;
+            case Bitboard.UNFLIPPABLE:
+                return (firstToMove ? firstUnflippables : secondUnflippables) > 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Computes the legal squares for the side to move, see {@link #legalMoves(boolean, long[])}.
+     *
+     * @param moves Receives the mask of legal squares ({@link #words()} longs).
+     * @return true if there is at least one legal move.
+     */
+    public boolean legalMoves(long[] moves) {
+        return legalMoves(firstToMove, moves);
+    }
+
+    /**
+     * Computes the legal squares of either player, with the fills of {@link Bitboard#legalMoves(boolean)}:
+     * for every direction, a fill from the own discs over the opponent discs finds the runs that could be
+     * captured, and a second fill from the flippable discs inside them keeps the runs that flip a disc.
+     *
+     * @param firstPlayer Which player's moves to compute.
+     * @param moves       Receives the mask of legal squares ({@link #words()} longs).
+     * @return true if there is at least one legal move.
+     */
+    public boolean legalMoves(boolean firstPlayer, long[] moves) {
+        long[] own = firstPlayer ? first : second;
+        long[] opp = firstPlayer ? second : first;
+        if (words == 1) {
+            moves[0] = legalMoves(own[0], opp[0]);
+            return moves[0] != 0;
+        }
+        long any = 0;
+        for (int i = 0; i < WIDE_WORDS; i++)
+            moves[i] = 0;
+        for (int d = 0; d < 8; d++) {
+            int s = geometry.shifts[d];
+            long[] wrap = geometry.wrap[d];
+            for (int i = 0; i < WIDE_WORDS; i++) {
+                gen[i] = own[i];
+                pro[i] = opp[i] & wrap[i];
+            }
+            fill(gen, pro, s);
+            long runs = 0;
+            for (int i = 0; i < WIDE_WORDS; i++) {
+                run[i] = gen[i] & ~own[i];
+                runs |= run[i];
+                gen[i] = run[i] & ~unflippable[i];
+                pro[i] = run[i] & wrap[i];
+            }
+            if (runs == 0)
+                continue;
+            fill(gen, pro, s);
+            shift(gen, s, shifted);
+            for (int i = 0; i < WIDE_WORDS; i++) {
+                moves[i] |= shifted[i] & wrap[i] & ~(own[i] | opp[i]);
+                any |= moves[i];
+            }
+        }
+        return any != 0;
+    }
+
+    // The one-word legal moves of a board up to 8x8
+    private long legalMoves(long own, long opp) {
+        long flippable = opp & ~unflippable[0];
+        long empty = geometry.onBoard[0] & ~(own | opp);
+        long moves = 0;
+        for (int d = 0; d < 8; d++) {
+            int s = geometry.shifts[d];
+            long wrap = geometry.wrap[d][0];
+            long run = Bitboard.fill(own, opp & wrap, s) & ~own;
+            long capturing = Bitboard.fill(run & flippable, run & wrap, s);
+            moves |= Bitboard.shift(capturing, s) & wrap & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Fills caller-owned buffers with the legal moves of the side to move and the number of discs each one flips.
+     *
+     * @param squares    Receives the square of every legal move; size * size entries are always enough.
+     * @param flipCounts Receives, at the same index, the number of discs the move flips (bombs included).
+     * @return The number of legal moves written to the buffers.
+     */
+    public int legalMoves(int[] squares, int[] flipCounts) {
+        legalMoves(legal);
+        int count = 0;
+        for (int i = 0; i < words; i++) {
+            for (long m = legal[i]; m != 0; m &= m - 1) {
+                int square = i << 6 | Long.numberOfTrailingZeros(m);
+                squares[count] = square;
+                flipCounts[count++] = flipMask(square, flips);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes every disc that changes owner when the side to move places a disc on the square,
+     * including the discs flipped by bomb chain reactions, with every line read from the board before the move
+     * (the count of countFlips). {@link #play(int, int)} may flip a different set, as on Bitboard
+     * ({@link Bitboard#playFlips(int)}).
+     *
+     * @param square A square of the board.
+     * @param mask   Receives the mask of flipped discs ({@link #words()} longs), empty if the move is not legal.
+     * @return The number of flipped discs, 0 if the square is not a legal move.
+     */
+    public int flipMask(int square, long[] mask) {
+        lineFlips(square, mask);
+        long[] opp = firstToMove ? second : first;
+        long bombed = 0;
+        for (int i = 0; i < words; i++)
+            bombed |= mask[i] & bombs[i];
+        if (bombed != 0)
+            detonate(mask, opp);
+        return bitCount(mask);
+    }
+
+    /**
+     * Computes the discs flipped directly by placing a disc on the square, without the discs flipped by bombs.
+     * Only one square is looked at, so it walks the 8 rays from the square instead of filling whole masks.
+     */
+    private void lineFlips(int square, long[] mask) {
+        for (int i = 0; i < words; i++)
+            mask[i] = 0;
+        if (test(first, square) || test(second, square))
+            return;
+        long[] own = firstToMove ? first : second;
+        long[] opp = firstToMove ? second : first;
+        int row = square / stride, col = square % stride;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (dr == 0 && dc == 0)
+                    continue;
+                int r = row + dr, c = col + dc, length = 0;
+                while (r >= 0 && r < size && c >= 0 && c < size && test(opp, r * stride + c)) {
+                    r += dr;
+                    c += dc;
+                    length++;
+                }
+                if (length == 0 || r < 0 || r >= size || c < 0 || c >= size || !test(own, r * stride + c))
+                    continue;
+                for (int k = 1; k <= length; k++)
+                    set(mask, (row + k * dr) * stride + col + k * dc);
+            }
+        }
+        for (int i = 0; i < words; i++)
+            mask[i] &= ~unflippable[i];
+    }
+
+    /**
+     * Computes the discs that {@link #play(int, int)} flips when the line flips include a bomb, as
+     * {@link Bitboard#playFlips(int)}: the directions one after the other, in the order of
+     * {@link #lineFlips(int, long[])}, each capturing on the board left by the previous ones and its bombs
+     * exploding before the next one.
+     */
+    private void orderedFlips(int square, long[] mask) {
+        for (int i = 0; i < words; i++)
+            mask[i] = 0;
+        long[] own = firstToMove ? first : second;
+        long[] opp = firstToMove ? second : first;
+        int row = square / stride, col = square % stride;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (dr == 0 && dc == 0)
+                    continue;
+                int r = row + dr, c = col + dc, length = 0;
+                while (r >= 0 && r < size && c >= 0 && c < size
+                        && test(opp, r * stride + c) && !test(mask, r * stride + c)) {
+                    r += dr;
+                    c += dc;
+                    length++;
+                }
+                if (length == 0 || r < 0 || r >= size || c < 0 || c >= size
+                        || !test(own, r * stride + c) && !test(mask, r * stride + c))
+                    continue;
+                boolean bombed = false;
+                for (int k = 1; k <= length; k++) {
+                    int flipped = (row + k * dr) * stride + col + k * dc;
+                    if (!test(unflippable, flipped)) {
+                        set(mask, flipped);
+                        bombed |= test(bombs, flipped);
+                    }
+                }
+                if (bombed)
+                    detonate(mask, opp);
+            }
+        }
+    }
+
+    /**
+     * Resolves bomb chain reactions with the worklist of {@link Bitboard}: every round explodes all the bombs
+     * flipped in the previous one, and every bomb explodes at most once.
+     *
+     * @param mask The discs flipped directly by the move; receives the discs flipped by bombs too.
+     * @param opp  The opponent discs before the move.
+     */
+    private void detonate(long[] mask, long[] opp) {
+        long[] exploded = run, worklist = gen, blast = pro;
+        long pending = 0;
+        for (int i = 0; i < words; i++) {
+            exploded[i] = 0;
+            worklist[i] = mask[i] & bombs[i];
+            pending |= worklist[i];
+        }
+        long[] neighbours = geometry.neighbours;
+        while (pending != 0) {
+            for (int i = 0; i < words; i++) {
+                exploded[i] |= worklist[i];
+                blast[i] = 0;
+            }
+            for (int i = 0; i < words; i++) {
+                for (long w = worklist[i]; w != 0; w &= w - 1) {
+                    int base = (i << 6 | Long.numberOfTrailingZeros(w)) * words;
+                    for (int j = 0; j < words; j++)
+                        blast[j] |= neighbours[base + j];
+                }
+            }
+            pending = 0;
+            for (int i = 0; i < words; i++) {
+                long hit = blast[i] & opp[i] & ~unflippable[i] & ~mask[i];
+                mask[i] |= hit;
+                worklist[i] = hit & bombs[i] & ~exploded[i];
+                pending |= worklist[i];
+            }
+        }
+    }
+
+    /**
+     * Places a disc for the side to move, flips the captured discs (as {@link Bitboard#playFlips(int)} does on
+     * the 8x8 board) and passes the turn.
+     *
+     * @param square A square of the board.
+     * @param type   SIMPLE, UNFLIPPABLE or BOMB of Bitboard.
+     * @return true if the move was legal and has been played, false otherwise (the position is unchanged).
+     */
+    public boolean play(int square, int type) {
+        if (!hasInventory(type))
+            return false;
+        if (flipMask(square, flips) == 0)
+            return false;
+        long bombed = 0;
+        for (int i = 0; i < words; i++)
+            bombed |= flips[i] & bombs[i];
+        if (bombed != 0)
+            orderedFlips(square, flips);
+        if (undoFlips == null) {
+            undoFlips = new long[size * size * words];
+            undoMoves = new int[size * size];
+        }
+        System.arraycopy(flips, 0, undoFlips, plies * words, words);
+        undoMoves[plies++] = square | type << 8;
+
+        long[] own = firstToMove ? first : second;
+        long[] opp = firstToMove ? second : first;
+        for (int i = 0; i < words; i++) {
+            own[i] |= flips[i];
+            opp[i] &= ~flips[i];
+        }
+        set(own, square);
+        if (type == Bitboard.BOMB) {
+            set(bombs, square);
+            if (firstToMove)
+                firstBombs--;
+            else
+                secondBombs--;
+        } else if (type == Bitboard.UNFLIPPABLE) {
+            set(unflippable, square);
+            if (firstToMove)
+                firstUnflippables--;
+            else
+                secondUnflippables--;
+        }
+        firstToMove = !firstToMove;
+        return true;
+    }
+
+    /**
+     * Takes back the last move played on this board.
+     *
+     * @return true if a move was taken back, false if there was no move to undo.
+     */
+    public boolean undo() {
+        if (plies == 0)
+            return false;
+        plies--;
+        int base = plies * words;
+        int square = undoMoves[plies] & 0xff;
+        int type = undoMoves[plies] >>> 8;
+
+        firstToMove = !firstToMove;
+        long[] own = firstToMove ? first : second;
+        long[] opp = firstToMove ? second : first;
+        for (int i = 0; i < words; i++) {
+            own[i] &= ~undoFlips[base + i];
+            opp[i] |= undoFlips[base + i];
+        }
+        clear(own, square);
+        if (type == Bitboard.BOMB) {
+            clear(bombs, square);
+            if (firstToMove)
+                firstBombs++;
+            else
+                secondBombs++;
+        } else if (type == Bitboard.UNFLIPPABLE) {
+            clear(unflippable, square);
+            if (firstToMove)
+                firstUnflippables++;
+            else
+                secondUnflippables++;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of moves that can be taken back with {@link #undo()}.
+     */
+    public int plies() {
+        return plies;
+    }
+
+    /**
+     * @return The last move played on this board, encoded as {@code square | type << 8}, or -1 if there is none.
+     */
+    public int lastMove() {
+        return plies == 0 ? -1 : undoMoves[plies - 1];
+    }
+
+    /**
+     * Four-word shift of a mask by s bits (positive = towards higher squares). dst may be src.
+     */
+    private static void shift(long[] src, int s, long[] dst) {
+        long w0 = src[0], w1 = src[1], w2 = src[2], w3 = src[3];
+        if (s > 0) {
+            for (; s >= 64; s -= 64) {
+                w3 = w2;
+                w2 = w1;
+                w1 = w0;
+                w0 = 0;
+            }
+            if (s != 0) {
+                w3 = w3 << s | w2 >>> (64 - s);
+                w2 = w2 << s | w1 >>> (64 - s);
+                w1 = w1 << s | w0 >>> (64 - s);
+                w0 <<= s;
+            }
+        } else {
+            for (s = -s; s >= 64; s -= 64) {
+                w0 = w1;
+                w1 = w2;
+                w2 = w3;
+                w3 = 0;
+            }
+            if (s != 0) {
+                w0 = w0 >>> s | w1 << (64 - s);
+                w1 = w1 >>> s | w2 << (64 - s);
+                w2 = w2 >>> s | w3 << (64 - s);
+                w3 >>>= s;
+            }
+        }
+        dst[0] = w0;
+        dst[1] = w1;
+        dst[2] = w2;
+        dst[3] = w3;
+    }
+
+    /**
+     * The four-word Kogge-Stone occluded fill of {@link Bitboard#fill(long, long, int)}, with as many doubling
+     * steps as the longest run of the board needs. gen is extended in place, and pro is consumed.
+     */
+    private void fill(long[] gen, long[] pro, int s) {
+        for (int step = s, reach = 1; ; step *= 2, reach = 2 * reach + 1) {
+            shift(gen, step, shifted);
+            for (int i = 0; i < WIDE_WORDS; i++)
+                gen[i] |= pro[i] & shifted[i];
+            if (reach >= size - 2)
+                return;
+            shift(pro, step, shifted);
+            for (int i = 0; i < WIDE_WORDS; i++)
+                pro[i] &= shifted[i];
+        }
+    }
+
+    private static boolean test(long[] mask, int square) {
+        return (mask[square >>> 6] & (1L << square)) != 0;
+    }
+
+    private static void set(long[] mask, int square) {
+        mask[square >>> 6] |= 1L << square;
+    }
+
+    private static void clear(long[] mask, int square) {
+        mask[square >>> 6] &= ~(1L << square);
+    }
+
+    static int bitCount(long[] mask) {
+        int count = 0;
+        for (long word : mask)
+            count += Long.bitCount(word);
+        return count;
+    }
+}
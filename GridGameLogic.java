@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PlayableLogic for boards of any even size from 6x6 to 16x16, backed by a {@link GridBitboard}.
+ * It plays by the same rules as {@link BitboardGameLogic}, which stays the engine of the 8x8 board (with the
+ * Zobrist hash, the board listeners and everything the AI players build on the 8x8 bitboard).
+ * The AI players need no change to play on it: they read it through PlayableLogic, and AlphaBetaAI searches
+ * it with a {@link GridSearch}.
+ */
+public class GridGameLogic implements PlayableLogic {
+    private final int size;
+    private GridBitboard board;
+    private final long[] flips; // scratch mask of countFlips
+    private Player firstPlayer;
+    private Player secondPlayer;
+    private PlayerDiscs firstDiscs = new PlayerDiscs(null);
+    private PlayerDiscs secondDiscs = new PlayerDiscs(null);
+    private boolean winRecorded = false; // So that a finished game is only counted once
+
+    /**
+     * @param size The number of rows and columns: an even number from {@link GridBitboard#MIN_SIZE}
+     *             to {@link GridBitboard#MAX_SIZE}.
+     * @throws IllegalArgumentException If the size is not supported.
+     */
+    public GridGameLogic(int size) {
+        this.size = size;
+        this.board = GridBitboard.initial(size);
+        this.flips = new long[board.words()];
+    }
+
+    @Override
+    public boolean locate_disc(Position a, Disc disc) {
+        if (!isOnBoard(a) || disc == null)
+            return false;
+        boolean firstMoves = board.isFirstToMove();
+        int type = typeOf(disc);
+        if (!board.play(board.square(a.row(), a.col()), type))
+            return false;
+
+        Player mover = firstMoves ? firstPlayer : secondPlayer;
+        if (mover != null) {
+            if (type == Bitboard.BOMB)
+                mover.reduce_bomb();
+            else if (type == Bitboard.UNFLIPPABLE)
+                mover.reduce_unflippedable();
+        }
+        return true;
+    }
+
+    @Override
+    public Disc getDiscAtPosition(Position position) {
+        if (!isOnBoard(position))
+            return null;
+        int square = board.square(position.row(), position.col());
+        int type = board.typeAt(square);
+        if (type < 0)
+            return null;
+        return (board.isFirstPlayerDisc(square) ? firstDiscs : secondDiscs).get(type);
+    }
+
+    @Override
+    public int getBoardSize() {
+        return size;
+    }
+
+    @Override
+    public List<Position> ValidMoves() {
+        if (SearchStats.ENABLED)
+            SearchStats.validMovesCalled();
+        long[] moves = new long[board.words()];
+        board.legalMoves(moves);
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < moves.length; i++) {
+            for (long m = moves[i]; m != 0; m &= m - 1) {
+                int square = i << 6 | Long.numberOfTrailingZeros(m);
+                positions.add(new Position(board.row(square), board.col(square)));
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Allocation-free companion of ValidMoves() and countFlips(Position), see
+     * {@link BitboardGameLogic#validMoves(int[], int[])}. The squares are numbered by
+     * {@link GridBitboard#square(int, int)}.
+     *
+     * @param squares    Receives the valid squares; size * size entries are always enough.
+     * @param flipCounts Receives the flip count of each square, at the same index.
+     * @return The number of valid moves written to the buffers.
+     */
+    public int validMoves(int[] squares, int[] flipCounts) {
+        if (SearchStats.ENABLED)
+            SearchStats.validMovesCalled();
+        return board.legalMoves(squares, flipCounts);
+    }
+
+    @Override
+    public int countFlips(Position a) {
+        if (SearchStats.ENABLED)
+            SearchStats.countFlipsCalled();
+        if (!isOnBoard(a))
+            return 0;
+        return board.flipMask(board.square(a.row(), a.col()), flips);
+    }
+
+    @Override
+    public Player getFirstPlayer() {
+        return firstPlayer;
+    }
+
+    @Override
+    public Player getSecondPlayer() {
+        return secondPlayer;
+    }
+
+    @Override
+    public void setPlayers(Player player1, Player player2) {
+        this.firstPlayer = player1;
+        this.secondPlayer = player2;
+        this.firstDiscs = new PlayerDiscs(player1);
+        this.secondDiscs = new PlayerDiscs(player2);
+    }
+
+    @Override
+    public boolean isFirstPlayerTurn() {
+        return board.isFirstToMove();
+    }
+
+    @Override
+    public boolean isGameFinished() {
+        if (board.legalMoves(flips))
+            return false;
+        if (!winRecorded) {
+            winRecorded = true;
+            int firstDiscs = board.discCount(true);
+            int secondDiscs = board.discCount(false);
+            if (firstDiscs > secondDiscs && firstPlayer != null)
+                firstPlayer.addWin();
+            else if (secondDiscs > firstDiscs && secondPlayer != null)
+                secondPlayer.addWin();
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        board = GridBitboard.initial(size);
+        winRecorded = false;
+        if (firstPlayer != null)
+            firstPlayer.reset_bombs_and_unflippedable();
+        if (secondPlayer != null)
+            secondPlayer.reset_bombs_and_unflippedable();
+    }
+
+    @Override
+    public void undoLastMove() {
+        // Undo is only allowed when both players are human
+        if (firstPlayer == null || secondPlayer == null || !firstPlayer.isHuman() || !secondPlayer.isHuman())
+            return;
+        if (!board.undo())
+            return;
+        winRecorded = false;
+        firstPlayer.number_of_bombs = board.firstBombs;
+        firstPlayer.number_of_unflippedable = board.firstUnflippables;
+        secondPlayer.number_of_bombs = board.secondBombs;
+        secondPlayer.number_of_unflippedable = board.secondUnflippables;
+    }
+
+    /**
+     * @return A copy of the current position, which the caller is free to modify.
+     */
+    public GridBitboard getBoard() {
+        return board.copy();
+    }
+
+    private boolean isOnBoard(Position a) {
+        return a != null && a.row() >= 0 && a.row() < size && a.col() >= 0 && a.col() < size;
+    }
+
+    private static int typeOf(Disc disc) {
+        if (disc instanceof BombDisc)
+            return Bitboard.BOMB;
+        if (disc instanceof UnflippableDisc)
+            return Bitboard.UNFLIPPABLE;
+        return Bitboard.SIMPLE;
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * A negamax alpha-beta search over {@link GridBitboard} positions, so that AlphaBetaAI can play on the board
+ * sizes other than 8x8. It searches like {@link AlphaBetaSearch}: iterative deepening, the best move of the
+ * previous iteration first, then the moves by square weight, and a deadline polled every 256 nodes.
+ * It has no transposition table and no pattern evaluation, which are built for the 8x8 board; the leaves are
+ * scored with the classic positional weights, mobility and unflippable discs, with weights laid out for the
+ * size of the board.
+ * A move is encoded as {@code square | type << 8}, as in {@link GridBitboard#lastMove()}.
+ * An instance is not thread safe.
+ */
+public class GridSearch {
+    private static final int MAX_PLY = GridBitboard.MAX_SIZE * GridBitboard.MAX_SIZE;
+    private static final int CLOCK_CHECK_INTERVAL = 256; // nodes between two deadline checks
+
+    private GridBitboard board;  // the searched position, changed with play/undo
+    private int[] squareWeights; // of the size of the searched board
+    // Per ply, allocated on first use: the moves, their ordering scores and the legal squares
+    private final int[][] moves = new int[MAX_PLY + 1][];
+    private final int[][] orderScores = new int[MAX_PLY + 1][];
+    private final long[][] legal = new long[MAX_PLY + 1][];
+    private long[] mobility;
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+    private long expandedNodes;  // the statistics counters are only kept when SearchStats.ENABLED
+    private long generatedMoves;
+    private int completedDepth;
+
+    public static int square(int move) {
+        return move & 0xff;
+    }
+
+    public static int type(int move) {
+        return move >>> 8;
+    }
+
+    /**
+     * Searches the position with iterative deepening until the deadline passes or the game tree is exhausted.
+     *
+     * @param root        The position to search; it is not modified.
+     * @param budgetNanos The time budget of the search in nanoseconds.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(GridBitboard root, long budgetNanos) {
+        deadline = System.nanoTime() + budgetNanos;
+        aborted = false;
+        nodes = expandedNodes = generatedMoves = 0;
+        completedDepth = 0;
+        if (board == null || board.size() != root.size()) {
+            board = root.copy();
+            squareWeights = squareWeights(root.size());
+            mobility = new long[root.words()];
+            for (int ply = 0; ply <= MAX_PLY; ply++) {
+                moves[ply] = orderScores[ply] = null;
+                legal[ply] = null;
+            }
+        } else {
+            board.copyFrom(root);
+        }
+
+        int count = generateMoves(0);
+        if (count == 0)
+            return -1;
+        sortByScore(moves[0], orderScores[0], count);
+        int bestMove = moves[0][0];
+        int maxDepth = board.emptyCount();
+        for (int depth = 1; depth <= maxDepth && !aborted; depth++) {
+            int move = searchRoot(count, depth, bestMove);
+            if (aborted)
+                break;
+            bestMove = move;
+            completedDepth = depth;
+        }
+        return bestMove;
+    }
+
+    private int searchRoot(int count, int depth, int previousBest) {
+        int[] rootMoves = moves[0];
+        for (int i = 0; i < count; i++) {
+            if (rootMoves[i] == previousBest) {
+                rootMoves[i] = rootMoves[0];
+                rootMoves[0] = previousBest;
+                break;
+            }
+        }
+        int alpha = -AlphaBetaSearch.INFINITY;
+        int bestMove = rootMoves[0];
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            board.play(square(move), type(move));
+            int score = -negamax(1, depth - 1, -AlphaBetaSearch.INFINITY, -alpha);
+            board.undo();
+            if (aborted)
+                return bestMove;
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    private int negamax(int ply, int depth, int alpha, int beta) {
+        if (++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline)
+            aborted = true;
+        if (aborted)
+            return 0;
+        if (depth == 0)
+            return board.legalMoves(mobility) ? evaluate() : finalScore();
+
+        int count = generateMoves(ply);
+        if (count == 0)
+            return finalScore();
+        if (SearchStats.ENABLED) {
+            expandedNodes++;
+            generatedMoves += count;
+        }
+        int[] plyMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        int best = -AlphaBetaSearch.INFINITY;
+        for (int i = 0; i < count; i++) {
+            // Selection sort step: bring the most promising remaining move to index i
+            int pick = i;
+            for (int j = i + 1; j < count; j++)
+                if (scores[j] > scores[pick])
+                    pick = j;
+            int move = plyMoves[pick];
+            plyMoves[pick] = plyMoves[i];
+            scores[pick] = scores[i];
+            plyMoves[i] = move;
+
+            board.play(square(move), type(move));
+            int score = -negamax(ply + 1, depth - 1, -beta, -alpha);
+            board.undo();
+            if (aborted)
+                return 0;
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes every legal move of the position (one per available disc type and square) into the ply's buffers,
+     * with its square weight as ordering score, as AlphaBetaSearch does.
+     */
+    private int generateMoves(int ply) {
+        if (moves[ply] == null) {
+            int squares = board.size() * board.size();
+            moves[ply] = new int[3 * squares];
+            orderScores[ply] = new int[3 * squares];
+            legal[ply] = new long[board.words()];
+        }
+        long[] squares = legal[ply];
+        if (!board.legalMoves(squares))
+            return 0;
+        int[] plyMoves = moves[ply];
+        int[] scores = orderScores[ply];
+        boolean bombs = board.hasInventory(Bitboard.BOMB);
+        boolean unflippables = board.hasInventory(Bitboard.UNFLIPPABLE);
+        int count = 0;
+        for (int i = 0; i < squares.length; i++) {
+            for (long m = squares[i]; m != 0; m &= m - 1) {
+                int sq = i << 6 | Long.numberOfTrailingZeros(m);
+                int weight = squareWeights[sq];
+                plyMoves[count] = sq | Bitboard.SIMPLE << 8;
+                scores[count++] = weight;
+                if (unflippables) {
+                    plyMoves[count] = sq | Bitboard.UNFLIPPABLE << 8;
+                    scores[count++] = weight - 10;
+                }
+                if (bombs) {
+                    plyMoves[count] = sq | Bitboard.BOMB << 8;
+                    scores[count++] = weight - 20;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void sortByScore(int[] plyMoves, int[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = plyMoves[i], score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                plyMoves[j + 1] = plyMoves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            plyMoves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Static evaluation from the point of view of the side to move, as {@link AlphaBetaSearch#evaluate(Bitboard)}.
+     * The legal moves of the side to move are already in the mobility buffer.
+     */
+    private int evaluate() {
+        boolean firstToMove = board.isFirstToMove();
+        long[] own = firstToMove ? board.first : board.second;
+        long[] opp = firstToMove ? board.second : board.first;
+        int score = weightSum(own) - weightSum(opp);
+        int ownMobility = GridBitboard.bitCount(mobility);
+        board.legalMoves(!firstToMove, mobility);
+        score += 8 * (ownMobility - GridBitboard.bitCount(mobility));
+        int stable = 0;
+        for (int i = 0; i < own.length; i++)
+            stable += Long.bitCount(own[i] & board.unflippable[i]) - Long.bitCount(opp[i] & board.unflippable[i]);
+        return score + 20 * stable;
+    }
+
+    private int finalScore() {
+        int diff = board.discCount(board.isFirstToMove()) - board.discCount(!board.isFirstToMove());
+        if (diff > 0)
+            return AlphaBetaSearch.WIN + diff;
+        if (diff < 0)
+            return -AlphaBetaSearch.WIN + diff;
+        return 0;
+    }
+
+    private int weightSum(long[] mask) {
+        int sum = 0;
+        for (int i = 0; i < mask.length; i++) {
+            for (long m = mask[i]; m != 0; m &= m - 1)
+                sum += squareWeights[i << 6 | Long.numberOfTrailingZeros(m)];
+        }
+        return sum;
+    }
+
+    /**
+     * Lays the classic weights out on a board of the given size: the corners, the squares next to them, the
+     * edges, the ring inside the edges and the center get the weights they have on the 8x8 board.
+     */
+    private static int[] squareWeights(int size) {
+        GridBitboard layout = GridBitboard.empty(size);
+        int[] weights = new int[layout.square(size - 1, size - 1) + 1];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int r = Math.min(row, size - 1 - row), c = Math.min(col, size - 1 - col);
+                int weight;
+                if (r == 0 && c == 0)
+                    weight = 100;
+                else if (r == 1 && c == 1)
+                    weight = -50;
+                else if (r + c == 1)
+                    weight = -20;
+                else if (r == 0 || c == 0)
+                    weight = Math.min(r, c) == 0 && Math.max(r, c) == 2 ? 10 : 5;
+                else if (r == 1 || c == 1)
+                    weight = -2;
+                else
+                    weight = r >= 3 && c >= 3 ? 0 : 1;
+                weights[layout.square(row, col)] = weight;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return The number of nodes visited by the last search.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Adds the work of the last search to the statistics of the move being chosen.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        record.addSearch(nodes, 0, 0, expandedNodes, generatedMoves);
+    }
+
+    /**
+     * @return The deepest iteration the last search completed.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+}
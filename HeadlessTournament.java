@@ -0,0 +1,263 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays many AI-vs-AI games without the GUI, to compare two registered AI players.
+ * The games run on a pool of worker threads, each game on its own {@link BitboardGameLogic}, and the
+ * players swap colors every game. The report shows wins, draws and losses of the first AI, the Elo
+ * difference with its 95% confidence interval, the number of games per second and the average time
+ * an AI needs to choose a move, with the use of the opening book when there is one.
+ * The games can be archived in a game-record file (see {@link GameRecordWriter}).
+ * With --size, the games are played on a board of another size, on a {@link GridGameLogic} (the game records
+ * are 8x8 only).
+ * When run with -Dreversi.cache.entries=&lt;n&gt;, the games share a {@link PositionCache} per worker thread,
+ * whose hit rate and memory are reported.
+ * When run with -Dreversi.stats=true, the statistics of every AI move (see {@link SearchStats}) are summed up
+ * per AI type in the report, and --stats writes them as JSON lines: one per move, then one summary per AI type.
+ * Usage: java HeadlessTournament &lt;AI type&gt; &lt;AI type&gt; &lt;games&gt; [threads] [--record &lt;file&gt;]
+ * [--stats &lt;file&gt;] [--size &lt;board size&gt;]
+ */
+public class HeadlessTournament {
+    private final String firstType;
+    private final String secondType;
+    private final LongAdder wins = new LongAdder();   // games won by the first AI type
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder losses = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private GameRecordWriter recordWriter; // null when the games are not recorded
+    private int boardSize = Bitboard.SIZE;
+
+    public HeadlessTournament(String firstType, String secondType) {
+        this.firstType = firstType;
+        this.secondType = secondType;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java HeadlessTournament <AI type> <AI type> <games> [threads] [--record <file>]"
+                    + " [--stats <file>] [--size <board size>]");
+            System.exit(1);
+        }
+        AIPlayer.registerAllAIPlayers();
+        List<String> types = AIPlayer.getAIPlayerTypes();
+        for (int i = 0; i < 2; i++) {
+            if (!types.contains(args[i])) {
+                System.err.println("Unknown AI player type: " + args[i] + ", expected one of " + types);
+                System.exit(1);
+            }
+        }
+        int games = Integer.parseInt(args[2]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        String recordFile = null;
+        String statsFile = null;
+        int boardSize = Bitboard.SIZE;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--record"))
+                recordFile = args[++i];
+            else if (args[i].equals("--stats"))
+                statsFile = args[++i];
+            else if (args[i].equals("--size"))
+                boardSize = Integer.parseInt(args[++i]);
+            else
+                threads = Integer.parseInt(args[i]);
+        }
+        if (statsFile != null && !SearchStats.ENABLED) {
+            System.err.println("--stats needs the statistics to be enabled with -Dreversi.stats=true");
+            System.exit(1);
+        }
+        if (recordFile != null && boardSize != Bitboard.SIZE) {
+            System.err.println("--record only records games on the " + Bitboard.SIZE + "x" + Bitboard.SIZE + " board");
+            System.exit(1);
+        }
+        Writer statsWriter = statsFile == null ? null : new BufferedWriter(new FileWriter(statsFile));
+        SearchStats.setJsonSink(statsWriter);
+
+        HeadlessTournament tournament = new HeadlessTournament(args[0], args[1]);
+        tournament.setBoardSize(boardSize);
+        if (recordFile != null)
+            tournament.setRecordWriter(new GameRecordWriter(new FileOutputStream(recordFile)));
+        long start = System.nanoTime();
+        try {
+            tournament.play(games, threads);
+        } finally {
+            if (recordFile != null)
+                tournament.recordWriter.close();
+            if (statsWriter != null) {
+                SearchStats.setJsonSink(null);
+                for (SearchStats stats : SearchStats.all())
+                    statsWriter.write(stats.toJson() + "\n");
+                statsWriter.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        tournament.printReport(seconds);
+    }
+
+    /**
+     * @param recordWriter Where to record every game played from now on, or null not to record them.
+     */
+    public void setRecordWriter(GameRecordWriter recordWriter) {
+        this.recordWriter = recordWriter;
+    }
+
+    /**
+     * @param boardSize The number of rows and columns of the board of the games played from now on.
+     * @throws IllegalArgumentException If the size is not supported (see {@link GridBitboard}).
+     */
+    public void setBoardSize(int boardSize) {
+        if (boardSize != Bitboard.SIZE)
+            GridBitboard.empty(boardSize); // checks the size
+        this.boardSize = boardSize;
+    }
+
+    /**
+     * Plays the games and waits until they are all finished.
+     * Every worker thread creates its own players once, and reuses them for all its games.
+     *
+     * @param games   The number of games to play.
+     * @param threads The number of worker threads.
+     */
+    public void play(int games, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextGame = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                // Both AI types in both colors
+                AIPlayer firstAsPlayerOne = AIPlayer.createAIPlayer(firstType, true);
+                AIPlayer secondAsPlayerTwo = AIPlayer.createAIPlayer(secondType, false);
+                AIPlayer secondAsPlayerOne = AIPlayer.createAIPlayer(secondType, true);
+                AIPlayer firstAsPlayerTwo = AIPlayer.createAIPlayer(firstType, false);
+                for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+                    boolean firstTypeStarts = game % 2 == 0;
+                    int diff = firstTypeStarts
+                            ? playGame(firstAsPlayerOne, secondAsPlayerTwo)
+                            : -playGame(secondAsPlayerOne, firstAsPlayerTwo);
+                    if (diff > 0)
+                        wins.increment();
+                    else if (diff < 0)
+                        losses.increment();
+                    else
+                        draws.increment();
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game to the end.
+     *
+     * @return The final disc difference, from the point of view of the first player.
+     */
+    private int playGame(AIPlayer playerOne, AIPlayer playerTwo) {
+        PlayableLogic logic = boardSize == Bitboard.SIZE ? new BitboardGameLogic() : new GridGameLogic(boardSize);
+        logic.setPlayers(playerOne, playerTwo);
+        logic.reset();
+        if (recordWriter != null && logic instanceof BitboardGameLogic)
+            recordWriter.record((BitboardGameLogic) logic);
+        while (!logic.isGameFinished()) {
+            AIPlayer current = logic.isFirstPlayerTurn() ? playerOne : playerTwo;
+            long start = System.nanoTime();
+            Move move = SearchStats.makeMove(current, logic);
+            moveNanos.add(System.nanoTime() - start);
+            moves.increment();
+            if (move == null || !logic.locate_disc(move.position(), move.disc()))
+                throw new IllegalStateException(current.getClass().getSimpleName() + " played an illegal move: " + move);
+        }
+        if (logic instanceof GridGameLogic) {
+            GridBitboard board = ((GridGameLogic) logic).getBoard();
+            return board.discCount(true) - board.discCount(false);
+        }
+        Bitboard board = ((BitboardGameLogic) logic).getBitboard();
+        return board.discCount(true) - board.discCount(false);
+    }
+
+    /**
+     * @return The number of games won by the first AI type so far.
+     */
+    long getWins() {
+        return wins.sum();
+    }
+
+    long getDraws() {
+        return draws.sum();
+    }
+
+    long getLosses() {
+        return losses.sum();
+    }
+
+    /**
+     * Prints the results of the games played so far.
+     *
+     * @param seconds The wall-clock duration of the tournament.
+     */
+    public void printReport(double seconds) {
+        long w = wins.sum(), d = draws.sum(), l = losses.sum();
+        long n = w + d + l;
+        System.out.printf("%s vs %s: %d games on %dx%d%n", firstType, secondType, n, boardSize, boardSize);
+        System.out.printf("  %s wins %d, draws %d, losses %d%n", firstType, w, d, l);
+        if (n > 0) {
+            double score = (w + 0.5 * d) / n;
+            double variance = (w * sq(1 - score) + d * sq(0.5 - score) + l * sq(score)) / n;
+            double margin = 1.96 * Math.sqrt(variance / n);
+            System.out.printf("  Elo difference %+.1f (95%% CI %+.1f .. %+.1f)%n",
+                    elo(score), elo(score - margin), elo(score + margin));
+        }
+        System.out.printf("  %.1f games/s (%.0f games/min)%n", n / seconds, n * 60 / seconds);
+        long moveCount = moves.sum();
+        if (moveCount > 0)
+            System.out.printf("  average move latency %.3f ms over %d moves%n", moveNanos.sum() / 1e6 / moveCount, moveCount);
+        if (OpeningBook.getDefault() != null)
+            System.out.println("  " + OpeningBook.getDefault().report(n));
+        String ponderReport = Ponderer.report();
+        if (ponderReport != null)
+            System.out.println("  " + ponderReport);
+        String cacheReport = PositionCache.report();
+        if (cacheReport != null)
+            System.out.println("  " + cacheReport);
+        for (SearchStats stats : SearchStats.all()) {
+            System.out.printf("  %s: %d moves, p50 %.2f ms, p99 %.2f ms, max %.2f ms", stats.getAiType(),
+                    stats.getMoves(), stats.getP50MoveMillis(), stats.getP99MoveMillis(), stats.getMaxMoveMillis());
+            if (stats.getMeanNodes() > 0)
+                System.out.printf(", %.0f nodes, depth %.1f, table hits %.1f%%, branching %.2f", stats.getMeanNodes(),
+                        stats.getMeanDepth(), 100 * stats.getTableHitRate(), stats.getBranchingFactor());
+            System.out.printf(", %.1f ValidMoves and %.1f countFlips calls per move%n",
+                    (double) stats.getValidMovesCalls() / stats.getMoves(),
+                    (double) stats.getCountFlipsCalls() / stats.getMoves());
+        }
+    }
+
+    /**
+     * @param score The expected score, in [0, 1].
+     * @return The Elo difference matching the score (infinite for a score of 0 or 1).
+     */
+    static double elo(double score) {
+        if (score <= 0)
+            return Double.NEGATIVE_INFINITY;
+        if (score >= 1)
+            return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+}
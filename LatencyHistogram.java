@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that many threads can record into without contention, for latency percentiles.
+ * Every power of two is split into 8 buckets, so a percentile is known to within 12.5% whatever the range,
+ * and recording is one LongAdder increment: the bucket of a value is computed from its leading zeros.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final LongAdder[] counts = new LongAdder[64 * SUB_BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos A duration in nanoseconds; negative durations count as 0.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        counts[bucket(nanos)].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * @return The number of recorded durations.
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder c : counts)
+            count += c.sum();
+        return count;
+    }
+
+    /**
+     * @return The mean of the recorded durations in nanoseconds, or 0 if there are none.
+     */
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * @param fraction The fraction of the durations, e.g. 0.99 for the 99th percentile.
+     * @return The upper bound of the bucket holding that percentile in nanoseconds, or 0 if there are no durations.
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[counts.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++)
+            count += snapshot[i] = counts[i].sum();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Forgets every recorded duration. Durations recorded meanwhile by other threads may be kept or lost.
+     */
+    public void reset() {
+        for (LongAdder c : counts)
+            c.reset();
+        total.reset();
+    }
+
+    // The values below 8 have a bucket each; above, the highest bit and the 3 bits after it choose the bucket
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+}
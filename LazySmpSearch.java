@@ -0,0 +1,140 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A parallel alpha-beta search using Lazy SMP: every worker runs its own iterative deepening
+ * {@link AlphaBetaSearch} on its own copy of the position, and all the workers share one lock-free
+ * {@link TranspositionTable}. The workers do not communicate otherwise; they help each other through
+ * the table, and half of the helpers skip a depth so that they search ahead of the main worker.
+ * The main worker runs on the calling thread, the helpers on a ForkJoinPool.
+ */
+public class LazySmpSearch {
+    private final TranspositionTable table;
+    private final AlphaBetaSearch[] workers;
+    private final ForkJoinPool pool;
+    private final ForkJoinTask<?>[] helpers;
+    private long nodes;
+    private int completedDepth;
+
+    /**
+     * @param table   The transposition table shared by all the workers.
+     * @param threads The number of workers (1 searches on the calling thread only).
+     */
+    public LazySmpSearch(TranspositionTable table, int threads) {
+        this(table, threads, null);
+    }
+
+    /**
+     * @param table   The transposition table shared by all the workers.
+     * @param threads The number of workers (1 searches on the calling thread only).
+     * @param weights The pattern weights the workers evaluate with, or null for the classic evaluation.
+     */
+    public LazySmpSearch(TranspositionTable table, int threads, PatternWeights weights) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed: " + threads);
+        this.table = table;
+        workers = new AlphaBetaSearch[threads];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new AlphaBetaSearch(table, weights);
+        helpers = new ForkJoinTask<?>[threads - 1];
+        pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+    }
+
+    /**
+     * Searches the position with all the workers until the budget is spent or the main worker
+     * has searched the whole game tree.
+     *
+     * @param root        The position to search; it is not modified.
+     * @param budgetNanos The time budget of the search in nanoseconds.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(Bitboard root, long budgetNanos) {
+        return search(root, budgetNanos, Bitboard.SIZE * Bitboard.SIZE);
+    }
+
+    /**
+     * Searches the position with all the workers until the budget is spent or the main worker
+     * has completed the given depth.
+     *
+     * @param root        The position to search; it is not modified.
+     * @param budgetNanos The time budget of the search in nanoseconds.
+     * @param lastDepth   The deepest iteration to search.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(Bitboard root, long budgetNanos, int lastDepth) {
+        long deadline = System.nanoTime() + budgetNanos;
+        table.newSearch();
+        for (AlphaBetaSearch worker : workers)
+            worker.clearStop();
+        for (int i = 0; i < helpers.length; i++) {
+            AlphaBetaSearch helper = workers[i + 1];
+            int firstDepth = 1 + (i + 1) % 2;
+            helpers[i] = pool.submit(() -> helper.search(root, deadline, firstDepth, lastDepth));
+        }
+
+        int move = workers[0].search(root, deadline, 1, lastDepth);
+
+        for (int i = 0; i < helpers.length; i++)
+            workers[i + 1].stop();
+        for (ForkJoinTask<?> helper : helpers)
+            helper.join();
+
+        nodes = 0;
+        for (AlphaBetaSearch worker : workers)
+            nodes += worker.getNodes();
+        completedDepth = workers[0].getCompletedDepth();
+        return move;
+    }
+
+    /**
+     * Stops a running search from any thread; it returns the best move found so far.
+     */
+    public void stop() {
+        for (AlphaBetaSearch worker : workers)
+            worker.stop();
+    }
+
+    /**
+     * Stops the worker threads. The search cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    /**
+     * @return The number of workers.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * @return The number of nodes visited by all the workers during the last search.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Adds the work of all the workers during the last search to the statistics of the move being chosen.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        for (AlphaBetaSearch worker : workers)
+            worker.addStatsTo(record);
+    }
+
+    /**
+     * @return The deepest iteration completed by the main worker during the last search.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return The score of the last search's best move, for the side to move.
+     */
+    public int getBestScore() {
+        return workers[0].getBestScore();
+    }
+}
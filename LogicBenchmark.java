@@ -0,0 +1,447 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks of the PlayableLogic hot paths, to compare the engine's speed across changes.
+ * Every benchmark is run on four fixed corpora of positions (opening, midgame, endgame and bomb-heavy),
+ * generated from seeded random games so that every run measures the same positions.
+ * Each benchmark is warmed up first, then measured over several timed iterations, and reports its
+ * throughput (operations per second) and the bytes it allocates per operation, measured with the
+ * thread allocation counter of the JVM.
+ * The flip counts of all 64 squares are measured both as 64 single countFlips calls and as one batch call.
+ * Full RandomAI and GreedyAI games are benchmarked end to end as well, and the move generation of
+ * {@link GridBitboard} on midgame positions of every board size from 6x6 to 16x16, to show how it scales.
+ * With --allocation, it only checks that the allocation-free calls ({@link BitboardGameLogic#validMovesMask()}
+ * and {@link BitboardGameLogic#validMoves(int[], int[])}) allocate nothing once warmed up, and exits with
+ * status 1 if any of them allocates.
+ * The harness is plain Java, not JMH: the project has no build file to bring JMH in. It builds and runs from the
+ * repository root with the JDK alone, without the course classes that are not part of this tree:
+ * javac -encoding UTF-8 -sourcepath . -d out LogicBenchmark.java &amp;&amp; java -cp out LogicBenchmark
+ * Usage: java LogicBenchmark [iterations] [csv file to append the results to]
+ * or: java LogicBenchmark --allocation
+ */
+public class LogicBenchmark {
+    private static final long SEED = 42;
+    private static final int POSITIONS_PER_CORPUS = 64;
+    private static final long ITERATION_NANOS = 300_000_000L;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ALLOCATION_CALLS = 200_000;
+    private static final Position[] SQUARES = new Position[64];
+
+    static {
+        for (int square = 0; square < SQUARES.length; square++)
+            SQUARES[square] = new Position(square / Bitboard.SIZE, square % Bitboard.SIZE);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A benchmarked operation on one position of a corpus.
+     */
+    interface Operation<T> {
+        /**
+         * @return Any value depending on the result, so that the JIT cannot remove the work.
+         */
+        long run(T position);
+    }
+
+    /**
+     * A game set to a corpus position, with one of its legal moves ready to be played.
+     */
+    static class Fixture {
+        final BitboardGameLogic logic;
+        final Position move;
+        final Disc disc;
+        final int[] squares = new int[64];
+        final int[] flipCounts = new int[64];
+
+        Fixture(BitboardGameLogic logic, Position move, Disc disc) {
+            this.logic = logic;
+            this.move = move;
+            this.disc = disc;
+        }
+    }
+
+    /**
+     * A player that counts as human, so that undoLastMove is allowed.
+     */
+    static class BenchmarkPlayer extends Player {
+        BenchmarkPlayer(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        boolean isHuman() {
+            return true;
+        }
+    }
+
+    private final int iterations;
+    private final PrintWriter csv;
+    private long sink;
+    static volatile long blackhole; // publishes the sink, so that the benchmarked work is not dead code
+
+    LogicBenchmark(int iterations, PrintWriter csv) {
+        this.iterations = iterations;
+        this.csv = csv;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--allocation"))
+            System.exit(checkAllocation() ? 0 : 1);
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        PrintWriter csv = args.length > 1 ? new PrintWriter(new FileWriter(args[1], true)) : null;
+        AIPlayer.registerAllAIPlayers();
+
+        LogicBenchmark benchmark = new LogicBenchmark(iterations, csv);
+        System.out.printf("%-28s %-10s %16s %12s%n", "benchmark", "corpus", "ops/s", "B/op");
+        benchmark.runAll();
+        if (csv != null)
+            csv.close();
+    }
+
+    /**
+     * Measures the bytes the allocation-free calls allocate per call on every corpus, after a warmup long
+     * enough for the JIT to compile them.
+     *
+     * @return Whether none of them allocates.
+     */
+    static boolean checkAllocation() {
+        long thread = Thread.currentThread().getId();
+        boolean allocationFree = true;
+        System.out.printf("%-28s %-10s %12s%n", "call", "corpus", "B/call");
+        for (String corpus : new String[]{"opening", "midgame", "endgame", "bombs"}) {
+            List<Fixture> fixtures = corpus(corpus);
+            List<Operation<Fixture>> calls = List.of(f -> f.logic.validMovesMask(),
+                    f -> f.logic.validMoves(f.squares, f.flipCounts));
+            String[] names = {"validMovesMask()", "validMoves(int[],int[])"};
+            for (int c = 0; c < calls.size(); c++) {
+                Operation<Fixture> call = calls.get(c);
+                long sum = 0;
+                for (int i = 0; i < ALLOCATION_CALLS; i++)
+                    sum += call.run(fixtures.get(i % fixtures.size()));
+                long before = THREADS.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < ALLOCATION_CALLS; i++)
+                    sum += call.run(fixtures.get(i % fixtures.size()));
+                long bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+                blackhole = sum;
+                System.out.printf("%-28s %-10s %12.3f%n", names[c], corpus, (double) bytes / ALLOCATION_CALLS);
+                allocationFree &= bytes == 0;
+            }
+        }
+        System.out.println(allocationFree ? "no call allocates" : "FAILED: some calls allocate");
+        return allocationFree;
+    }
+
+    void runAll() {
+        String[] corpora = {"opening", "midgame", "endgame", "bombs"};
+        for (String corpus : corpora) {
+            List<Fixture> fixtures = corpus(corpus);
+            measure("ValidMoves", corpus, fixtures, f -> f.logic.ValidMoves().size());
+            measure("validMoves(int[],int[])", corpus, fixtures, f -> f.logic.validMoves(f.squares, f.flipCounts));
+            measure("countFlips", corpus, fixtures, f -> f.logic.countFlips(f.move));
+            measure("ValidMoves+countFlips", corpus, fixtures, f -> {
+                long sum = 0;
+                for (Position p : f.logic.ValidMoves())
+                    sum += f.logic.countFlips(p);
+                return sum;
+            });
+            measure("countFlips x64", corpus, fixtures, f -> {
+                long sum = 0;
+                for (Position p : SQUARES)
+                    sum += f.logic.countFlips(p);
+                return sum;
+            });
+            measure("countFlips(int[]) batch", corpus, fixtures, f -> f.logic.countFlips(f.flipCounts));
+            measure("locate_disc+undoLastMove", corpus, fixtures, f -> {
+                f.logic.locate_disc(f.move, f.disc);
+                f.logic.undoLastMove();
+                return f.logic.isFirstPlayerTurn() ? 1 : 0;
+            });
+            measure("getDiscAtPosition x64", corpus, fixtures, f -> {
+                long sum = 0;
+                for (Position p : SQUARES) {
+                    Disc disc = f.logic.getDiscAtPosition(p);
+                    if (disc != null)
+                        sum += disc.getType().length();
+                }
+                return sum;
+            });
+        }
+        List<Bitboard> chains = bombChains();
+        measure("flipMask", "bombchain", chains, b -> {
+            long sum = 0;
+            for (long moves = b.legalMoves(); moves != 0; moves &= moves - 1)
+                sum += Long.bitCount(b.flipMask(Long.numberOfTrailingZeros(moves)));
+            return sum;
+        });
+        measure("recursive resolver", "bombchain", chains, b -> {
+            long sum = 0;
+            for (long moves = b.legalMoves(); moves != 0; moves &= moves - 1)
+                sum += Long.bitCount(recursiveFlips(b, Long.numberOfTrailingZeros(moves)));
+            return sum;
+        });
+        for (int size = GridBitboard.MIN_SIZE; size <= GridBitboard.MAX_SIZE; size += 2) {
+            List<GridBitboard> boards = gridCorpus(size);
+            String corpus = size + "x" + size;
+            long[] moves = new long[boards.get(0).words()];
+            int[] squares = new int[size * size], flipCounts = new int[size * size];
+            measure("grid legalMoves", corpus, boards, b -> b.legalMoves(moves) ? moves[0] : 0);
+            measure("grid legalMoves+flips", corpus, boards, b -> b.legalMoves(squares, flipCounts));
+        }
+        for (String type : new String[]{"RandomAI", "GreedyAI"}) {
+            if (AIPlayer.getAIPlayerTypes().contains(type))
+                measureGames(type);
+        }
+    }
+
+    /**
+     * Runs an operation over the corpus, round robin, for the warmup and measured iterations.
+     */
+    <T> void measure(String name, String corpus, List<T> fixtures, Operation<T> operation) {
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            runFor(fixtures, operation);
+        long ops = 0, nanos = 0, bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            ops += runFor(fixtures, operation);
+            nanos += System.nanoTime() - start;
+            bytes += THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+        }
+        report(name, corpus, ops * 1e9 / nanos, (double) bytes / ops);
+    }
+
+    private <T> long runFor(List<T> fixtures, Operation<T> operation) {
+        long end = System.nanoTime() + ITERATION_NANOS;
+        long ops = 0;
+        int size = fixtures.size();
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < size; i++)
+                sink += operation.run(fixtures.get(i));
+            ops += size;
+        }
+        return ops;
+    }
+
+    /**
+     * Plays whole games between two AIs of the same type.
+     */
+    void measureGames(String type) {
+        AIPlayer one = AIPlayer.createAIPlayer(type, true);
+        AIPlayer two = AIPlayer.createAIPlayer(type, false);
+        BitboardGameLogic logic = new BitboardGameLogic();
+        logic.setPlayers(one, two);
+        Fixture fixture = new Fixture(logic, null, null);
+        measure(type + " full game", "games", List.of(fixture), f -> {
+            f.logic.reset();
+            int moves = 0;
+            while (!f.logic.isGameFinished()) {
+                AIPlayer current = f.logic.isFirstPlayerTurn() ? one : two;
+                Move move = current.makeMove(f.logic);
+                f.logic.locate_disc(move.position(), move.disc());
+                moves++;
+            }
+            return moves;
+        });
+    }
+
+    private void report(String name, String corpus, double opsPerSecond, double bytesPerOp) {
+        System.out.printf("%-28s %-10s %16.0f %12.1f%n", name, corpus, opsPerSecond, bytesPerOp);
+        if (csv != null)
+            csv.printf("%s,%s,%.0f,%.1f%n", name, corpus, opsPerSecond, bytesPerOp);
+        blackhole = sink;
+    }
+
+    /**
+     * Builds a corpus of midgame positions of one board size, from random games stopped when about half of the
+     * board is filled (special discs included).
+     *
+     * @param size The board size.
+     * @return The positions of the corpus.
+     */
+    static List<GridBitboard> gridCorpus(int size) {
+        Random random = new Random(SEED + size);
+        long[] moves = new long[GridBitboard.empty(size).words()];
+        int[] squares = new int[size * size], flipCounts = new int[size * size];
+        List<GridBitboard> boards = new ArrayList<>();
+        while (boards.size() < POSITIONS_PER_CORPUS) {
+            GridBitboard board = GridBitboard.initial(size);
+            int plies = size * size / 3 + random.nextInt(size * size / 3);
+            for (int ply = 0; ply < plies && board.legalMoves(moves); ply++) {
+                int count = board.legalMoves(squares, flipCounts);
+                int type = random.nextInt(8) == 0 && board.hasInventory(Bitboard.BOMB) ? Bitboard.BOMB : Bitboard.SIMPLE;
+                board.play(squares[random.nextInt(count)], type);
+            }
+            if (board.legalMoves(moves))
+                boards.add(board.copy());
+        }
+        return boards;
+    }
+
+    /**
+     * Builds the bomb chain stress corpus: all six bombs of both players belong to the opponent of the side
+     * to move and form one chain of adjacent squares, in a board mostly filled with opponent discs,
+     * so that most moves set off the whole chain.
+     *
+     * @return The positions of the corpus.
+     */
+    static List<Bitboard> bombChains() {
+        Random random = new Random(SEED);
+        int chainLength = 2 * Player.initial_number_of_bombs;
+        List<Bitboard> boards = new ArrayList<>();
+        while (boards.size() < POSITIONS_PER_CORPUS) {
+            Bitboard board = new Bitboard();
+            board.firstToMove = true;
+            int square = random.nextInt(64);
+            long chain = 1L << square;
+            while (Long.bitCount(chain) < chainLength) {
+                long next = Bitboard.neighbours(1L << square) & ~chain;
+                if (next == 0)
+                    break;
+                for (int skip = random.nextInt(Long.bitCount(next)); skip > 0; skip--)
+                    next &= next - 1;
+                square = Long.numberOfTrailingZeros(next);
+                chain |= 1L << square;
+            }
+            for (int s = 0; s < 64; s++) {
+                double r = random.nextDouble();
+                if ((chain & (1L << s)) != 0 || r < 0.65)
+                    board.second |= 1L << s;
+                else if (r < 0.85)
+                    board.first |= 1L << s;
+            }
+            board.bombs = chain;
+            board.hash = Zobrist.hash(board);
+            if (Long.bitCount(chain) == chainLength && board.legalMoves() != 0)
+                boards.add(board);
+        }
+        return boards;
+    }
+
+    /**
+     * The straightforward way to resolve bombs, for comparison with {@link Bitboard#flipMask(int)}:
+     * walk the 8 directions square by square, then explode every flipped bomb recursively,
+     * testing the 8 neighbours of each one.
+     */
+    static long recursiveFlips(Bitboard board, int square) {
+        long own = board.own(), opp = board.opponent();
+        long flips = 0;
+        int row = square / 8, col = square % 8;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (dr == 0 && dc == 0)
+                    continue;
+                long line = 0;
+                int r = row + dr, c = col + dc;
+                while (r >= 0 && r < 8 && c >= 0 && c < 8 && (opp & Bitboard.bit(r, c)) != 0) {
+                    line |= Bitboard.bit(r, c);
+                    r += dr;
+                    c += dc;
+                }
+                if (r >= 0 && r < 8 && c >= 0 && c < 8 && (own & Bitboard.bit(r, c)) != 0)
+                    flips |= line & ~board.unflippable;
+            }
+        }
+        long direct = flips;
+        for (int s = 0; s < 64; s++)
+            if ((direct & board.bombs & (1L << s)) != 0)
+                flips = explode(board, s, flips);
+        return flips;
+    }
+
+    private static long explode(Bitboard board, int square, long flips) {
+        long victims = board.opponent() & ~board.unflippable;
+        int row = square / 8, col = square % 8;
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                if (r < 0 || r >= 8 || c < 0 || c >= 8)
+                    continue;
+                long b = Bitboard.bit(r, c);
+                if ((victims & b) != 0 && (flips & b) == 0) {
+                    flips |= b;
+                    if ((board.bombs & b) != 0)
+                        flips = explode(board, r * 8 + c, flips);
+                }
+            }
+        }
+        return flips;
+    }
+
+    /**
+     * Builds one of the fixed corpora.
+     *
+     * @param name opening, midgame, endgame or bombs.
+     * @return The positions of the corpus, each set on its own game.
+     */
+    static List<Fixture> corpus(String name) {
+        int minPly, maxPly;
+        double specialRate = 0.05;
+        switch (name) {
+            case "opening":
+                minPly = 2;
+                maxPly = 12;
+                break;
+            case "midgame":
+                minPly = 20;
+                maxPly = 36;
+                break;
+            case "endgame":
+                minPly = 44;
+                maxPly = 54;
+                break;
+            case "bombs":
+                // Spend the whole special-disc inventory early, so that later moves set off bomb chains
+                minPly = 24;
+                maxPly = 44;
+                specialRate = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + name);
+        }
+        Random random = new Random(SEED + name.hashCode());
+        List<Fixture> fixtures = new ArrayList<>();
+        while (fixtures.size() < POSITIONS_PER_CORPUS) {
+            Fixture fixture = randomFixture(random, minPly + random.nextInt(maxPly - minPly + 1), specialRate);
+            if (fixture != null)
+                fixtures.add(fixture);
+        }
+        return fixtures;
+    }
+
+    /**
+     * Plays random moves and stops at the given move number.
+     *
+     * @return The fixture, or null if the game ended before.
+     */
+    static Fixture randomFixture(Random random, int plies, double specialRate) {
+        Player one = new BenchmarkPlayer(true), two = new BenchmarkPlayer(false);
+        BitboardGameLogic logic = new BitboardGameLogic();
+        logic.setPlayers(one, two);
+        logic.reset();
+        for (int ply = 0; ; ply++) {
+            List<Position> moves = logic.ValidMoves();
+            if (moves.isEmpty())
+                return null;
+            Position move = moves.get(random.nextInt(moves.size()));
+            Player current = logic.isFirstPlayerTurn() ? one : two;
+            Disc disc = new SimpleDisc(current);
+            if (random.nextDouble() < specialRate) {
+                if (current.getNumber_of_bombs() > 0)
+                    disc = new BombDisc(current);
+                else if (current.getNumber_of_unflippedable() > 0)
+                    disc = new UnflippableDisc(current);
+            }
+            if (ply == plies)
+                return new Fixture(logic, move, new SimpleDisc(current));
+            logic.locate_disc(move, disc);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * An AI player that chooses its moves by Monte Carlo tree search (see {@link MctsSearch}): instead of
+ * evaluating positions, it plays thousands of random games from them and prefers the moves that win most often.
+ * Every move is searched for a fixed time budget (in milliseconds), which can be set with the
+ * "reversi.ai.budgetMs" system property or with {@link #setTimeBudget(long)}, and on the number of threads
+ * set with "reversi.ai.threads", as for {@link AlphaBetaAI}.
+ * The tree is kept from one move to the next, so the playouts spent on the opponent's reply are not lost.
+ * The opening book, if any, is consulted before searching. On boards other than 8x8, the move is searched by
+ * a {@link GridSearch} instead.
+ */
+public class MctsAI extends AIPlayer {
+    private static final long DEFAULT_BUDGET_MS = 500;
+
+    private final MctsSearch search = new MctsSearch(Integer.getInteger("reversi.ai.threads", 1));
+    private GridSearch gridSearch; // created on the first move on a board that is not 8x8
+    private long timeBudgetMs = Long.getLong("reversi.ai.budgetMs", DEFAULT_BUDGET_MS);
+    private long lastPlayouts;
+    private long lastNanos;
+
+    public MctsAI(boolean isPlayerOne) {
+        super(isPlayerOne);
+    }
+
+    @Override
+    public Move makeMove(PlayableLogic gameStatus) {
+        long start = System.nanoTime();
+        Move book = bookMove(gameStatus);
+        if (book != null) {
+            lastNanos = System.nanoTime() - start;
+            lastPlayouts = 0;
+            return book;
+        }
+        long budget = timeBudgetMs * 1_000_000L;
+        if (gameStatus.getBoardSize() != Bitboard.SIZE) {
+            if (gridSearch == null)
+                gridSearch = new GridSearch();
+            GridBitboard root = GridBitboard.from(gameStatus);
+            int move = gridSearch.search(root, start + budget - System.nanoTime());
+            lastNanos = System.nanoTime() - start;
+            lastPlayouts = 0;
+            if (move < 0)
+                return null;
+            int square = GridSearch.square(move);
+            return toMove(new Position(root.row(square), root.col(square)), GridSearch.type(move));
+        }
+        int move = search.search(Bitboard.from(gameStatus), start + budget - System.nanoTime());
+        lastNanos = System.nanoTime() - start;
+        lastPlayouts = search.getPlayouts();
+        if (SearchStats.ENABLED)
+            search.addStatsTo(SearchStats.current());
+        if (move < 0)
+            return null;
+        return toMove(move);
+    }
+
+    /**
+     * Sets the time each move may be searched for.
+     *
+     * @param milliseconds The per-move budget, in milliseconds.
+     */
+    public void setTimeBudget(long milliseconds) {
+        this.timeBudgetMs = milliseconds;
+    }
+
+    public long getTimeBudget() {
+        return timeBudgetMs;
+    }
+
+    /**
+     * @return The number of playouts run during the last move.
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * @return The playouts of the previous moves that the last move reused, as root visits.
+     */
+    public int getLastReusedVisits() {
+        return search.getReusedVisits();
+    }
+
+    /**
+     * @return The search speed of the last move, in playouts per second.
+     */
+    public long getLastPlayoutsPerSecond() {
+        return lastNanos == 0 ? 0 : lastPlayouts * 1_000_000_000L / lastNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MctsAI(" + lastPlayouts + " playouts, " + getLastPlayoutsPerSecond() + " playouts/s, "
+                + search.getReusedVisits() + " reused, " + search.getNodeCount() + " nodes)";
+    }
+}
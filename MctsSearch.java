@@ -0,0 +1,338 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monte Carlo tree search over {@link Bitboard} positions, with UCT selection and random playouts.
+ * Playouts need no static evaluation, which bomb chain reactions make unreliable: a playout plays random moves
+ * to the end of the game on the worker's own board, with play and legalMoves only, so it allocates nothing.
+ * All the workers grow one shared tree. The counters of a node are updated atomically, and a worker counts
+ * its visit of every node on its path before the playout (a virtual loss), so that the workers in flight
+ * spread over different branches instead of all following the same one. The score arrives with the result.
+ * A leaf is expanded on its second visit, by compare-and-set of its children, so a node is only expanded once.
+ * The tree is kept between searches: when the next position is two plies below the root (our move, then the
+ * opponent's reply), the matching grandchild becomes the new root with all its statistics.
+ * The main worker runs on the calling thread, the helpers on a ForkJoinPool, as in {@link LazySmpSearch}.
+ * A move is encoded as in {@link AlphaBetaSearch}.
+ */
+public class MctsSearch {
+    private static final double EXPLORATION = 1.0; // the UCT constant, for scores in [0, 1]
+    private static final int EXPANSION_VISITS = 2;
+    private static final int MAX_NODES = 4_000_000; // beyond this, leaves are no longer expanded
+    private static final int SPECIAL_DISC_ODDS = 16; // a playout places a special disc once in this many moves
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final VarHandle VISITS;
+    private static final VarHandle SCORE;
+    private static final VarHandle CHILDREN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+            SCORE = lookup.findVarHandle(Node.class, "score", long.class);
+            CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * A node of the tree: the position reached by a move.
+     */
+    static final class Node {
+        final int move; // the move that led here, -1 at the first root
+        volatile Node[] children; // null until expanded, empty when the game is over
+        volatile int visits;      // the finished playouts through the node, and the ones in flight
+        volatile long score;      // 2 per win and 1 per draw, for the player who played the move
+
+        Node(int move) {
+            this.move = move;
+        }
+    }
+
+    private final Worker[] workers;
+    private final ForkJoinPool pool;
+    private final ForkJoinTask<?>[] helpers;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private Node root;
+    private final Bitboard rootBoard = new Bitboard();
+    private volatile long deadline;
+    private volatile boolean stopped;
+    private long playouts;
+    private int reusedVisits;
+
+    /**
+     * @param threads The number of workers (1 searches on the calling thread only).
+     */
+    public MctsSearch(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed: " + threads);
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(i);
+        helpers = new ForkJoinTask<?>[threads - 1];
+        pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+    }
+
+    /**
+     * Runs playouts with all the workers until the budget is spent, then returns the most visited root move.
+     *
+     * @param position    The position to search; it is not modified.
+     * @param budgetNanos The time budget of the search in nanoseconds.
+     * @return The best move found, or -1 if the side to move has no legal move.
+     */
+    public int search(Bitboard position, long budgetNanos) {
+        deadline = System.nanoTime() + budgetNanos;
+        stopped = false;
+        if (position.legalMoves() == 0)
+            return -1;
+        reroot(position);
+        if (root.children == null)
+            expand(root, rootBoard, workers[0]); // a new tree is empty, so this cannot fail
+
+        for (int i = 0; i < helpers.length; i++)
+            helpers[i] = pool.submit(workers[i + 1]);
+        workers[0].run();
+        for (ForkJoinTask<?> helper : helpers)
+            helper.join();
+
+        playouts = 0;
+        for (Worker worker : workers)
+            playouts += worker.playouts;
+        Node best = null;
+        for (Node child : root.children)
+            if (best == null || child.visits > best.visits)
+                best = child;
+        return best.move;
+    }
+
+    /**
+     * Makes the node of the position the root: the current root if the position has not changed, a grandchild
+     * of it if the position follows from the root by two moves, or else a new tree.
+     */
+    private void reroot(Bitboard position) {
+        Node found = null;
+        if (root != null && root.children != null) {
+            if (Bitboard.samePosition(rootBoard, position)) {
+                found = root;
+            } else {
+                Bitboard board = rootBoard.copy();
+                for (Node child : root.children) {
+                    board.play(AlphaBetaSearch.square(child.move), AlphaBetaSearch.type(child.move));
+                    Node[] grandchildren = child.children;
+                    for (int i = 0; grandchildren != null && i < grandchildren.length && found == null; i++) {
+                        Node grandchild = grandchildren[i];
+                        board.play(AlphaBetaSearch.square(grandchild.move), AlphaBetaSearch.type(grandchild.move));
+                        if (Bitboard.samePosition(board, position))
+                            found = grandchild;
+                        board.undo();
+                    }
+                    board.undo();
+                    if (found != null)
+                        break;
+                }
+            }
+        }
+        if (found == null || found.children == null) {
+            found = new Node(-1);
+            nodeCount.set(0);
+        } else {
+            nodeCount.set(countNodes(found) - 1); // the discarded branches are freed
+        }
+        root = found;
+        reusedVisits = found.visits;
+        rootBoard.copyFrom(position);
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        Node[] children = node.children;
+        if (children != null)
+            for (Node child : children)
+                count += countNodes(child);
+        return count;
+    }
+
+    /**
+     * Creates the children of a node, one per legal move and available disc type, unless another worker did it
+     * first or the tree is full.
+     *
+     * @return The children of the node, or null if it was not expanded.
+     */
+    private Node[] expand(Node node, Bitboard board, Worker worker) {
+        long legal = board.legalMoves();
+        if (legal == 0) {
+            CHILDREN.compareAndSet(node, null, NO_CHILDREN);
+            return node.children;
+        }
+        if (nodeCount.get() >= MAX_NODES)
+            return null;
+        boolean bombs = board.hasInventory(Bitboard.BOMB);
+        boolean unflippables = board.hasInventory(Bitboard.UNFLIPPABLE);
+        Node[] children = new Node[Long.bitCount(legal) * (1 + (bombs ? 1 : 0) + (unflippables ? 1 : 0))];
+        int count = 0;
+        for (; legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            children[count++] = new Node(AlphaBetaSearch.encode(square, Bitboard.SIMPLE));
+            if (unflippables)
+                children[count++] = new Node(AlphaBetaSearch.encode(square, Bitboard.UNFLIPPABLE));
+            if (bombs)
+                children[count++] = new Node(AlphaBetaSearch.encode(square, Bitboard.BOMB));
+        }
+        if (CHILDREN.compareAndSet(node, null, children)) {
+            nodeCount.addAndGet(count);
+            if (SearchStats.ENABLED) {
+                worker.expandedNodes++;
+                worker.generatedMoves += count;
+            }
+        }
+        return node.children;
+    }
+
+    /**
+     * UCT: the child with the best mean score plus an exploration bonus that shrinks as it gets visited.
+     * Children that were never visited come first, in order.
+     */
+    private static Node select(Node parent, Node[] children) {
+        double logVisits = Math.log(Math.max(parent.visits, 1));
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits;
+            if (visits == 0)
+                return child;
+            double value = child.score / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A worker: descends the tree, runs a playout from the leaf, and backs the result up, until the deadline.
+     */
+    private final class Worker implements Runnable {
+        private final Bitboard board = new Bitboard();
+        private final SplittableRandom random;
+        private final Node[] path = new Node[Bitboard.SIZE * Bitboard.SIZE + 1];
+        private final boolean[] firstMoved = new boolean[path.length]; // who played the move into each node
+        long playouts;
+        long expandedNodes;  // the statistics counters are only kept when SearchStats.ENABLED
+        long generatedMoves;
+
+        Worker(int index) {
+            random = new SplittableRandom(System.nanoTime() + 31L * index);
+        }
+
+        @Override
+        public void run() {
+            playouts = expandedNodes = generatedMoves = 0;
+            while (!stopped && System.nanoTime() < deadline) {
+                board.copyFrom(rootBoard);
+                Node node = root;
+                VISITS.getAndAdd(node, 1);
+                int depth = 0;
+                while (true) {
+                    Node[] children = node.children;
+                    if (children == null && (node.visits < EXPANSION_VISITS
+                            || (children = expand(node, board, this)) == null))
+                        break;
+                    if (children.length == 0)
+                        break;
+                    node = select(node, children);
+                    VISITS.getAndAdd(node, 1); // the virtual loss, until the score is added
+                    firstMoved[++depth] = board.isFirstToMove();
+                    path[depth] = node;
+                    board.play(AlphaBetaSearch.square(node.move), AlphaBetaSearch.type(node.move));
+                }
+                int diff = playout();
+                for (int i = 1; i <= depth; i++) {
+                    int forMover = firstMoved[i] ? diff : -diff;
+                    if (forMover >= 0)
+                        SCORE.getAndAdd(path[i], forMover > 0 ? 2L : 1L);
+                }
+                playouts++;
+            }
+        }
+
+        /**
+         * Plays random moves to the end of the game.
+         *
+         * @return The final disc difference, from the point of view of the first player.
+         */
+        private int playout() {
+            for (long legal = board.legalMoves(); legal != 0; legal = board.legalMoves()) {
+                for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+                    legal &= legal - 1;
+                int square = Long.numberOfTrailingZeros(legal);
+                int type = Bitboard.SIMPLE;
+                if (random.nextInt(SPECIAL_DISC_ODDS) == 0)
+                    type = board.hasInventory(Bitboard.BOMB) ? Bitboard.BOMB
+                            : board.hasInventory(Bitboard.UNFLIPPABLE) ? Bitboard.UNFLIPPABLE : Bitboard.SIMPLE;
+                board.play(square, type);
+            }
+            return board.discCount(true) - board.discCount(false);
+        }
+    }
+
+    /**
+     * Stops a running search from any thread; it returns the best move found so far.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stops the worker threads. The search cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    /**
+     * @return The number of workers.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * @return The number of playouts run by all the workers during the last search.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return The visits the root already had when the last search started, kept from the previous searches.
+     */
+    public int getReusedVisits() {
+        return reusedVisits;
+    }
+
+    /**
+     * @return The number of nodes of the tree.
+     */
+    public int getNodeCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * Adds the work of all the workers during the last search to the statistics of the move being chosen.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        long expanded = 0, generated = 0;
+        for (Worker worker : workers) {
+            expanded += worker.expandedNodes;
+            generated += worker.generatedMoves;
+        }
+        record.addSearch(playouts, 0, 0, expanded, generated);
+    }
+}
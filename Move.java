@@ -0,0 +1,8 @@
+/**
+ * Represents a single move in the game: the disc that is placed and the position it is placed on.
+ *
+ * @param position The position where the disc is placed.
+ * @param disc     The disc that is placed, including its owner and type.
+ */
+public record Move(Position position, Disc disc) {
+}
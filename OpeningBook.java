@@ -0,0 +1,346 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An opening book: the best known move of the positions that occur in the first moves of many games,
+ * so that an AI player can answer them at once instead of searching.
+ * <p>
+ * The book is built from game records (see {@link GameRecordWriter}), recorded in real games or played by
+ * {@link #selfPlay}. Positions are keyed by their canonical hash (see {@link Symmetry}), so that a position
+ * and its 7 mirror images share one entry, and the move is stored in the orientation of the canonical image.
+ * <p>
+ * The book file is the 4 bytes {@code "RVOB"}, the version, the number of plies covered and the number of
+ * entries (24 bytes in all), followed by the entries sorted by key: the canonical hash (8 bytes), the move
+ * encoded as {@code square | type << 6} (4 bytes) and the number of games it was played in (4 bytes).
+ * A book is memory-mapped and binary-searched in place, so opening it does not read or parse the entries.
+ * <p>
+ * The default book, used by every {@link AIPlayer}, is read from the file named by the "reversi.ai.book"
+ * system property; there is none when it is not set. The book counts its probes and hits, and compares the
+ * time of a probe with the time of the searches it saved (see {@link #recordSearch(long)}).
+ * Usage: java OpeningBook &lt;book file&gt; [--plies n] [--min-games n]
+ * [--self-play &lt;AI type&gt; &lt;games&gt;] [record files...]
+ */
+public class OpeningBook {
+    private static final byte[] MAGIC = {'R', 'V', 'O', 'B'};
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int ENTRY_BYTES = 16;
+    private static final int DEFAULT_PLIES = 12;
+    private static final int DEFAULT_MIN_GAMES = 2;
+    private static final int RANDOM_PLIES = 4; // self-play games start with random moves, so that they differ
+
+    private final MappedByteBuffer entries;
+    private final int plies;
+    private final int size;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder probeNanos = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    private static class DefaultHolder {
+        static final OpeningBook BOOK = loadDefault();
+    }
+
+    private OpeningBook(MappedByteBuffer entries, int plies, int size) {
+        this.entries = entries;
+        this.plies = plies;
+        this.size = size;
+    }
+
+    /**
+     * Maps a book file.
+     *
+     * @param file The book file.
+     * @return The book.
+     * @throws IOException If the file cannot be read or is not a book file.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + " is larger than 2 GB");
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        boolean valid = bytes.limit() >= HEADER_BYTES;
+        for (int i = 0; valid && i < MAGIC.length; i++)
+            valid = bytes.get(i) == MAGIC[i];
+        if (!valid || bytes.getInt(4) != VERSION)
+            throw new IOException(file + " is not an opening book of version " + VERSION);
+        int plies = bytes.getInt(8);
+        long size = bytes.getLong(16);
+        if (HEADER_BYTES + size * ENTRY_BYTES != bytes.limit())
+            throw new IOException(file + " is truncated");
+        return new OpeningBook(bytes, plies, (int) size);
+    }
+
+    /**
+     * @return The book named by the "reversi.ai.book" system property, or null if it is not set or cannot be read.
+     */
+    public static OpeningBook getDefault() {
+        return DefaultHolder.BOOK;
+    }
+
+    private static OpeningBook loadDefault() {
+        String file = System.getProperty("reversi.ai.book");
+        if (file == null)
+            return null;
+        try {
+            return open(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("The opening book is not used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks a position up in the book.
+     *
+     * @param board The position.
+     * @return The book move of the position, encoded as {@code square | type << 6}, or -1 if the position is
+     * not in the book (or its book move is not legal, which only a hash collision can cause).
+     */
+    public int probe(Bitboard board) {
+        if (board.discCount(true) + board.discCount(false) - 4 >= plies)
+            return -1; // every move adds one disc, so this counts the plies played
+        long start = System.nanoTime();
+        probes.increment();
+        int symmetry = Symmetry.canonicalSymmetry(board);
+        int index = find(symmetry == 0 ? board.hash : Symmetry.imageHash(board, symmetry));
+        int move = -1;
+        if (index >= 0) {
+            int stored = entries.getInt(HEADER_BYTES + index * ENTRY_BYTES + 8);
+            int square = Symmetry.square(AlphaBetaSearch.square(stored), Symmetry.inverse(symmetry));
+            int type = AlphaBetaSearch.type(stored);
+            if ((board.legalMoves() & (1L << square)) != 0 && board.hasInventory(type)) {
+                move = AlphaBetaSearch.encode(square, type);
+                hits.increment();
+            }
+        }
+        probeNanos.add(System.nanoTime() - start);
+        return move;
+    }
+
+    private int find(long key) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long k = entries.getLong(HEADER_BYTES + middle * ENTRY_BYTES);
+            if (k < key)
+                low = middle + 1;
+            else if (k > key)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Tells the book how long a player searched a move it could not find in the book, to estimate the time
+     * that its hits save.
+     *
+     * @param nanos The duration of the search.
+     */
+    public void recordSearch(long nanos) {
+        searches.increment();
+        searchNanos.add(nanos);
+    }
+
+    /**
+     * @return The number of plies from the start of the game that the book covers.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * @return The number of positions in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param games The number of games the book was used in.
+     * @return The hit rate of the book and the time it saved per game.
+     */
+    public String report(long games) {
+        long p = probes.sum(), h = hits.sum(), s = searches.sum();
+        double probeMs = p == 0 ? 0 : probeNanos.sum() / 1e6 / p;
+        double searchMs = s == 0 ? 0 : searchNanos.sum() / 1e6 / s;
+        double savedMs = h * Math.max(searchMs - probeMs, 0) / Math.max(games, 1);
+        return String.format("book of %d positions: %d hits in %d probes (%.1f%%), %.4f ms per probe,"
+                        + " %.1f hits and about %.1f ms of search saved per game",
+                size, h, p, p == 0 ? 0 : 100.0 * h / p, probeMs, (double) h / Math.max(games, 1), savedMs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java OpeningBook <book file> [--plies n] [--min-games n]"
+                    + " [--self-play <AI type> <games>] [record files...]");
+            System.exit(1);
+        }
+        Path book = Paths.get(args[0]);
+        int plies = DEFAULT_PLIES, minGames = DEFAULT_MIN_GAMES;
+        List<Path> records = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--min-games":
+                    minGames = Integer.parseInt(args[++i]);
+                    break;
+                case "--self-play":
+                    AIPlayer.registerAllAIPlayers();
+                    Path record = Files.createTempFile("self-play", ".rvgr");
+                    record.toFile().deleteOnExit();
+                    String type = args[++i];
+                    int games = Integer.parseInt(args[++i]);
+                    long start = System.nanoTime();
+                    selfPlay(type, games, record);
+                    System.out.printf("Played %d %s self-play games in %.1f s%n", games, type,
+                            (System.nanoTime() - start) / 1e9);
+                    records.add(record);
+                    break;
+                default:
+                    records.add(Paths.get(args[i]));
+            }
+        }
+        long start = System.nanoTime();
+        int size = build(records, book, plies, minGames);
+        System.out.printf("Wrote %d positions of the first %d plies to %s in %.1f s%n", size, plies, book,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Plays games of an AI against itself and records them. The first moves of every game are random, so that
+     * the games cover various openings even with a deterministic AI.
+     *
+     * @param aiType The registered AI type.
+     * @param games  The number of games.
+     * @param record The record file to write.
+     */
+    public static void selfPlay(String aiType, int games, Path record) throws IOException {
+        AIPlayer one = AIPlayer.createAIPlayer(aiType, true);
+        AIPlayer two = AIPlayer.createAIPlayer(aiType, false);
+        one.setOpeningBook(null); // the book being built must not depend on an older one
+        two.setOpeningBook(null);
+        SplittableRandom random = new SplittableRandom();
+        try (GameRecordWriter writer = new GameRecordWriter(new FileOutputStream(record.toFile()))) {
+            BitboardGameLogic logic = new BitboardGameLogic();
+            logic.setPlayers(one, two);
+            writer.record(logic);
+            for (int game = 0; game < games; game++) {
+                logic.reset();
+                for (int ply = 0; !logic.isGameFinished(); ply++) {
+                    AIPlayer current = logic.isFirstPlayerTurn() ? one : two;
+                    Move move;
+                    if (ply < RANDOM_PLIES) {
+                        List<Position> valid = logic.ValidMoves();
+                        move = new Move(valid.get(random.nextInt(valid.size())), new SimpleDisc(current));
+                    } else {
+                        move = current.makeMove(logic);
+                    }
+                    if (move == null || !logic.locate_disc(move.position(), move.disc()))
+                        throw new IllegalStateException(aiType + " played an illegal move: " + move);
+                }
+            }
+        }
+    }
+
+    /**
+     * One move in one canonical position, while building a book.
+     */
+    private record BookMove(long key, int move) {
+    }
+
+    /**
+     * The best move found for a position, while building a book.
+     */
+    private record BookEntry(int move, int games, double score) {
+    }
+
+    /**
+     * Builds a book from game records. Every position of the first plies of the finished games is counted,
+     * with the move played and the result for the player who played it (1 for a win, 1/2 for a draw).
+     * The book keeps the move of best average result of every position, among the moves played there in at
+     * least minGames games.
+     *
+     * @param records  The record files.
+     * @param book     The book file to write.
+     * @param plies    The number of plies from the start of the game to cover.
+     * @param minGames The number of games a move must be played in to enter the book.
+     * @return The number of positions in the book.
+     */
+    public static int build(List<Path> records, Path book, int plies, int minGames) throws IOException {
+        Map<BookMove, double[]> moves = new HashMap<>(); // {games, total score}
+        Bitboard board = new Bitboard();
+        for (Path file : records) {
+            GameRecordReader reader = new GameRecordReader(file);
+            while (reader.next()) {
+                if (!reader.isFinished())
+                    continue;
+                board.copyFrom(Bitboard.initial());
+                for (int i = 0; i < Math.min(plies, reader.moveCount()); i++) {
+                    int move = reader.move(i);
+                    if (move == GameRecordWriter.PASS)
+                        break;
+                    int symmetry = Symmetry.canonicalSymmetry(board);
+                    long key = Symmetry.imageHash(board, symmetry);
+                    int canonical = AlphaBetaSearch.encode(
+                            Symmetry.square(AlphaBetaSearch.square(move), symmetry), AlphaBetaSearch.type(move));
+                    int diff = board.isFirstToMove() ? reader.diff() : -reader.diff();
+                    double[] stats = moves.computeIfAbsent(new BookMove(key, canonical), k -> new double[2]);
+                    stats[0]++;
+                    stats[1] += diff > 0 ? 1 : diff == 0 ? 0.5 : 0;
+                    board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+                }
+            }
+        }
+
+        Map<Long, BookEntry> best = new HashMap<>(); // the best move of every position
+        for (Map.Entry<BookMove, double[]> e : moves.entrySet()) {
+            double[] stats = e.getValue();
+            if (stats[0] < minGames)
+                continue;
+            long key = e.getKey().key();
+            double score = stats[1] / stats[0];
+            BookEntry current = best.get(key);
+            if (current == null || score > current.score() || score == current.score() && stats[0] > current.games())
+                best.put(key, new BookEntry(e.getKey().move(), (int) stats[0], score));
+        }
+        List<Long> keys = new ArrayList<>(best.keySet());
+        keys.sort(null);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(book.toFile())))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(plies);
+            out.writeInt(0); // padding, so that the entries are aligned
+            out.writeLong(keys.size());
+            for (long key : keys) {
+                BookEntry entry = best.get(key);
+                out.writeLong(key);
+                out.writeInt(entry.move());
+                out.writeInt(entry.games());
+            }
+        }
+        return keys.size();
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.Arrays;
+
+/**
+ * A static evaluation built from patterns: groups of squares (the edges with their X squares, the 3x3 and
+ * 2x5 corner regions and the diagonals) whose contents are read as a base-3 number (0 empty, 1 a disc of
+ * the first player, 2 a disc of the second player) that indexes a table of {@link PatternWeights}.
+ * Every pattern is used in all its distinct orientations (see {@link Symmetry}), and the orientations of a
+ * pattern share one table. The special discs are scored on top of the patterns, by square: an unflippable
+ * disc on a corner is not worth the same as one next to it, nor as a simple disc there. The inventories and
+ * the side to move are scored too, and every term has its own weights for each stage of the game.
+ * The pattern indices are kept up to date with {@link #play} and {@link #undo} as the board changes, so an
+ * evaluation costs one table load per pattern and a few more for the special discs.
+ * An instance holds the indices of one board and is not thread safe; every search needs its own.
+ */
+public final class PatternEvaluator {
+    // The patterns in their top-left orientation, as {row, col} pairs; the first square is the most significant digit
+    private static final int[][][] PATTERNS = {
+            {{0, 0}, {0, 1}, {0, 2}, {0, 3}, {0, 4}, {0, 5}, {0, 6}, {0, 7}, {1, 1}, {1, 6}}, // edge + 2 X squares
+            {{0, 0}, {0, 1}, {0, 2}, {1, 0}, {1, 1}, {1, 2}, {2, 0}, {2, 1}, {2, 2}},         // 3x3 corner
+            {{0, 0}, {0, 1}, {0, 2}, {0, 3}, {0, 4}, {1, 0}, {1, 1}, {1, 2}, {1, 3}, {1, 4}}, // 2x5 corner
+            {{0, 0}, {1, 1}, {2, 2}, {3, 3}, {4, 4}, {5, 5}, {6, 6}, {7, 7}},                 // main diagonal
+            {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 6}, {6, 7}},
+            {{0, 2}, {1, 3}, {2, 4}, {3, 5}, {4, 6}, {5, 7}},
+            {{0, 3}, {1, 4}, {2, 5}, {3, 6}, {4, 7}},
+            {{0, 4}, {1, 5}, {2, 6}, {3, 7}}
+    };
+    static final int STAGES = 12;
+    private static final int PLIES_PER_STAGE = 5;
+
+    static final int INSTANCES;            // the number of oriented patterns
+    static final int[] OFFSET;             // [instance]: where the table of its pattern starts in a stage
+    // [square]: instance << 16 | the power of 3 of the square in that instance, for every instance holding the square
+    private static final int[][] DIGITS = new int[64][];
+    // The special terms, after the pattern tables of a stage
+    static final int UNFLIPPABLE_OFFSET;   // [square]: an unflippable disc of the first player
+    static final int BOMB_OFFSET;          // [square]: a bomb disc of the first player
+    static final int BOMBS_IN_HAND_OFFSET; // [count]: the bombs the first player has left
+    static final int UNFLIPPABLES_IN_HAND_OFFSET;
+    static final int TEMPO_OFFSET;         // the first player is to move
+    static final int STAGE_SIZE;           // the number of weights of a stage
+    static final int[] POWERS = new int[11];
+    // [index]: the index of the same pattern with the colors swapped
+    static final int[] SWAPPED;
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++)
+            POWERS[i] = POWERS[i - 1] * 3;
+        SWAPPED = new int[POWERS[10]];
+        for (int index = 0; index < SWAPPED.length; index++) {
+            int swapped = 0;
+            for (int rest = index, power = 1; rest != 0; rest /= 3, power *= 3)
+                swapped += power * ((3 - rest % 3) % 3);
+            SWAPPED[index] = swapped;
+        }
+
+        int[][] instances = new int[64][];
+        int[] patternOf = new int[64];
+        int count = 0;
+        for (int p = 0; p < PATTERNS.length; p++) {
+            long[] seen = new long[Symmetry.COUNT];
+            int seenCount = 0;
+            for (int s = 0; s < Symmetry.COUNT; s++) {
+                int[] squares = new int[PATTERNS[p].length];
+                long mask = 0;
+                for (int i = 0; i < squares.length; i++) {
+                    squares[i] = Symmetry.square(Bitboard.square(PATTERNS[p][i][0], PATTERNS[p][i][1]), s);
+                    mask |= 1L << squares[i];
+                }
+                boolean duplicate = false;
+                for (int i = 0; i < seenCount; i++)
+                    duplicate |= seen[i] == mask;
+                if (duplicate)
+                    continue; // a symmetric pattern maps onto itself: count it once
+                seen[seenCount++] = mask;
+                instances[count] = squares;
+                patternOf[count++] = p;
+            }
+        }
+        INSTANCES = count;
+        OFFSET = new int[count];
+        int[] patternOffset = new int[PATTERNS.length];
+        int size = 0;
+        for (int p = 0; p < PATTERNS.length; p++) {
+            patternOffset[p] = size;
+            size += POWERS[PATTERNS[p].length];
+        }
+        UNFLIPPABLE_OFFSET = size;
+        BOMB_OFFSET = UNFLIPPABLE_OFFSET + 64;
+        BOMBS_IN_HAND_OFFSET = BOMB_OFFSET + 64;
+        UNFLIPPABLES_IN_HAND_OFFSET = BOMBS_IN_HAND_OFFSET + Player.initial_number_of_bombs + 1;
+        TEMPO_OFFSET = UNFLIPPABLES_IN_HAND_OFFSET + Player.initial_number_of_unflippedable + 1;
+        STAGE_SIZE = TEMPO_OFFSET + 1;
+
+        int[] digitCount = new int[64];
+        for (int i = 0; i < count; i++) {
+            OFFSET[i] = patternOffset[patternOf[i]];
+            for (int square : instances[i])
+                digitCount[square]++;
+        }
+        for (int square = 0; square < 64; square++)
+            DIGITS[square] = new int[digitCount[square]];
+        int[] filled = new int[64];
+        for (int i = 0; i < count; i++) {
+            int length = instances[i].length;
+            for (int d = 0; d < length; d++) {
+                int square = instances[i][d];
+                DIGITS[square][filled[square]++] = i << 16 | POWERS[length - 1 - d];
+            }
+        }
+    }
+
+    private final PatternWeights weights;
+    private final int[] indices = new int[INSTANCES];
+
+    /**
+     * @param weights The weight tables to evaluate with; they may be shared with other evaluators.
+     */
+    public PatternEvaluator(PatternWeights weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Computes every pattern index of a position from scratch, before following its moves with play and undo.
+     *
+     * @param board The position.
+     */
+    public void reset(Bitboard board) {
+        Arrays.fill(indices, 0);
+        for (long discs = board.first; discs != 0; discs &= discs - 1)
+            addDigit(Long.numberOfTrailingZeros(discs), 1);
+        for (long discs = board.second; discs != 0; discs &= discs - 1)
+            addDigit(Long.numberOfTrailingZeros(discs), 2);
+    }
+
+    /**
+     * Follows a move that has just been played.
+     *
+     * @param square      The square of the placed disc.
+     * @param flips       The discs the move flipped (Bitboard.lastFlips()).
+     * @param firstPlayer Whether the first player made the move.
+     */
+    public void play(int square, long flips, boolean firstPlayer) {
+        addDigit(square, firstPlayer ? 1 : 2);
+        // A flipped disc goes from digit 2 to digit 1 for the first player, from 1 to 2 for the second
+        int change = firstPlayer ? -1 : 1;
+        for (; flips != 0; flips &= flips - 1)
+            addDigit(Long.numberOfTrailingZeros(flips), change);
+    }
+
+    /**
+     * Follows a move that is about to be taken back; the arguments are those given to {@link #play}.
+     */
+    public void undo(int square, long flips, boolean firstPlayer) {
+        addDigit(square, firstPlayer ? -1 : -2);
+        int change = firstPlayer ? 1 : -1;
+        for (; flips != 0; flips &= flips - 1)
+            addDigit(Long.numberOfTrailingZeros(flips), change);
+    }
+
+    private void addDigit(int square, int digit) {
+        for (int entry : DIGITS[square])
+            indices[entry >>> 16] += digit * (entry & 0xffff);
+    }
+
+    /**
+     * @param board The position the indices follow.
+     * @return The evaluation of the position from the point of view of the side to move, in hundredths of a
+     * disc of the predicted final disc difference.
+     */
+    public int evaluate(Bitboard board) {
+        int score = firstPlayerScore(board);
+        return board.firstToMove ? score : -score;
+    }
+
+    private int firstPlayerScore(Bitboard board) {
+        short[] w = weights.stage(stage(board));
+        int score = 0;
+        for (int i = 0; i < INSTANCES; i++)
+            score += w[OFFSET[i] + indices[i]];
+        for (long discs = board.unflippable; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            score += (board.first & (1L << square)) != 0 ? w[UNFLIPPABLE_OFFSET + square] : -w[UNFLIPPABLE_OFFSET + square];
+        }
+        for (long discs = board.bombs; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            score += (board.first & (1L << square)) != 0 ? w[BOMB_OFFSET + square] : -w[BOMB_OFFSET + square];
+        }
+        score += w[BOMBS_IN_HAND_OFFSET + board.firstBombs] - w[BOMBS_IN_HAND_OFFSET + board.secondBombs];
+        score += w[UNFLIPPABLES_IN_HAND_OFFSET + board.firstUnflippables]
+                - w[UNFLIPPABLES_IN_HAND_OFFSET + board.secondUnflippables];
+        score += board.firstToMove ? w[TEMPO_OFFSET] : -w[TEMPO_OFFSET];
+        return score;
+    }
+
+    /**
+     * @return The stage of the game of a position, from 0 to STAGES - 1, by the number of discs on the board.
+     */
+    static int stage(Bitboard board) {
+        return Math.min((Long.bitCount(board.first | board.second) - 4) / PLIES_PER_STAGE, STAGES - 1);
+    }
+
+    /**
+     * @param instance An oriented pattern, from 0 to INSTANCES - 1.
+     * @return Its current base-3 index.
+     */
+    int index(int instance) {
+        return indices[instance];
+    }
+}
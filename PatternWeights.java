@@ -0,0 +1,318 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The weight tables of a {@link PatternEvaluator}: for every stage of the game, one table per pattern indexed
+ * by its base-3 code, then the weights of the special discs by square, of the inventories and of the side to
+ * move. A weight is the part of the final disc difference (first player minus second player) it predicts, in
+ * hundredths of a disc, so the tables fit in shorts.
+ * The weights are trained offline from game records (see {@link GameRecordWriter}) by least squares: every
+ * position of every finished game is a sample whose target is the final disc difference, and stochastic
+ * gradient descent fits the sum of its weights to it. A position and its color-swapped image get opposite
+ * pattern weights, so that both players learn from every game.
+ * The "reversi.ai.weights" system property names the weights file the AIs evaluate with by default.
+ * File format: "RVPW", version, number of stages, weights per stage (ints), then the weights as big-endian
+ * shorts, stage by stage.
+ * Usage: java PatternWeights &lt;weights file&gt; [--epochs n] [--rate r] &lt;record files...&gt;
+ */
+public class PatternWeights {
+    static final int SCALE = 100; // weights are in hundredths of a disc
+    private static final byte[] MAGIC = {'R', 'V', 'P', 'W'};
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int DEFAULT_EPOCHS = 8;
+    private static final double DEFAULT_RATE = 0.0007;
+    private static final int HOLD_OUT = 10; // every 10th game is held out of the training to measure the error
+
+    private final short[][] stages;
+
+    /**
+     * Loads the weights file named by the "reversi.ai.weights" property on first use.
+     */
+    private static class DefaultHolder {
+        static final PatternWeights WEIGHTS = loadDefault();
+    }
+
+    private PatternWeights(short[][] stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Reads a weights file.
+     *
+     * @param file The file written by {@link #save}.
+     * @return The weights.
+     * @throws IOException If the file cannot be read or does not hold weights for the current patterns.
+     */
+    public static PatternWeights open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // read the whole file
+            }
+            bytes.flip();
+            boolean valid = bytes.remaining() >= HEADER_BYTES;
+            for (int i = 0; valid && i < MAGIC.length; i++)
+                valid = bytes.get() == MAGIC[i];
+            if (!valid)
+                throw new IOException(file + " is not a weights file");
+            int version = bytes.getInt(), stageCount = bytes.getInt(), stageSize = bytes.getInt();
+            if (version != VERSION)
+                throw new IOException(file + " has the unsupported weights version " + version);
+            if (stageCount != PatternEvaluator.STAGES || stageSize != PatternEvaluator.STAGE_SIZE
+                    || bytes.remaining() != 2L * stageCount * stageSize)
+                throw new IOException(file + " holds weights for other patterns than " + PatternEvaluator.STAGES
+                        + " stages of " + PatternEvaluator.STAGE_SIZE + " weights");
+            short[][] stages = new short[stageCount][stageSize];
+            for (short[] stage : stages) {
+                bytes.asShortBuffer().get(stage);
+                bytes.position(bytes.position() + 2 * stageSize);
+            }
+            return new PatternWeights(stages);
+        }
+    }
+
+    /**
+     * Writes the weights to a file.
+     *
+     * @param file The file to write; it is replaced if it exists.
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stages.length);
+            out.writeInt(PatternEvaluator.STAGE_SIZE);
+            for (short[] stage : stages)
+                for (short weight : stage)
+                    out.writeShort(weight);
+        }
+    }
+
+    /**
+     * @return The weights named by the "reversi.ai.weights" system property, or null if there are none
+     * (the search AIs then use their classic evaluation).
+     */
+    public static PatternWeights getDefault() {
+        return DefaultHolder.WEIGHTS;
+    }
+
+    private static PatternWeights loadDefault() {
+        String file = System.getProperty("reversi.ai.weights");
+        if (file == null)
+            return null;
+        try {
+            return open(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("The pattern weights are not used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param stage A stage of the game, from 0 to PatternEvaluator.STAGES - 1.
+     * @return The weights of that stage, laid out as described by the PatternEvaluator offsets.
+     */
+    short[] stage(int stage) {
+        return stages[stage];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java PatternWeights <weights file> [--epochs n] [--rate r] <record files...>");
+            System.exit(1);
+        }
+        Path weightsFile = Paths.get(args[0]);
+        int epochs = DEFAULT_EPOCHS;
+        double rate = DEFAULT_RATE;
+        List<Path> records = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--epochs":
+                    epochs = Integer.parseInt(args[++i]);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    records.add(Paths.get(args[i]));
+            }
+        }
+        long start = System.nanoTime();
+        PatternWeights weights = train(records, epochs, rate);
+        weights.save(weightsFile);
+        System.out.printf("Wrote %d stages of %d weights to %s in %.1f s%n", PatternEvaluator.STAGES,
+                PatternEvaluator.STAGE_SIZE, weightsFile, (System.nanoTime() - start) / 1e9);
+        reportSpeed(weights, records.get(0));
+    }
+
+    /**
+     * Fits the weights to the finished games of record files, printing the error of every epoch on the
+     * training games and on the held-out games.
+     *
+     * @param records The record files.
+     * @param epochs  The number of passes over the games.
+     * @param rate    The step of the gradient descent, per weight and per disc of error.
+     * @return The trained weights.
+     */
+    public static PatternWeights train(List<Path> records, int epochs, double rate) throws IOException {
+        float[][] w = new float[PatternEvaluator.STAGES][PatternEvaluator.STAGE_SIZE];
+        PatternEvaluator evaluator = new PatternEvaluator(null); // only its indices are used
+        Bitboard board = new Bitboard();
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double trainError = 0, heldOutError = 0, heldOutVariance = 0;
+            long trainSamples = 0, heldOutSamples = 0, game = 0;
+            for (Path file : records) {
+                GameRecordReader reader = new GameRecordReader(file);
+                while (reader.next()) {
+                    if (!reader.isFinished())
+                        continue;
+                    boolean heldOut = ++game % HOLD_OUT == 0;
+                    int diff = reader.diff();
+                    board.copyFrom(Bitboard.initial());
+                    evaluator.reset(board);
+                    for (int i = 0; i < reader.moveCount(); i++) {
+                        float[] stage = w[PatternEvaluator.stage(board)];
+                        float error = diff - predict(stage, evaluator, board);
+                        if (heldOut) {
+                            heldOutError += error * error;
+                            heldOutVariance += diff * diff;
+                            heldOutSamples++;
+                        } else {
+                            trainError += error * error;
+                            trainSamples++;
+                            update(stage, evaluator, board, (float) (rate * error));
+                        }
+                        int move = reader.move(i);
+                        if (move == GameRecordWriter.PASS) {
+                            if (!board.pass())
+                                throw new IllegalStateException("Illegal pass in " + file);
+                            continue;
+                        }
+                        int square = AlphaBetaSearch.square(move);
+                        if (!board.play(square, AlphaBetaSearch.type(move)))
+                            throw new IllegalStateException("Illegal move in " + file);
+                        evaluator.play(square, board.lastFlips(), !board.isFirstToMove());
+                    }
+                }
+            }
+            System.out.printf("epoch %d: %d positions, error %.2f discs; held out: %d positions, error %.2f discs"
+                            + " (%.2f when always predicting a draw)%n", epoch, trainSamples,
+                    Math.sqrt(trainError / Math.max(trainSamples, 1)), heldOutSamples,
+                    Math.sqrt(heldOutError / Math.max(heldOutSamples, 1)),
+                    Math.sqrt(heldOutVariance / Math.max(heldOutSamples, 1)));
+        }
+
+        short[][] stages = new short[PatternEvaluator.STAGES][PatternEvaluator.STAGE_SIZE];
+        for (int s = 0; s < stages.length; s++)
+            for (int i = 0; i < PatternEvaluator.STAGE_SIZE; i++)
+                stages[s][i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(w[s][i] * SCALE)));
+        return new PatternWeights(stages);
+    }
+
+    // The prediction of the final disc difference, first player minus second player, from float weights
+    private static float predict(float[] w, PatternEvaluator evaluator, Bitboard board) {
+        float score = 0;
+        for (int i = 0; i < PatternEvaluator.INSTANCES; i++)
+            score += w[PatternEvaluator.OFFSET[i] + evaluator.index(i)];
+        for (long discs = board.unflippable; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            float weight = w[PatternEvaluator.UNFLIPPABLE_OFFSET + square];
+            score += (board.first & (1L << square)) != 0 ? weight : -weight;
+        }
+        for (long discs = board.bombs; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            float weight = w[PatternEvaluator.BOMB_OFFSET + square];
+            score += (board.first & (1L << square)) != 0 ? weight : -weight;
+        }
+        score += w[PatternEvaluator.BOMBS_IN_HAND_OFFSET + board.firstBombs]
+                - w[PatternEvaluator.BOMBS_IN_HAND_OFFSET + board.secondBombs];
+        score += w[PatternEvaluator.UNFLIPPABLES_IN_HAND_OFFSET + board.firstUnflippables]
+                - w[PatternEvaluator.UNFLIPPABLES_IN_HAND_OFFSET + board.secondUnflippables];
+        score += board.firstToMove ? w[PatternEvaluator.TEMPO_OFFSET] : -w[PatternEvaluator.TEMPO_OFFSET];
+        return score;
+    }
+
+    // One gradient step: moves every weight of the position by step, in the direction of its sign in predict
+    private static void update(float[] w, PatternEvaluator evaluator, Bitboard board, float step) {
+        for (int i = 0; i < PatternEvaluator.INSTANCES; i++) {
+            int index = evaluator.index(i);
+            w[PatternEvaluator.OFFSET[i] + index] += step;
+            w[PatternEvaluator.OFFSET[i] + PatternEvaluator.SWAPPED[index]] -= step;
+        }
+        for (long discs = board.unflippable; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            w[PatternEvaluator.UNFLIPPABLE_OFFSET + square] += (board.first & (1L << square)) != 0 ? step : -step;
+        }
+        for (long discs = board.bombs; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            w[PatternEvaluator.BOMB_OFFSET + square] += (board.first & (1L << square)) != 0 ? step : -step;
+        }
+        w[PatternEvaluator.BOMBS_IN_HAND_OFFSET + board.firstBombs] += step;
+        w[PatternEvaluator.BOMBS_IN_HAND_OFFSET + board.secondBombs] -= step;
+        w[PatternEvaluator.UNFLIPPABLES_IN_HAND_OFFSET + board.firstUnflippables] += step;
+        w[PatternEvaluator.UNFLIPPABLES_IN_HAND_OFFSET + board.secondUnflippables] -= step;
+        w[PatternEvaluator.TEMPO_OFFSET] += board.firstToMove ? step : -step;
+    }
+
+    /**
+     * Prints the time of a pattern evaluation (with the incremental index updates of the moves leading to it)
+     * and of the classic evaluation of the search, over the positions of a record file.
+     */
+    private static void reportSpeed(PatternWeights weights, Path records) throws IOException {
+        PatternEvaluator evaluator = new PatternEvaluator(weights);
+        Bitboard board = new Bitboard();
+        long sink = 0;
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the compiler
+            long positions = 0, patternNanos = 0, classicNanos = 0;
+            for (int pass = 0; pass < 3; pass++) {
+                GameRecordReader reader = new GameRecordReader(records);
+                long start = System.nanoTime();
+                while (reader.next()) {
+                    board.copyFrom(Bitboard.initial());
+                    if (pass == 1)
+                        evaluator.reset(board);
+                    for (int i = 0; i < reader.moveCount(); i++) {
+                        int move = reader.move(i);
+                        if (move == GameRecordWriter.PASS) {
+                            board.pass();
+                            continue;
+                        }
+                        int square = AlphaBetaSearch.square(move);
+                        board.play(square, AlphaBetaSearch.type(move));
+                        if (pass == 1) {
+                            evaluator.play(square, board.lastFlips(), !board.isFirstToMove());
+                            sink += evaluator.evaluate(board);
+                        } else if (pass == 2) {
+                            sink += AlphaBetaSearch.evaluate(board);
+                        } else {
+                            positions++;
+                        }
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                if (pass == 0) {
+                    patternNanos -= nanos; // the replay alone, subtracted from both
+                    classicNanos -= nanos;
+                } else if (pass == 1) {
+                    patternNanos += nanos;
+                } else {
+                    classicNanos += nanos;
+                }
+            }
+            if (round == 2)
+                System.out.printf("%d positions: %.1f ns per pattern evaluation, %.1f ns per classic evaluation%s%n",
+                        positions, (double) patternNanos / Math.max(positions, 1),
+                        (double) classicNanos / Math.max(positions, 1), sink == 42 ? " " : "");
+        }
+    }
+}
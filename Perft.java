@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Perft: counts the leaves of the move tree to a fixed depth, to verify and time move generation.
+ * Placing a simple, an unflippable or a bomb disc on the same square are counted as distinct moves
+ * (the special ones only while the player has some left). There are no passes in this game: a position
+ * where the player to move has no legal move ends the game, and counts as a leaf only at the full depth.
+ * The count can be split over the root moves and run in parallel, and the whole tree can be
+ * cross-checked move by move against a second PlayableLogic implementation.
+ * Usage: java Perft &lt;depth&gt; [--position "&lt;position text&gt;"] [--parallel] [--check &lt;PlayableLogic class&gt;]
+ */
+public class Perft {
+    private static final int[] TYPES = {Bitboard.SIMPLE, Bitboard.UNFLIPPABLE, Bitboard.BOMB};
+
+    /**
+     * A player that counts as human, so that the checked implementation allows undoLastMove.
+     */
+    static class PerftPlayer extends Player {
+        PerftPlayer(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        boolean isHuman() {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java Perft <depth> [--position \"<position text>\"] [--parallel] [--check <PlayableLogic class>]");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        Bitboard root = Bitboard.initial();
+        boolean parallel = false;
+        String checkClass = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--position":
+                    root = Bitboard.parse(args[++i]);
+                    break;
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--check":
+                    checkClass = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        System.out.println(root.toText());
+        System.out.printf("%5s %18s %10s %14s%n", "depth", "leaves", "seconds", "leaves/s");
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long leaves = parallel ? parallelPerft(root, d) : perft(root.copy(), d);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%5d %18d %10.3f %14.0f%n", d, leaves, seconds, leaves / Math.max(seconds, 1e-9));
+        }
+
+        if (checkClass != null) {
+            if (root.hash() != Bitboard.initial().hash())
+                throw new IllegalArgumentException("A PlayableLogic can only be cross-checked from the initial position");
+            PlayableLogic logic = (PlayableLogic) Class.forName(checkClass).getConstructor().newInstance();
+            logic.setPlayers(new PerftPlayer(true), new PerftPlayer(false));
+            logic.reset();
+            long start = System.nanoTime();
+            long leaves = crossCheck(logic, root.copy(), depth);
+            System.out.printf("%s agrees with the bitboard engine on every node to depth %d (%d leaves, %.3f s)%n",
+                    checkClass, depth, leaves, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * Counts the leaves of the move tree.
+     *
+     * @param board The position; it is restored before returning.
+     * @param depth The number of moves to play.
+     * @return The number of move sequences of exactly that length.
+     */
+    public static long perft(Bitboard board, int depth) {
+        if (depth == 0)
+            return 1;
+        long legal = board.legalMoves();
+        if (depth == 1)
+            return (long) Long.bitCount(legal) * availableTypes(board);
+        long leaves = 0;
+        for (; legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            for (int type : TYPES) {
+                if (!board.play(square, type))
+                    continue;
+                leaves += perft(board, depth - 1);
+                board.undo();
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Counts the leaves of the move tree, searching the subtree of every root move on its own thread.
+     *
+     * @param root  The position; it is not modified.
+     * @param depth The number of moves to play.
+     * @return The number of move sequences of exactly that length.
+     */
+    public static long parallelPerft(Bitboard root, int depth) {
+        if (depth <= 1)
+            return perft(root.copy(), depth);
+        int[] moves = new int[3 * 64];
+        int count = 0;
+        for (long legal = root.legalMoves(); legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            for (int type : TYPES)
+                if (root.hasInventory(type))
+                    moves[count++] = AlphaBetaSearch.encode(square, type);
+        }
+        return Arrays.stream(moves, 0, count).parallel().mapToLong(move -> {
+            Bitboard board = root.copy();
+            board.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move));
+            return perft(board, depth - 1);
+        }).sum();
+    }
+
+    /**
+     * Walks the move tree on both implementations at once, and checks at every node that the other
+     * implementation has the same discs, the same player to move, the same valid moves and the same
+     * flip counts as the bitboard engine.
+     *
+     * @param logic The implementation to check, in the same position as the board.
+     * @param board The reference position; it is restored before returning.
+     * @param depth The number of moves to play.
+     * @return The number of leaves, as {@link #perft(Bitboard, int)}.
+     * @throws IllegalStateException At the first difference, with the position where it was found.
+     */
+    static long crossCheck(PlayableLogic logic, Bitboard board, int depth) {
+        compare(logic, board);
+        if (depth == 0)
+            return 1;
+        long leaves = 0;
+        for (long legal = board.legalMoves(); legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            Position position = new Position(square / Bitboard.SIZE, square % Bitboard.SIZE);
+            for (int type : TYPES) {
+                if (!board.hasInventory(type))
+                    continue;
+                Player mover = logic.isFirstPlayerTurn() ? logic.getFirstPlayer() : logic.getSecondPlayer();
+                if (!logic.locate_disc(position, disc(type, mover)))
+                    throw mismatch(board, "rejected the move " + position + " with disc type " + type);
+                board.play(square, type);
+                leaves += crossCheck(logic, board, depth - 1);
+                board.undo();
+                logic.undoLastMove();
+            }
+        }
+        return leaves;
+    }
+
+    private static void compare(PlayableLogic logic, Bitboard board) {
+        if (logic.isFirstPlayerTurn() != board.isFirstToMove())
+            throw mismatch(board, "has the wrong player to move");
+        for (int square = 0; square < 64; square++) {
+            Disc disc = logic.getDiscAtPosition(new Position(square / Bitboard.SIZE, square % Bitboard.SIZE));
+            int type = board.typeAt(square);
+            if (disc == null ? type >= 0
+                    : type < 0 || typeOf(disc) != type
+                    || disc.getOwner().isPlayerOne() != ((board.first & (1L << square)) != 0))
+                throw mismatch(board, "has a different disc on square " + square);
+        }
+        List<Position> valid = logic.ValidMoves();
+        long validMask = 0;
+        for (Position p : valid) {
+            int square = Bitboard.square(p.row(), p.col());
+            validMask |= 1L << square;
+            int flips = Long.bitCount(board.flipMask(square));
+            if (logic.countFlips(p) != flips)
+                throw mismatch(board, "counts " + logic.countFlips(p) + " flips instead of " + flips + " at " + p);
+        }
+        if (validMask != board.legalMoves() || valid.size() != Long.bitCount(validMask))
+            throw mismatch(board, "has different valid moves");
+    }
+
+    private static int availableTypes(Bitboard board) {
+        int types = 1;
+        if (board.hasInventory(Bitboard.UNFLIPPABLE))
+            types++;
+        if (board.hasInventory(Bitboard.BOMB))
+            types++;
+        return types;
+    }
+
+    private static Disc disc(int type, Player owner) {
+        switch (type) {
+            case Bitboard.BOMB:
+                return new BombDisc(owner);
+            case Bitboard.UNFLIPPABLE:
+                return new UnflippableDisc(owner);
+            default:
+                return new SimpleDisc(owner);
+        }
+    }
+
+    private static int typeOf(Disc disc) {
+        switch (disc.getType()) {
+            case "⭕":
+                return Bitboard.UNFLIPPABLE;
+            case "💣":
+                return Bitboard.BOMB;
+            default:
+                return Bitboard.SIMPLE;
+        }
+    }
+
+    private static IllegalStateException mismatch(Bitboard board, String problem) {
+        return new IllegalStateException("The checked implementation " + problem + " in position " + board.toText());
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Makes the discs (simple, unflippable and bomb) of one player where the engines meet Disc: the boards keep
+ * primitive masks, and a Disc is only made when a square is read through getDiscAtPosition or an AI player
+ * returns a move.
+ * Every call makes a new disc. Disc has a setOwner method, and a caller may keep the disc it was given: the GUI,
+ * or a GameLogic that stores the disc of every move and flips it with setOwner, as the reference GameLogic
+ * does. A disc shared by several squares or moves would then change all of them at once.
+ */
+public final class PlayerDiscs {
+    private final Player owner;
+
+    /**
+     * @param owner The player who owns the discs (may be null while a game has no players).
+     */
+    public PlayerDiscs(Player owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @param type {@link Bitboard#SIMPLE}, {@link Bitboard#UNFLIPPABLE} or {@link Bitboard#BOMB}.
+     * @return A new disc of this player of that type.
+     */
+    public Disc get(int type) {
+        switch (type) {
+            case Bitboard.BOMB:
+                return new BombDisc(owner);
+            case Bitboard.UNFLIPPABLE:
+                return new UnflippableDisc(owner);
+            default:
+                return new SimpleDisc(owner);
+        }
+    }
+
+    public Player getOwner() {
+        return owner;
+    }
+}
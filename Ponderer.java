@@ -0,0 +1,244 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thinks on the opponent's time: once an AI has chosen its move, a Ponderer searches the position that the
+ * predicted reply of the opponent would lead to, on a background thread, while the opponent is deciding.
+ * When the AI is asked for its next move, the search is resolved: if the opponent played the predicted reply
+ * (a ponder hit), the running search simply goes on, with everything it has already searched, until the budget
+ * of the move is spent; otherwise it is told to stop, and the move is searched as usual.
+ * {@link #cancel()} does not wait for the pondering search to return: the search reads its stop flag at every
+ * node and stores nothing on the way out, but its thread must first be scheduled to see the flag, which on a
+ * busy machine takes milliseconds (when waited for, 0.4 to 0.7 ms on average and up to 9 ms on one core with
+ * two search threads; when not, it runs after the move's search threads). The move's own search therefore
+ * starts at once, and the next {@link #start(Bitboard)} waits for the old search to be over
+ * before reusing its board, which by then it always is.
+ * The background search shares the transposition table of the AI, so even a miss leaves useful entries.
+ * A pondering search gives up after {@link #MAX_PONDER_MS}, so that an abandoned game does not keep a core busy.
+ * The hits, misses, the time gained on hits and the time a cancelled search took to return are summed over all
+ * the ponderers, see {@link #report()}.
+ */
+public class Ponderer {
+    public static final long MAX_PONDER_MS = 60_000;
+
+    private static final LongAdder PONDERS = new LongAdder();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder GAINED_NANOS = new LongAdder();
+    private static final LongAdder CANCEL_NANOS = new LongAdder();
+    private static final LongAdder CANCELS = new LongAdder();
+    private static volatile long maxCancelNanos;
+
+    private final AlphaBetaSearch search;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread ponder = new Thread(runnable, "ponder");
+        ponder.setDaemon(true);
+        return ponder;
+    });
+    private final Bitboard position = new Bitboard(); // the pondered position, read by the background search
+    private Future<Integer> running;
+    private Future<Integer> stopping; // a cancelled search that may not have returned yet
+    private volatile long stopNanos; // when the running search was told to stop, 0 if it was not
+    private long startNanos;
+    private long hits;
+    private long misses;
+    private long gainedNanos;
+    private long lastGainedNanos;
+
+    /**
+     * @param table   The transposition table of the AI.
+     * @param weights The pattern weights of the AI, or null for the classic evaluation.
+     */
+    public Ponderer(TranspositionTable table, PatternWeights weights) {
+        search = new AlphaBetaSearch(table, weights);
+    }
+
+    /**
+     * Starts searching the position in the background. A search that is still running is cancelled first.
+     *
+     * @param expected The position expected at the next move; it is copied.
+     */
+    public void start(Bitboard expected) {
+        cancel();
+        awaitStopped();
+        position.copyFrom(expected);
+        search.clearStop();
+        stopNanos = 0;
+        startNanos = System.nanoTime();
+        long deadline = startNanos + MAX_PONDER_MS * 1_000_000L;
+        running = thread.submit(() -> {
+            int move = search.search(position, deadline, 1, Bitboard.SIZE * Bitboard.SIZE);
+            long stoppedAt = stopNanos;
+            if (stoppedAt != 0)
+                recordStop(System.nanoTime() - stoppedAt);
+            return move;
+        });
+        PONDERS.increment();
+    }
+
+    /**
+     * Resolves the pondering search against the actual position. On a hit, the search goes on until the deadline
+     * (or until it has searched the whole tree) and its move is returned; on a miss, it is cancelled.
+     *
+     * @param actual   The position the AI must now move in.
+     * @param deadline The System.nanoTime() value at which the move must be chosen.
+     * @return The move found by the pondering search, or -1 on a miss or when nothing was pondered.
+     */
+    public int resolve(Bitboard actual, long deadline) {
+        if (running == null)
+            return -1;
+        if (!Bitboard.samePosition(position, actual)) {
+            misses++;
+            cancel();
+            lastGainedNanos = 0;
+            return -1;
+        }
+        Future<Integer> pondering = running;
+        running = null;
+        hits++;
+        HITS.increment();
+        lastGainedNanos = System.nanoTime() - startNanos;
+        gainedNanos += lastGainedNanos;
+        GAINED_NANOS.add(lastGainedNanos);
+        try {
+            return pondering.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            search.stop();
+            return await(pondering);
+        } catch (InterruptedException e) {
+            search.stop();
+            Thread.currentThread().interrupt();
+            return await(pondering);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The pondering search failed", e.getCause());
+        }
+    }
+
+    /**
+     * Tells the pondering search, if any, to stop, without waiting for it to return.
+     */
+    public void cancel() {
+        if (running == null)
+            return;
+        stopNanos = System.nanoTime();
+        search.stop();
+        stopping = running;
+        running = null;
+    }
+
+    /**
+     * Cancels the pondering search, waits until it has returned and stops the background thread. The ponderer
+     * cannot be used afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        awaitStopped();
+        thread.shutdownNow();
+    }
+
+    // Waits until the cancelled search, if any, has returned, so that its board and search may be reused
+    private void awaitStopped() {
+        if (stopping != null) {
+            await(stopping);
+            stopping = null;
+        }
+    }
+
+    // Runs on the pondering thread, once a cancelled search has returned
+    private static void recordStop(long nanos) {
+        CANCEL_NANOS.add(nanos);
+        CANCELS.increment();
+        if (nanos > maxCancelNanos)
+            maxCancelNanos = nanos; // a lost race only loses a maximum of the report
+    }
+
+    private static int await(Future<Integer> pondering) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pondering.get();
+                } catch (InterruptedException e) {
+                    interrupted = true; // the search is stopped, so this does not wait long
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The pondering search failed", e.getCause());
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Whether a pondering search is running or waiting to be resolved.
+     */
+    public boolean isPondering() {
+        return running != null;
+    }
+
+    /**
+     * @return The number of nodes of the last pondering search that was resolved as a hit, including the nodes
+     * searched after the hit.
+     */
+    public long getNodes() {
+        return search.getNodes();
+    }
+
+    /**
+     * @return The deepest iteration completed by the last pondering search.
+     */
+    public int getCompletedDepth() {
+        return search.getCompletedDepth();
+    }
+
+    /**
+     * Adds the work of the last pondering search to the statistics of the move being chosen.
+     */
+    void addStatsTo(SearchStats.MoveRecord record) {
+        search.addStatsTo(record);
+    }
+
+    /**
+     * @return The fraction of the resolved pondering searches that were hits.
+     */
+    public double getHitRate() {
+        long resolved = hits + misses;
+        return resolved == 0 ? 0 : (double) hits / resolved;
+    }
+
+    /**
+     * @return The search time the last move got from pondering, in nanoseconds: the time spent pondering before
+     * the opponent played, on a hit, and 0 otherwise.
+     */
+    public long getLastGainedNanos() {
+        return lastGainedNanos;
+    }
+
+    /**
+     * @return The search time gained on all the hits so far, in nanoseconds.
+     */
+    public long getGainedNanos() {
+        return gainedNanos;
+    }
+
+    /**
+     * @return One line with the ponder hits, the time they gained and the time cancelled searches took to return,
+     * summed over all the ponderers, or null if nothing was pondered.
+     */
+    public static String report() {
+        long ponders = PONDERS.sum();
+        if (ponders == 0)
+            return null;
+        long hits = HITS.sum(), cancels = CANCELS.sum();
+        return String.format("pondering: %d searches, %d hits (%.1f%%), %.1f ms gained per hit,"
+                        + " cancelled searches returned after %.3f ms on average, %.3f ms at most (the move does not"
+                        + " wait for them)",
+                ponders, hits, 100.0 * hits / ponders, hits == 0 ? 0 : GAINED_NANOS.sum() / 1e6 / hits,
+                cancels == 0 ? 0 : CANCEL_NANOS.sum() / 1e6 / cancels, maxCancelNanos / 1e6);
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Represents a position (row, column) on the game board.
+ *
+ * @param row The row of the position, starting at 0 at the top of the board.
+ * @param col The column of the position, starting at 0 at the left of the board.
+ */
+public record Position(int row, int col) {
+}
@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded cache of the legal moves and flip counts of 8x8 positions, so that the positions that come back
+ * across games (openings, deterministic AIs, the GUI hint overlay asking again after every repaint) are not
+ * generated again.
+ * Positions are stored in the orientation of their canonical image, the smallest of their 8 images under
+ * {@link Symmetry} (compared by discs, then by special discs), so one entry serves all 8 orientations; the
+ * legal moves are mapped back to the actual orientation on the way out. An entry is keyed on what the moves and
+ * flips depend on, and nothing more: the discs of the player to move, those of its opponent, the unflippable
+ * discs and the bombs. The inventories only decide which disc types may be played, not where nor what they
+ * flip, and the colours only decide whose discs these are, so positions that differ in them share an entry.
+ * The key is the whole canonical position, so a lookup never returns the moves of another one, whatever the hash.
+ * When the positions keep missing (a random player, a long search), canonicalizing costs more than it saves:
+ * after 16 misses in a row (MISS_STREAK) the cache steps aside and {@link #find(Bitboard)} returns
+ * {@link #NONE}, except for one lookup in 16 (SAMPLE_INTERVAL), whose hit puts it back in use.
+ * The cache is 4-way set associative and evicts with CLOCK inside each set: a hit sets the entry's
+ * reference bit, and the set's hand skips (and clears) referenced entries to find the victim.
+ * An entry takes {@link #ENTRY_BYTES} bytes: 5 longs and one flip count byte per square. The flip counts are
+ * kept in the order of the legal squares, so that a count is found by counting the legal squares before it,
+ * and are only counted when they are first asked for.
+ * A cache is confined to one thread (see {@link #forCurrentThread()}), so it needs no locking.
+ * The number of entries per thread is set with the "reversi.cache.entries" system property; 0 (the default)
+ * turns the cache off.
+ */
+public final class PositionCache {
+    public static final int ENTRY_BYTES = 5 * 8 + 64 + 1;
+    /** The handle of a lookup the cache stepped aside for: the caller generates the moves itself. */
+    public static final long NONE = -1;
+    static final int MISS_STREAK = 16;
+    static final int SAMPLE_INTERVAL = 16;
+    private static final int WAYS = 4;
+    private static final int WORDS = 5; // own discs, opponent discs, unflippable, bombs, legal moves
+    private static final byte UNKNOWN = -1; // a flip count that was not asked for yet
+    private static final int ENTRIES = Integer.getInteger("reversi.cache.entries", 0);
+
+    private static final List<PositionCache> ALL = new ArrayList<>();
+    private static final ThreadLocal<PositionCache> CURRENT = ThreadLocal.withInitial(() -> {
+        PositionCache cache = new PositionCache(ENTRIES);
+        synchronized (ALL) {
+            ALL.add(cache);
+        }
+        return cache;
+    });
+
+    private final long[] words;
+    private final byte[] flipCounts;
+    private final boolean[] referenced;
+    private final int[] stamps; // changed when an entry is overwritten, so that old handles are refused
+    private final byte[] hands;
+    private final int setMask;
+    private final long[] ownImages = new long[Symmetry.COUNT];
+    private final long[] opponentImages = new long[Symmetry.COUNT];
+    private int missStreak; // the misses in a row, up to MISS_STREAK
+    private int skipped;    // the lookups bypassed since the last sampled one, while the cache steps aside
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long bypassed;
+
+    /**
+     * @param entries The number of entries, rounded down to a power of two (at least 4).
+     */
+    public PositionCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, WAYS));
+        words = new long[size * WORDS];
+        flipCounts = new byte[size * 64];
+        referenced = new boolean[size];
+        stamps = new int[size];
+        hands = new byte[size / WAYS];
+        setMask = size / WAYS - 1;
+    }
+
+    /**
+     * @return The cache of the calling thread, or null if the cache is turned off.
+     */
+    public static PositionCache forCurrentThread() {
+        return ENTRIES > 0 ? CURRENT.get() : null;
+    }
+
+    /**
+     * Looks the position up, and computes and stores its moves on a miss.
+     *
+     * @param board The position.
+     * @return A handle for {@link #legalMoves(long)} and {@link #flipCount(long, Bitboard, int)}: the symmetry from the
+     * position to the stored one, the entry, and the entry's stamp. It stays valid until the entry is replaced,
+     * which {@link #isValid(long)} tells. {@link #NONE} if the cache steps aside after too many misses.
+     */
+    public long find(Bitboard board) {
+        if (missStreak >= MISS_STREAK) {
+            if (++skipped < SAMPLE_INTERVAL) {
+                bypassed++;
+                return NONE;
+            }
+            skipped = 0;
+        }
+        // The canonical image: the smallest (discs of the player to move, of its opponent, unflippable, bombs)
+        long own = board.own(), opponent = board.opponent();
+        Symmetry.images(own, ownImages);
+        Symmetry.images(opponent, opponentImages);
+        int symmetry = 0;
+        for (int s = 1; s < Symmetry.COUNT; s++) {
+            int order = Long.compareUnsigned(ownImages[s], own);
+            if (order == 0)
+                order = Long.compareUnsigned(opponentImages[s], opponent);
+            if (order == 0 && (board.unflippable | board.bombs) != 0) {
+                order = Long.compareUnsigned(Symmetry.mask(board.unflippable, s),
+                        Symmetry.mask(board.unflippable, symmetry));
+                if (order == 0)
+                    order = Long.compareUnsigned(Symmetry.mask(board.bombs, s), Symmetry.mask(board.bombs, symmetry));
+            }
+            if (order < 0) {
+                symmetry = s;
+                own = ownImages[s];
+                opponent = opponentImages[s];
+            }
+        }
+        long unflippable = Symmetry.mask(board.unflippable, symmetry);
+        long bombs = Symmetry.mask(board.bombs, symmetry);
+
+        int set = mix(own, opponent, unflippable, bombs) & setMask;
+        int base = set * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            int entry = base + way;
+            int w = entry * WORDS;
+            if (words[w] == own && words[w + 1] == opponent && words[w + 2] == unflippable
+                    && words[w + 3] == bombs && (own | opponent) != 0) {
+                hits++;
+                missStreak = 0;
+                referenced[entry] = true;
+                return handle(symmetry, entry);
+            }
+        }
+
+        misses++;
+        if (missStreak < MISS_STREAK)
+            missStreak++;
+        int entry = victim(set);
+        if ((words[entry * WORDS] | words[entry * WORDS + 1]) != 0)
+            evictions++;
+        stamps[entry]++;
+        referenced[entry] = false;
+        int w = entry * WORDS;
+        words[w] = own;
+        words[w + 1] = opponent;
+        words[w + 2] = unflippable;
+        words[w + 3] = bombs;
+        // The moves of the stored image, which are the images of the moves of the position. The flip counts
+        // are counted on first use, as most callers only ask for some of them, or for none
+        long legal = Symmetry.mask(board.legalMoves(), symmetry);
+        words[w + 4] = legal;
+        Arrays.fill(flipCounts, entry * 64, entry * 64 + Long.bitCount(legal), UNKNOWN);
+        return handle(symmetry, entry);
+    }
+
+    // The CLOCK hand of the set: the first entry without its reference bit, clearing the bits it passes
+    private int victim(int set) {
+        int base = set * WAYS;
+        while (true) {
+            int entry = base + hands[set];
+            hands[set] = (byte) ((hands[set] + 1) & (WAYS - 1));
+            if (!referenced[entry])
+                return entry;
+            referenced[entry] = false;
+        }
+    }
+
+    /**
+     * @param handle A handle returned by {@link #find(Bitboard)}.
+     * @return Whether its entry still holds its position.
+     */
+    public boolean isValid(long handle) {
+        return stamps[entry(handle)] == (int) (handle >>> 32);
+    }
+
+    /**
+     * @param handle A valid handle of a position.
+     * @return The legal moves of the position, in its own orientation.
+     */
+    public long legalMoves(long handle) {
+        return Symmetry.mask(words[entry(handle) * WORDS + 4], Symmetry.inverse(symmetry(handle)));
+    }
+
+    /**
+     * @param handle A valid handle of a position.
+     * @param board  The position, whose flips are counted if the count is not known yet.
+     * @param square A square of the position, in its own orientation.
+     * @return The number of discs a move on the square flips, 0 if it is not a legal move.
+     */
+    public int flipCount(long handle, Bitboard board, int square) {
+        int entry = entry(handle);
+        long legal = words[entry * WORDS + 4];
+        int stored = Symmetry.square(square, symmetry(handle));
+        if ((legal & (1L << stored)) == 0)
+            return 0;
+        int i = entry * 64 + index(legal, stored);
+        if (flipCounts[i] == UNKNOWN)
+            flipCounts[i] = (byte) Long.bitCount(board.flipMask(square));
+        return flipCounts[i];
+    }
+
+    // The rank of a legal square among the legal squares, which is where its flip count is kept
+    private static int index(long legal, int square) {
+        return Long.bitCount(legal & ((1L << square) - 1));
+    }
+
+    private long handle(int symmetry, int entry) {
+        return (long) stamps[entry] << 32 | (long) entry << 3 | symmetry;
+    }
+
+    private static int entry(long handle) {
+        return (int) handle >>> 3;
+    }
+
+    private static int symmetry(long handle) {
+        return (int) handle & 7;
+    }
+
+    private static int mix(long own, long opponent, long unflippable, long bombs) {
+        long h = own * 0x9e3779b97f4a7c15L;
+        h = (h ^ (h >>> 29) ^ opponent) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 31) ^ unflippable ^ bombs * 31) * 0x94d049bb133111ebL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of lookups the cache stepped aside for, which are not counted as hits nor misses.
+     */
+    public long getBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * @return The fraction of lookups that found their position.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return The memory taken by the entries, in bytes.
+     */
+    public long getMemoryBytes() {
+        return (long) referenced.length * ENTRY_BYTES + stamps.length * 4L + hands.length;
+    }
+
+    /**
+     * @return One line with the hits, misses, bypassed lookups, evictions and memory of the caches of all the threads, or null if
+     * the cache is turned off. The counters of threads that are still running may be slightly behind.
+     */
+    public static String report() {
+        if (ENTRIES <= 0)
+            return null;
+        long hits = 0, misses = 0, bypassed = 0, evictions = 0, bytes = 0;
+        int caches;
+        synchronized (ALL) {
+            caches = ALL.size();
+            for (PositionCache cache : ALL) {
+                hits += cache.hits;
+                misses += cache.misses;
+                evictions += cache.evictions;
+                bypassed += cache.bypassed;
+                bytes += cache.getMemoryBytes();
+            }
+        }
+        long lookups = hits + misses;
+        return String.format("position cache: %d lookups, hit rate %.1f%%, %d bypassed, %d evictions, %d caches,"
+                        + " %.1f MB", lookups, lookups == 0 ? 0 : 100.0 * hits / lookups, bypassed, evictions, caches,
+                bytes / 1048576.0);
+    }
+}
@@ -0,0 +1,698 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Randomized cross-checks of the engines against slower, independent references, to be run after any change
+ * to move generation or flipping. Every check plays seeded random games with all the disc types and compares
+ * the two sides on every position; it stops at the first difference with an IllegalStateException that
+ * holds the position, and otherwise prints how much it compared.
+ * <ul>
+ * <li>moves: {@link Bitboard#flipMask(int)}, {@link Bitboard#legalMoves()} and the batch flip counts of
+ * {@link Bitboard#flipCounts(int[])} on every square, against a square-by-square walk of the rules on a plain
+ * grid, bomb chains included.</li>
+ * <li>grid: {@link GridBitboard} on every board size against the same walk of the rules, its flip counts and
+ * undo, and on 8x8 against Bitboard.</li>
+ * <li>solver: the scores and moves of {@link EndgameSolver} on positions with 1 to 9 empty squares, against a
+ * plain alpha-beta search to the end of the game, without transposition table, move ordering or special
+ * cases.</li>
+ * <li>tournament: the wins, draws and losses {@link HeadlessTournament} counts on 1 and 4 worker threads, for
+ * two deterministic players (most flips and fewest flips), against the same games played directly on a
+ * Bitboard; then the games per second of a random against a greedy player, both playing through
+ * PlayableLogic only, like RandomAI and GreedyAI.</li>
+ * <li>server: games played over loopback against an in-process {@link GameServer}, with NEW, VALID, MOVE,
+ * BOARD, UNDO, WAIT and CLOSE, against the same games played directly on a Bitboard: human against human with
+ * undos, then human against AlphaBetaAI (5 ms per move unless "reversi.ai.budgetMs" is set), whose every move
+ * must be one of the legal moves of the reference.</li>
+ * <li>reference: games played on Bitboard and on the reference GameLogic of reversi.jar (or of the jar in
+ * "reversi.reference.jar"): the valid moves, the flip counts and every square after every move and undo.</li>
+ * </ul>
+ * Usage: java ReferenceCheck &lt;check&gt; [games] [seed]
+ */
+public class ReferenceCheck {
+    private static final int[][] DIRECTIONS = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[] TYPES = {Bitboard.SIMPLE, Bitboard.UNFLIPPABLE, Bitboard.BOMB};
+    private static final int SOLVER_MAX_EMPTIES = 9;
+    // The obfuscated names in reversi.jar of GameLogic, Player, Position, Disc, HumanPlayer, then of the discs
+    // in the order of TYPES: SimpleDisc, UnflippableDisc and BombDisc
+    private static final String[] REFERENCE_NAMES = {"FD3FF", "GHR3R", "RIB3G", "affFB", "EEE3R", "EEJ3E", "a", "Aat3"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java ReferenceCheck <moves|grid|solver|tournament|server|reference> [games] [seed]");
+            System.exit(1);
+        }
+        // For the grid, the number of games per board size; for the solver, of positions per number of empty squares
+        int games = args.length > 1 ? Integer.parseInt(args[1])
+                : args[0].equals("solver") ? 60 : args[0].equals("grid") ? 100 : args[0].equals("server") ? 200 : 2000;
+        Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : 1);
+        long start = System.nanoTime();
+        String result;
+        switch (args[0]) {
+            case "moves":
+                result = checkMoves(games, random) + " squares of " + games + " games agree with the grid reference";
+                break;
+            case "grid":
+                result = checkGrid(games, random) + " squares of " + games + " games per size agree with the grid"
+                        + " reference";
+                break;
+            case "solver":
+                result = checkSolver(games, random) + " positions solved as by the plain search";
+                break;
+            case "tournament":
+                result = checkTournament(games);
+                break;
+            case "server":
+                result = checkServer(games, random) + " commands over loopback answered as the reference";
+                break;
+            case "reference":
+                String jar = System.getProperty("reversi.reference.jar", "reversi.jar");
+                result = checkReference(games, random, jar) + " moves of " + games + " games played as by " + jar;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown check: " + args[0]);
+        }
+        System.out.printf("%s: %s (%.1f s)%n", args[0], result, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Compares the flips and the legal moves of the bitboard engine with {@link #referenceFlips} on every square
+     * of every position of random games.
+     *
+     * @return The number of squares compared.
+     */
+    static long checkMoves(int games, Random random) {
+        long squares = 0;
+        int[] counts = new int[64];
+        for (int game = 0; game < games; game++) {
+            Bitboard board = Bitboard.initial();
+            while (true) {
+                int[][] grid = grid(board);
+                long batchLegal = board.flipCounts(counts);
+                long legal = 0;
+                for (int square = 0; square < 64; square++) {
+                    boolean[] flipped = referenceFlips(Bitboard.SIZE, grid[0], grid[1], square / 8, square % 8);
+                    long flips = 0;
+                    for (int s = 0; s < 64; s++)
+                        if (flipped[s])
+                            flips |= 1L << s;
+                    if (flips != board.flipMask(square))
+                        throw mismatch(board, "flips on square " + square);
+                    if (counts[square] != Long.bitCount(flips))
+                        throw mismatch(board, "the batch flip count of square " + square);
+                    if (flips != 0)
+                        legal |= 1L << square;
+                    squares++;
+                }
+                if (legal != board.legalMoves() || legal != batchLegal)
+                    throw mismatch(board, "legal moves");
+                if (legal == 0)
+                    break;
+                playRandomMove(board, legal, random);
+            }
+        }
+        return squares;
+    }
+
+    /**
+     * Plays random games on a Bitboard and on the reference GameLogic of reversi.jar, loaded in its own class
+     * loader, and compares after every move the valid moves, the flip count of countFlips on every valid square,
+     * the disc of every square, the turn and the special discs left. One move in ten is undone on both sides.
+     * The jar is obfuscated, so its classes and methods are reached by the names in {@link #REFERENCE_NAMES};
+     * it prints every move, so System.out is silenced while the games run.
+     *
+     * @param jar The path of reversi.jar.
+     * @return The number of moves compared.
+     */
+    static long checkReference(int games, Random random, String jar) throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[]{Paths.get(jar).toUri().toURL()},
+                ClassLoader.getPlatformClassLoader());
+        Class<?> logicClass = loader.loadClass(REFERENCE_NAMES[0]);
+        Class<?> playerClass = loader.loadClass(REFERENCE_NAMES[1]);
+        Class<?> positionClass = loader.loadClass(REFERENCE_NAMES[2]);
+        Class<?> discClass = loader.loadClass(REFERENCE_NAMES[3]);
+        Class<?> humanClass = loader.loadClass(REFERENCE_NAMES[4]);
+        Method locateDisc = logicClass.getMethod("waa", positionClass, discClass);
+        Method discAt = logicClass.getMethod("waa", positionClass);
+        Method validMoves = logicClass.getMethod("aaww");
+        Method countFlips = logicClass.getMethod("wab", positionClass);
+        Method setPlayers = logicClass.getMethod("waa", playerClass, playerClass);
+        Method firstTurn = logicClass.getMethod("awawa");
+        Method reset = logicClass.getMethod("eawwa");
+        Method undo = logicClass.getMethod("aww");
+        Method row = positionClass.getMethod("waa"), col = positionClass.getMethod("wab");
+        Method owner = discClass.getMethod("waa"), discType = discClass.getMethod("wab");
+        Method bombsLeft = playerClass.getMethod("eawwa"), unflippablesLeft = playerClass.getMethod("aww");
+        Constructor<?> position = positionClass.getConstructor(int.class, int.class);
+        Constructor<?>[] discs = new Constructor<?>[TYPES.length];
+        String[] typeNames = {new SimpleDisc(null).getType(), new UnflippableDisc(null).getType(),
+                new BombDisc(null).getType()};
+        Object first = humanClass.getConstructor(boolean.class).newInstance(true);
+        Object second = humanClass.getConstructor(boolean.class).newInstance(false);
+        for (int type : TYPES) {
+            discs[type] = loader.loadClass(REFERENCE_NAMES[5 + type]).getConstructor(playerClass);
+            if (!typeNames[type].equals(discType.invoke(discs[type].newInstance(first))))
+                throw new IllegalStateException(REFERENCE_NAMES[5 + type] + " of " + jar + " is not the disc "
+                        + typeNames[type]);
+        }
+        Object[] positions = new Object[64];
+        for (int square = 0; square < 64; square++)
+            positions[square] = position.newInstance(square / 8, square % 8);
+
+        long moves = 0;
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int game = 0; game < games; game++) {
+                Object logic = logicClass.getConstructor().newInstance();
+                setPlayers.invoke(logic, first, second);
+                reset.invoke(logic);
+                Bitboard board = Bitboard.initial();
+                Bitboard before = board;
+                String last = "the start";
+                while (true) {
+                    if ((Boolean) firstTurn.invoke(logic) != board.isFirstToMove()
+                            || (Integer) bombsLeft.invoke(first) != board.firstBombs
+                            || (Integer) bombsLeft.invoke(second) != board.secondBombs
+                            || (Integer) unflippablesLeft.invoke(first) != board.firstUnflippables
+                            || (Integer) unflippablesLeft.invoke(second) != board.secondUnflippables)
+                        throw mismatch(before, "the turn or the special discs left after " + last);
+                    for (int square = 0; square < 64; square++) {
+                        Object disc = discAt.invoke(logic, positions[square]);
+                        int type = board.typeAt(square);
+                        if (disc == null ? type >= 0 : type < 0 || !typeNames[type].equals(discType.invoke(disc))
+                                || (owner.invoke(disc) == first) != ((board.first & (1L << square)) != 0))
+                            throw mismatch(before, "square " + square + " after " + last);
+                    }
+                    long legal = 0;
+                    for (Object valid : (List<?>) validMoves.invoke(logic)) {
+                        int square = Bitboard.square((Integer) row.invoke(valid), (Integer) col.invoke(valid));
+                        legal |= 1L << square;
+                        if ((Integer) countFlips.invoke(logic, valid) != Long.bitCount(board.flipMask(square)))
+                            throw mismatch(board, "the flip count of square " + square);
+                    }
+                    if (legal != board.legalMoves())
+                        throw mismatch(board, "the valid moves");
+                    if (legal == 0)
+                        break;
+                    before = board.copy();
+                    playRandomMove(board, legal, random);
+                    int move = board.lastMove();
+                    last = "the move " + AlphaBetaSearch.square(move) + ":" + AlphaBetaSearch.type(move);
+                    Object disc = discs[AlphaBetaSearch.type(move)].newInstance(board.isFirstToMove() ? second : first);
+                    if (!(Boolean) locateDisc.invoke(logic, positions[AlphaBetaSearch.square(move)], disc))
+                        throw mismatch(before, "a legal move that cannot be played: " + last);
+                    moves++;
+                    // Undone before the next comparison, so that the position before the move is compared again
+                    if (random.nextInt(10) == 0) {
+                        before = board.copy();
+                        last = "undoing " + last;
+                        undo.invoke(logic);
+                        board.undo();
+                    }
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return moves;
+    }
+
+    /**
+     * Plays games through an in-process {@link GameServer} over loopback, and the same games on a Bitboard.
+     * Human-against-human games check every reply: the valid moves, the board after every move, and one move
+     * in five undone and played again. One game in ten is then played by a human against AlphaBetaAI, where
+     * the AI's move must lead to the position of one of the legal moves of the reference, and UNDO is refused.
+     * Every session is closed at the end, and a closed session is unknown to the server.
+     *
+     * @param games The number of human-against-human games.
+     * @return The number of commands sent.
+     */
+    static long checkServer(int games, Random random) throws IOException {
+        if (System.getProperty("reversi.ai.budgetMs") == null)
+            System.setProperty("reversi.ai.budgetMs", "5");
+        long[] commands = new long[1];
+        try (GameServer server = new GameServer(0, 2);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int game = 0; game < games + games / 10; game++) {
+                boolean againstAi = game >= games;
+                String id = expect(in, out, "NEW Human " + (againstAi ? "AlphaBetaAI" : "Human"), "OK ", commands)
+                        .substring(3);
+                Bitboard board = Bitboard.initial();
+                while (true) {
+                    long legal = board.legalMoves();
+                    StringBuilder valid = new StringBuilder("OK");
+                    for (long m = legal; m != 0; m &= m - 1) {
+                        int square = Long.numberOfTrailingZeros(m);
+                        valid.append(' ').append(square / 8).append(',').append(square % 8);
+                    }
+                    expect(in, out, "VALID " + id, valid.toString(), commands);
+                    expect(in, out, "BOARD " + id, "OK " + board.toText() + (legal == 0 ? " OVER" : " PLAYING"), commands);
+                    if (legal == 0)
+                        break;
+                    String before = board.toText();
+                    playRandomMove(board, legal, random);
+                    int square = AlphaBetaSearch.square(board.lastMove());
+                    String command = "MOVE " + id + " " + square / 8 + " " + square % 8 + " "
+                            + new String[]{"SIMPLE", "UNFLIPPABLE", "BOMB"}[AlphaBetaSearch.type(board.lastMove())];
+                    expect(in, out, command, "OK", commands);
+                    if (againstAi) {
+                        expect(in, out, "UNDO " + id, "ERR", commands);
+                        String state = expect(in, out, "WAIT " + id, "OK ", commands);
+                        String reply = expect(in, out, "BOARD " + id, "OK ", commands);
+                        if (board.legalMoves() == 0 ? !state.equals("OK OVER") : !playedAs(board, reply.substring(3)))
+                            throw mismatch(board, "the AI's move, the server answered " + state + " and " + reply);
+                    } else if (random.nextInt(5) == 0) {
+                        expect(in, out, "UNDO " + id, "OK", commands);
+                        expect(in, out, "BOARD " + id, "OK " + before + " PLAYING", commands);
+                        expect(in, out, command, "OK", commands);
+                    }
+                }
+                expect(in, out, "MOVE " + id + " 0 0", "ERR", commands);
+                expect(in, out, "CLOSE " + id, "OK", commands);
+                expect(in, out, "BOARD " + id, "ERR no session", commands);
+            }
+            expect(in, out, "QUIT", "OK", commands);
+            if (server.getSessionCount() != 0)
+                throw new IllegalStateException(server.getSessionCount() + " sessions are still open after CLOSE");
+        }
+        return commands[0];
+    }
+
+    /**
+     * Plays on the board the legal move, of any type, that leads to the position of the text.
+     *
+     * @return Whether there is such a move.
+     */
+    private static boolean playedAs(Bitboard board, String text) {
+        for (long m = board.legalMoves(); m != 0; m &= m - 1) {
+            for (int type : TYPES) {
+                if (!board.play(Long.numberOfTrailingZeros(m), type))
+                    continue;
+                if (text.equals(board.toText() + (board.legalMoves() == 0 ? " OVER" : " PLAYING")))
+                    return true;
+                board.undo();
+            }
+        }
+        return false;
+    }
+
+    // Sends the command and checks that the reply starts with the expected text
+    private static String expect(BufferedReader in, Writer out, String command, String expected, long[] commands)
+            throws IOException {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        commands[0]++;
+        String reply = in.readLine();
+        if (reply == null || !reply.startsWith(expected))
+            throw new IllegalStateException("The server answered " + command + " with " + reply + ", expected "
+                    + expected);
+        return reply;
+    }
+
+    /**
+     * Plays random games on every board size {@link GridBitboard} supports, and compares on every square of
+     * every position the flips and legal moves with {@link #referenceFlips}, and the flip counts of
+     * {@link GridBitboard#legalMoves(int[], int[])}. On 8x8 the flips are also compared with Bitboard's, move by
+     * move in the same game. One move in ten is undone, and the position must be the one before the move.
+     *
+     * @param games The number of games of every size.
+     * @return The number of squares compared.
+     */
+    static long checkGrid(int games, Random random) {
+        long squares = 0;
+        for (int size = GridBitboard.MIN_SIZE; size <= GridBitboard.MAX_SIZE; size += 2) {
+            for (int game = 0; game < games; game++) {
+                GridBitboard board = GridBitboard.initial(size);
+                Bitboard same = size == Bitboard.SIZE ? Bitboard.initial() : null;
+                long[] legal = new long[board.words()], flips = new long[board.words()];
+                int[] moves = new int[size * size], flipCounts = new int[size * size];
+                while (true) {
+                    board.legalMoves(legal);
+                    int[][] grid = grid(board);
+                    for (int row = 0; row < size; row++) {
+                        for (int col = 0; col < size; col++) {
+                            int square = board.square(row, col);
+                            boolean[] flipped = referenceFlips(size, grid[0], grid[1], row, col);
+                            int count = board.flipMask(square, flips);
+                            int expected = 0;
+                            for (int i = 0; i < flipped.length; i++) {
+                                if (flipped[i] != isSet(flips, board.square(i / size, i % size)))
+                                    throw mismatch(board, "flips on square " + row + "," + col);
+                                if (flipped[i])
+                                    expected++;
+                            }
+                            if (count != expected || isSet(legal, square) != (expected > 0))
+                                throw mismatch(board, "the legal move on square " + row + "," + col);
+                            if (same != null && flips[0] != same.flipMask(Bitboard.square(row, col)))
+                                throw mismatch(same, "flips on square " + row + "," + col + " with GridBitboard");
+                            squares++;
+                        }
+                    }
+                    int count = board.legalMoves(moves, flipCounts);
+                    if (count != GridBitboard.bitCount(legal))
+                        throw mismatch(board, "the number of legal moves");
+                    for (int i = 0; i < count; i++)
+                        if (flipCounts[i] != board.flipMask(moves[i], flips))
+                            throw mismatch(board, "the flip count of square " + moves[i]);
+                    if (count == 0)
+                        break;
+                    int move = moves[random.nextInt(count)];
+                    int type = randomType(random, board.hasInventory(Bitboard.BOMB),
+                            board.hasInventory(Bitboard.UNFLIPPABLE));
+                    GridBitboard before = board.copy();
+                    if (!board.play(move, type) || same != null && !same.play(move, type))
+                        throw mismatch(before, "a legal move that cannot be played");
+                    if (random.nextInt(10) == 0) {
+                        board.undo();
+                        if (!samePosition(board, before))
+                            throw mismatch(before, "the position after undoing the move " + move);
+                        board.play(move, type);
+                    }
+                }
+            }
+        }
+        return squares;
+    }
+
+    /**
+     * The discs a move flips, found the slow way on a plain grid of any size: walking the 8 lines from the
+     * square, then flipping the neighbours of every flipped bomb, one bomb at a time.
+     *
+     * @param size  The number of rows and columns.
+     * @param owner The owner of every square, row by row: 0 for none, 1 for the side to move, 2 for its opponent.
+     * @param type  The disc type of every square, row by row.
+     * @return Whether each square, row by row, is flipped; none if the move is not legal.
+     */
+    static boolean[] referenceFlips(int size, int[] owner, int[] type, int row, int col) {
+        boolean[] flipped = new boolean[size * size];
+        if (owner[row * size + col] != 0)
+            return flipped;
+        ArrayDeque<Integer> bombs = new ArrayDeque<>();
+        for (int[] direction : DIRECTIONS) {
+            int r = row + direction[0], c = col + direction[1];
+            while (onBoard(size, r, c) && owner[r * size + c] == 2) {
+                r += direction[0];
+                c += direction[1];
+            }
+            if (!onBoard(size, r, c) || owner[r * size + c] != 1)
+                continue;
+            for (r -= direction[0], c -= direction[1]; r != row || c != col; r -= direction[0], c -= direction[1]) {
+                int square = r * size + c;
+                if (type[square] != Bitboard.UNFLIPPABLE && !flipped[square]) {
+                    flipped[square] = true;
+                    if (type[square] == Bitboard.BOMB)
+                        bombs.add(square);
+                }
+            }
+        }
+        while (!bombs.isEmpty()) {
+            int bomb = bombs.poll();
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    int r = bomb / size + dr, c = bomb % size + dc;
+                    if ((dr | dc) == 0 || !onBoard(size, r, c))
+                        continue;
+                    int neighbour = r * size + c;
+                    if (owner[neighbour] != 2 || flipped[neighbour] || type[neighbour] == Bitboard.UNFLIPPABLE)
+                        continue;
+                    flipped[neighbour] = true;
+                    if (type[neighbour] == Bitboard.BOMB)
+                        bombs.add(neighbour);
+                }
+            }
+        }
+        return flipped;
+    }
+
+    /**
+     * @return The position as plain arrays for {@link #referenceFlips}: the owners, then the disc types.
+     */
+    static int[][] grid(Bitboard board) {
+        int[][] grid = new int[2][64];
+        for (int square = 0; square < 64; square++) {
+            grid[1][square] = board.typeAt(square);
+            if (grid[1][square] >= 0)
+                grid[0][square] = (board.own() & (1L << square)) != 0 ? 1 : 2;
+        }
+        return grid;
+    }
+
+    static int[][] grid(GridBitboard board) {
+        int size = board.size();
+        int[][] grid = new int[2][size * size];
+        for (int i = 0; i < size * size; i++) {
+            int square = board.square(i / size, i % size);
+            grid[1][i] = board.typeAt(square);
+            if (grid[1][i] >= 0)
+                grid[0][i] = board.isFirstPlayerDisc(square) == board.isFirstToMove() ? 1 : 2;
+        }
+        return grid;
+    }
+
+    private static boolean samePosition(GridBitboard a, GridBitboard b) {
+        return Arrays.equals(a.first, b.first) && Arrays.equals(a.second, b.second)
+                && Arrays.equals(a.unflippable, b.unflippable) && Arrays.equals(a.bombs, b.bombs)
+                && a.firstToMove == b.firstToMove && a.firstBombs == b.firstBombs && a.secondBombs == b.secondBombs
+                && a.firstUnflippables == b.firstUnflippables && a.secondUnflippables == b.secondUnflippables;
+    }
+
+    private static boolean isSet(long[] mask, int square) {
+        return (mask[square >>> 6] & (1L << square)) != 0;
+    }
+
+    /**
+     * Solves positions with 1 to {@link #SOLVER_MAX_EMPTIES} empty squares, and checks that the score of the solver
+     * is the exact score found by {@link #referenceScore}, and that its move reaches that score.
+     *
+     * @param positions The number of positions for every number of empty squares.
+     * @return The number of positions solved.
+     */
+    static int checkSolver(int positions, Random random) {
+        EndgameSolver solver = new EndgameSolver(TranspositionTable.ofMegabytes(16));
+        int solved = 0;
+        for (int empties = 1; empties <= SOLVER_MAX_EMPTIES; empties++) {
+            for (Bitboard board : EndgameSolver.benchmarkSet(random, empties, positions)) {
+                int move = solver.solve(board, Long.MAX_VALUE);
+                int expected = referenceScore(board.copy(), -AlphaBetaSearch.INFINITY, AlphaBetaSearch.INFINITY);
+                if (solver.getScore() != expected)
+                    throw mismatch(board, "the score: the solver found " + solver.getScore() + " instead of " + expected);
+                Bitboard child = board.copy();
+                if (!child.play(AlphaBetaSearch.square(move), AlphaBetaSearch.type(move))
+                        || -referenceScore(child, -AlphaBetaSearch.INFINITY, AlphaBetaSearch.INFINITY) != expected)
+                    throw mismatch(board, "the move: the solver's move " + move + " does not reach " + expected);
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Searches to the end of the game with nothing but alpha-beta pruning: every disc type on every legal square,
+     * in square order.
+     *
+     * @param board The position; it is restored before returning.
+     * @return The score for the side to move, on the scale of {@link AlphaBetaSearch#finalScore}: exact within
+     * the window, and a bound outside it.
+     */
+    static int referenceScore(Bitboard board, int alpha, int beta) {
+        long legal = board.legalMoves();
+        if (legal == 0)
+            return AlphaBetaSearch.finalScore(board);
+        for (; legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            for (int type : TYPES) {
+                if (!board.play(square, type))
+                    continue;
+                int score = -referenceScore(board, -beta, -alpha);
+                board.undo();
+                if (score >= beta)
+                    return score;
+                alpha = Math.max(alpha, score);
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Plays the tournament of the most flips against the fewest flips player on 1 and 4 threads, checks the
+     * counted results against {@link #referenceGame}, then times a tournament of the random against the most flips
+     * player.
+     *
+     * @return The results and the speed of the timed tournament.
+     */
+    static String checkTournament(int games) throws Exception {
+        AIPlayer.registerAIPlayerType("ReferenceCheck.MostFlips", MostFlips.class);
+        AIPlayer.registerAIPlayerType("ReferenceCheck.FewestFlips", FewestFlips.class);
+        AIPlayer.registerAIPlayerType("ReferenceCheck.Random", RandomMoves.class);
+        // The players are deterministic, so every game with the same player first is the same game
+        int first = referenceGame(true), second = referenceGame(false);
+        long[] expected = new long[3]; // wins, draws, losses of the most flips player
+        for (int game = 0; game < games; game++) {
+            int diff = game % 2 == 0 ? first : second;
+            expected[diff > 0 ? 0 : diff == 0 ? 1 : 2]++;
+        }
+        for (int threads : new int[]{1, 4}) {
+            HeadlessTournament tournament = new HeadlessTournament("ReferenceCheck.MostFlips",
+                    "ReferenceCheck.FewestFlips");
+            tournament.play(games, threads);
+            long[] counted = {tournament.getWins(), tournament.getDraws(), tournament.getLosses()};
+            for (int i = 0; i < 3; i++)
+                if (counted[i] != expected[i])
+                    throw new IllegalStateException(String.format("The tournament on %d threads counted %d/%d/%d"
+                                    + " wins/draws/losses instead of %d/%d/%d", threads, counted[0], counted[1],
+                            counted[2], expected[0], expected[1], expected[2]));
+        }
+        HeadlessTournament timed = new HeadlessTournament("ReferenceCheck.Random", "ReferenceCheck.MostFlips");
+        long start = System.nanoTime();
+        timed.play(games, Runtime.getRuntime().availableProcessors());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%d/%d/%d wins/draws/losses of %d games counted as played on 1 and 4 threads;"
+                        + " random vs most flips at %.0f games/min", expected[0], expected[1], expected[2], games,
+                games * 60 / seconds);
+    }
+
+    /**
+     * Plays the most flips player against the fewest flips player directly on a Bitboard.
+     *
+     * @param mostFlipsFirst Whether the most flips player moves first.
+     * @return The final disc difference, from the point of view of the most flips player.
+     */
+    static int referenceGame(boolean mostFlipsFirst) {
+        Bitboard board = Bitboard.initial();
+        for (long legal = board.legalMoves(); legal != 0; legal = board.legalMoves()) {
+            boolean most = board.isFirstToMove() == mostFlipsFirst;
+            int pick = -1, pickFlips = 0;
+            for (; legal != 0; legal &= legal - 1) {
+                int square = Long.numberOfTrailingZeros(legal);
+                int flips = Long.bitCount(board.flipMask(square));
+                if (pick < 0 || (most ? flips > pickFlips : flips < pickFlips)) {
+                    pick = square;
+                    pickFlips = flips;
+                }
+            }
+            board.play(pick, Bitboard.SIMPLE);
+        }
+        int diff = board.discCount(true) - board.discCount(false);
+        return mostFlipsFirst ? diff : -diff;
+    }
+
+    /**
+     * Plays the valid move with the most flips, the first in ValidMoves() order on ties, with a simple disc.
+     */
+    static class MostFlips extends AIPlayer {
+        public MostFlips(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        public Move makeMove(PlayableLogic gameStatus) {
+            return pick(gameStatus, true);
+        }
+
+        Move pick(PlayableLogic gameStatus, boolean most) {
+            Position pick = null;
+            int pickFlips = 0;
+            for (Position position : gameStatus.ValidMoves()) {
+                int flips = gameStatus.countFlips(position);
+                if (pick == null || (most ? flips > pickFlips : flips < pickFlips)) {
+                    pick = position;
+                    pickFlips = flips;
+                }
+            }
+            return pick == null ? null : toMove(pick, Bitboard.SIMPLE);
+        }
+    }
+
+    /**
+     * Plays the valid move with the fewest flips, the first in ValidMoves() order on ties, with a simple disc.
+     */
+    static class FewestFlips extends MostFlips {
+        public FewestFlips(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        public Move makeMove(PlayableLogic gameStatus) {
+            return pick(gameStatus, false);
+        }
+    }
+
+    /**
+     * Plays a valid move at random, with a simple disc.
+     */
+    static class RandomMoves extends AIPlayer {
+        private final Random random = new Random();
+
+        public RandomMoves(boolean isPlayerOne) {
+            super(isPlayerOne);
+        }
+
+        @Override
+        public Move makeMove(PlayableLogic gameStatus) {
+            List<Position> moves = gameStatus.ValidMoves();
+            return moves.isEmpty() ? null : toMove(moves.get(random.nextInt(moves.size())), Bitboard.SIMPLE);
+        }
+    }
+
+    /**
+     * Plays one of the legal moves at random, with a bomb or an unflippable disc now and then while the player
+     * has some left.
+     */
+    static void playRandomMove(Bitboard board, long legal, Random random) {
+        for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+            legal &= legal - 1;
+        int type = randomType(random, board.hasInventory(Bitboard.BOMB), board.hasInventory(Bitboard.UNFLIPPABLE));
+        if (!board.play(Long.numberOfTrailingZeros(legal), type))
+            throw mismatch(board, "a legal move that cannot be played");
+    }
+
+    private static int randomType(Random random, boolean bombs, boolean unflippables) {
+        if (random.nextInt(4) == 0 && bombs)
+            return Bitboard.BOMB;
+        if (random.nextInt(4) == 0 && unflippables)
+            return Bitboard.UNFLIPPABLE;
+        return Bitboard.SIMPLE;
+    }
+
+    private static boolean onBoard(int size, int row, int col) {
+        return row >= 0 && row < size && col >= 0 && col < size;
+    }
+
+    private static IllegalStateException mismatch(Bitboard board, String what) {
+        return new IllegalStateException("The engine and the reference disagree on " + what + " in position "
+                + board.toText());
+    }
+
+    private static IllegalStateException mismatch(GridBitboard board, String what) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < board.size() * board.size(); i++) {
+            int square = board.square(i / board.size(), i % board.size());
+            int type = board.typeAt(square);
+            char disc = type < 0 ? '.' : "SUB".charAt(type);
+            text.append(type < 0 || board.isFirstPlayerDisc(square) ? disc : Character.toLowerCase(disc));
+        }
+        return new IllegalStateException("The engine and the reference disagree on " + what + " in the "
+                + board.size() + "x" + board.size() + " position " + text + (board.isFirstToMove() ? " 1" : " 2"));
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of the moves chosen by the AI players, aggregated per AI type: time per move (with percentiles),
+ * nodes searched, depth reached, transposition table hit rate, branching factor, and the number of
+ * ValidMoves and countFlips calls. They are gathered only when the "reversi.stats" system property is true;
+ * {@link #ENABLED} is a constant, so when it is false the JIT removes every statistics branch from the hot
+ * paths and nothing is counted.
+ * A move is measured by choosing it through {@link #makeMove(AIPlayer, PlayableLogic)}. While the AI thinks,
+ * the searches and the game logic add to a record held by the thinking thread, so nothing is shared until
+ * the move is done; then the record is added to the LongAdder counters of the AI type, published over JMX
+ * (see {@link SearchStatsMXBean}), and written as one JSON line to the sink set with {@link #setJsonSink}.
+ */
+public final class SearchStats implements SearchStatsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("reversi.stats");
+
+    private static final ThreadLocal<MoveRecord> CURRENT = ThreadLocal.withInitial(MoveRecord::new);
+    private static final Map<String, SearchStats> BY_TYPE = new ConcurrentHashMap<>();
+    private static volatile Writer jsonSink;
+
+    private final String aiType;
+    private final LatencyHistogram moveNanos = new LatencyHistogram();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder searchedMoves = new LongAdder(); // the moves that were searched (not book moves)
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder depth = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder expandedNodes = new LongAdder();
+    private final LongAdder generatedMoves = new LongAdder();
+    private final LongAdder validMovesCalls = new LongAdder();
+    private final LongAdder countFlipsCalls = new LongAdder();
+
+    /**
+     * The statistics of the move being chosen by the current thread.
+     */
+    static final class MoveRecord {
+        boolean searched;
+        long nodes;
+        int depth;
+        long tableProbes;
+        long tableHits;
+        long expandedNodes;
+        long generatedMoves;
+        long validMovesCalls;
+        long countFlipsCalls;
+
+        /**
+         * Adds the work of one search to the move.
+         *
+         * @param nodes          The nodes visited.
+         * @param tableProbes    The transposition table probes.
+         * @param tableHits      The probes that found an entry.
+         * @param expandedNodes  The nodes whose moves were generated.
+         * @param generatedMoves The moves generated at those nodes.
+         */
+        void addSearch(long nodes, long tableProbes, long tableHits, long expandedNodes, long generatedMoves) {
+            searched = true;
+            this.nodes += nodes;
+            this.tableProbes += tableProbes;
+            this.tableHits += tableHits;
+            this.expandedNodes += expandedNodes;
+            this.generatedMoves += generatedMoves;
+        }
+
+        private void clear() {
+            searched = false;
+            nodes = tableProbes = tableHits = expandedNodes = generatedMoves = validMovesCalls = countFlipsCalls = 0;
+            depth = 0;
+        }
+    }
+
+    private SearchStats(String aiType) {
+        this.aiType = aiType;
+    }
+
+    /**
+     * Asks an AI for its move, and measures the move when the statistics are enabled.
+     *
+     * @param ai    The AI to move.
+     * @param logic The game.
+     * @return The AI's move.
+     */
+    public static Move makeMove(AIPlayer ai, PlayableLogic logic) {
+        if (!ENABLED)
+            return ai.makeMove(logic);
+        MoveRecord record = CURRENT.get();
+        record.clear();
+        long start = System.nanoTime();
+        Move move = ai.makeMove(logic);
+        long nanos = System.nanoTime() - start;
+        forType(ai.getClass().getSimpleName()).add(record, nanos, ai.isPlayerOne());
+        return move;
+    }
+
+    /**
+     * @return The record of the move being chosen on this thread. Only call it when {@link #ENABLED}.
+     */
+    static MoveRecord current() {
+        return CURRENT.get();
+    }
+
+    static void validMovesCalled() {
+        CURRENT.get().validMovesCalls++;
+    }
+
+    static void countFlipsCalled() {
+        CURRENT.get().countFlipsCalls++;
+    }
+
+    /**
+     * @param aiType The simple class name of an AI player.
+     * @return The statistics of that AI type, created (and registered over JMX) on first use.
+     */
+    public static SearchStats forType(String aiType) {
+        return BY_TYPE.computeIfAbsent(aiType, type -> {
+            SearchStats stats = new SearchStats(type);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+                        new ObjectName("reversi:type=SearchStats,ai=" + ObjectName.quote(type)));
+            } catch (JMException e) {
+                System.err.println("The search statistics of " + type + " are not published over JMX: " + e.getMessage());
+            }
+            return stats;
+        });
+    }
+
+    /**
+     * @return The statistics of every AI type that has moved so far.
+     */
+    public static List<SearchStats> all() {
+        return new ArrayList<>(BY_TYPE.values());
+    }
+
+    /**
+     * @param sink Where to write one JSON line per measured move, or null not to write them. The caller
+     *             flushes and closes it.
+     */
+    public static void setJsonSink(Writer sink) {
+        jsonSink = sink;
+    }
+
+    private void add(MoveRecord record, long nanos, boolean playerOne) {
+        moveNanos.record(nanos);
+        maxNanos.accumulate(nanos);
+        if (record.searched) {
+            searchedMoves.increment();
+            nodes.add(record.nodes);
+            depth.add(record.depth);
+            tableProbes.add(record.tableProbes);
+            tableHits.add(record.tableHits);
+            expandedNodes.add(record.expandedNodes);
+            generatedMoves.add(record.generatedMoves);
+        }
+        validMovesCalls.add(record.validMovesCalls);
+        countFlipsCalls.add(record.countFlipsCalls);
+
+        Writer sink = jsonSink;
+        if (sink == null)
+            return;
+        StringBuilder line = new StringBuilder(256).append("{\"ai\":\"").append(aiType)
+                .append("\",\"player\":").append(playerOne ? 1 : 2).append(",\"nanos\":").append(nanos);
+        if (record.searched) {
+            line.append(",\"nodes\":").append(record.nodes).append(",\"depth\":").append(record.depth)
+                    .append(",\"tableProbes\":").append(record.tableProbes).append(",\"tableHits\":").append(record.tableHits)
+                    .append(",\"branching\":").append(ratio(record.generatedMoves, record.expandedNodes));
+        }
+        line.append(",\"validMovesCalls\":").append(record.validMovesCalls)
+                .append(",\"countFlipsCalls\":").append(record.countFlipsCalls).append("}\n");
+        try {
+            synchronized (sink) {
+                sink.write(line.toString());
+            }
+        } catch (IOException e) {
+            jsonSink = null;
+            System.err.println("Stopped writing the move statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The aggregated statistics as one JSON object.
+     */
+    public String toJson() {
+        return String.format("{\"ai\":\"%s\",\"moves\":%d,\"meanMoveMillis\":%.3f,\"p50MoveMillis\":%.3f,"
+                        + "\"p99MoveMillis\":%.3f,\"maxMoveMillis\":%.3f,\"meanNodes\":%.1f,\"meanDepth\":%.2f,"
+                        + "\"tableHitRate\":%.4f,\"branchingFactor\":%.2f,\"validMovesCalls\":%d,\"countFlipsCalls\":%d}",
+                aiType, getMoves(), getMeanMoveMillis(), getP50MoveMillis(), getP99MoveMillis(), getMaxMoveMillis(),
+                getMeanNodes(), getMeanDepth(), getTableHitRate(), getBranchingFactor(), getValidMovesCalls(),
+                getCountFlipsCalls());
+    }
+
+    public String getAiType() {
+        return aiType;
+    }
+
+    @Override
+    public long getMoves() {
+        return moveNanos.count();
+    }
+
+    @Override
+    public double getMeanMoveMillis() {
+        return moveNanos.mean() / 1e6;
+    }
+
+    @Override
+    public double getP50MoveMillis() {
+        return moveNanos.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getP99MoveMillis() {
+        return moveNanos.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getMaxMoveMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getMeanNodes() {
+        return ratio(nodes.sum(), searchedMoves.sum());
+    }
+
+    @Override
+    public double getMeanDepth() {
+        return ratio(depth.sum(), searchedMoves.sum());
+    }
+
+    @Override
+    public double getTableHitRate() {
+        return ratio(tableHits.sum(), tableProbes.sum());
+    }
+
+    @Override
+    public double getBranchingFactor() {
+        return ratio(generatedMoves.sum(), expandedNodes.sum());
+    }
+
+    @Override
+    public long getValidMovesCalls() {
+        return validMovesCalls.sum();
+    }
+
+    @Override
+    public long getCountFlipsCalls() {
+        return countFlipsCalls.sum();
+    }
+
+    @Override
+    public void reset() {
+        moveNanos.reset();
+        maxNanos.reset();
+        for (LongAdder counter : new LongAdder[]{searchedMoves, nodes, depth, tableProbes, tableHits, expandedNodes,
+                generatedMoves, validMovesCalls, countFlipsCalls})
+            counter.reset();
+    }
+
+    private static double ratio(long numerator, long denominator) {
+        return denominator == 0 ? 0 : (double) numerator / denominator;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * The JMX view of the {@link SearchStats} of one AI type, registered as
+ * "reversi:type=SearchStats,ai=&lt;AI type&gt;" when the statistics are enabled.
+ */
+public interface SearchStatsMXBean {
+
+    long getMoves();
+
+    double getMeanMoveMillis();
+
+    double getP50MoveMillis();
+
+    double getP99MoveMillis();
+
+    double getMaxMoveMillis();
+
+    double getMeanNodes();
+
+    double getMeanDepth();
+
+    /**
+     * @return The fraction of transposition table probes that found an entry.
+     */
+    double getTableHitRate();
+
+    /**
+     * @return The mean number of moves generated at the nodes the searches expanded.
+     */
+    double getBranchingFactor();
+
+    long getValidMovesCalls();
+
+    long getCountFlipsCalls();
+
+    /**
+     * Forgets the statistics gathered so far.
+     */
+    void reset();
+}
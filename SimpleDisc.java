@@ -0,0 +1,30 @@
+/**
+ * A regular disc that follows the standard Reversi rules.
+ */
+public class SimpleDisc implements Disc {
+    private Player owner;
+
+    /**
+     * Creates a new disc owned by the given player.
+     *
+     * @param owner The player who owns the disc.
+     */
+    public SimpleDisc(Player owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public Player getOwner() {
+        return owner;
+    }
+
+    @Override
+    public void setOwner(Player player) {
+        this.owner = player;
+    }
+
+    @Override
+    public String getType() {
+        return "⬤";
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how the parallel search scales with the number of threads.
+ * A fixed, reproducible set of positions (random games with a fixed seed, stopped at several move numbers)
+ * is searched with 1, 2, 4, 8 and all available threads. For every thread count the report shows the
+ * search speed in nodes per second at a fixed time budget, and the time needed to complete a fixed depth,
+ * with the speedup over one thread. The transposition table is cleared before every search, so that no run
+ * starts from the entries an earlier one left on the same position.
+ * Usage: java SmpSpeedupReport [budgetMs] [depth] [maxThreads]
+ */
+public class SmpSpeedupReport {
+    private static final long SEED = 20250101L;
+    private static final int[] PLIES = {8, 16, 24, 32, 40};
+    private static final int POSITIONS_PER_PLY = 4;
+
+    public static void main(String[] args) {
+        long budgetMs = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<Bitboard> positions = positions();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2)
+            threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+
+        System.out.printf("%d positions, %d ms per position, time to depth %d%n", positions.size(), budgetMs, depth);
+        System.out.printf("%8s %14s %8s %14s %8s%n", "threads", "nodes/s", "scaling", "time-to-depth", "speedup");
+        double baseNps = 0, baseTime = 0;
+        for (int threads : threadCounts) {
+            TranspositionTable table = TranspositionTable.ofMegabytes(64);
+            LazySmpSearch search = new LazySmpSearch(table, threads);
+
+            long nodes = 0, nanos = 0;
+            for (Bitboard position : positions) {
+                table.clear();
+                long start = System.nanoTime();
+                search.search(position, budgetMs * 1_000_000L);
+                nanos += System.nanoTime() - start;
+                nodes += search.getNodes();
+            }
+            double nps = nodes * 1e9 / nanos;
+
+            long depthNanos = 0;
+            for (Bitboard position : positions) {
+                table.clear();
+                long start = System.nanoTime();
+                search.search(position, Long.MAX_VALUE / 2, depth);
+                depthNanos += System.nanoTime() - start;
+            }
+            double depthSeconds = depthNanos / 1e9;
+
+            if (threads == 1) {
+                baseNps = nps;
+                baseTime = depthSeconds;
+            }
+            System.out.printf("%8d %14.0f %7.2fx %13.2fs %7.2fx%n",
+                    threads, nps, nps / baseNps, depthSeconds, baseTime / depthSeconds);
+            search.shutdown();
+        }
+    }
+
+    /**
+     * @return The fixed benchmark positions, the same on every run.
+     */
+    static List<Bitboard> positions() {
+        Random random = new Random(SEED);
+        List<Bitboard> positions = new ArrayList<>();
+        for (int plies : PLIES) {
+            for (int i = 0; i < POSITIONS_PER_PLY; i++) {
+                Bitboard board = randomPosition(random, plies);
+                if (board != null)
+                    positions.add(board);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Plays random moves (simple discs only) from the initial position.
+     *
+     * @return The position after the given number of moves, or null if the game ended before.
+     */
+    static Bitboard randomPosition(Random random, int plies) {
+        Bitboard board = Bitboard.initial();
+        for (int ply = 0; ply < plies; ply++) {
+            long legal = board.legalMoves();
+            if (legal == 0)
+                return null;
+            for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+                legal &= legal - 1;
+            board.play(Long.numberOfTrailingZeros(legal), Bitboard.SIMPLE);
+        }
+        return board;
+    }
+}
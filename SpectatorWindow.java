@@ -0,0 +1,258 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A window to watch AI-vs-AI games, where the AIs never run on the event dispatch thread.
+ * The game is played by a background executor, which publishes every completed move; the Swing side only
+ * paints. In normal mode each move is shown and the player waits for the chosen delay between moves.
+ * In "max speed" mode the games run back to back without waiting, and the intermediate boards are coalesced:
+ * a repaint timer shows the latest board at most once per frame, whatever the number of moves in between.
+ * A slow AI therefore never freezes the window, and a fast one is not slowed down by painting.
+ * A watchdog thread queues a probe on the event dispatch thread every frame; the time the probe waits is how
+ * long the thread was busy with other events (showing boards, painting, the status line), and the 99th
+ * percentile and longest of these stalls are shown in the status line, next to the 16 ms of a frame.
+ * With --measure, the games are played in max speed mode for the given number of seconds without a screen
+ * (it also runs with -Djava.awt.headless=true), the view is painted to an offscreen image every frame, and the
+ * stalls after a 2 second warmup are printed at the end.
+ * Usage: java SpectatorWindow &lt;AI type&gt; &lt;AI type&gt; [--measure &lt;seconds&gt;]
+ */
+public class SpectatorWindow extends JPanel {
+    private static final int FRAME_MILLIS = 16; // at most one repaint per frame in max speed mode
+    private static final int MEASURE_WARMUP_MILLIS = 2000; // class loading, fonts and JIT stall the first 1-2 s
+
+    private final String firstType;
+    private final String secondType;
+    private final BoardView view = new BoardView();
+    private final JLabel status = new JLabel(" ");
+    private final JCheckBox maxSpeed = new JCheckBox("Max speed");
+    private final JSlider delay = new JSlider(JSlider.HORIZONTAL, 0, 2000, 500);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "spectator-game");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread watchdog = new Thread(this::watch, "spectator-watchdog");
+    private final AtomicReference<Bitboard> latest = new AtomicReference<>(); // the newest board not shown yet
+    private final Timer frameTimer = new Timer(FRAME_MILLIS, e -> showLatest());
+    private final LatencyHistogram stalls = new LatencyHistogram();
+    private volatile boolean fastForward;
+    private volatile int delayMillis = 500;
+    private volatile boolean running = true;
+    private Future<?> game;
+    private int firstWins, secondWins, draws, moves;
+    private long maxStallNanos; // only used on the event dispatch thread, like the counters above
+    private BufferedImage offscreen; // painted every frame when measuring without a screen
+
+    public SpectatorWindow(String firstType, String secondType) {
+        super(new BorderLayout());
+        this.firstType = firstType;
+        this.secondType = secondType;
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        controls.add(maxSpeed);
+        controls.add(new JLabel("Delay:"));
+        controls.add(delay);
+        maxSpeed.addActionListener(e -> setMaxSpeed(maxSpeed.isSelected()));
+        delay.addChangeListener(e -> delayMillis = delay.getValue());
+        add(controls, BorderLayout.NORTH);
+        add(view, BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+
+        frameTimer.start();
+        watchdog.setDaemon(true);
+        watchdog.start();
+        game = executor.submit(() -> {
+            try {
+                playForever();
+            } catch (RuntimeException e) {
+                SwingUtilities.invokeLater(() -> status.setText("Stopped: " + e.getMessage()));
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java SpectatorWindow <AI type> <AI type> [--measure <seconds>]");
+            System.exit(1);
+        }
+        AIPlayer.registerAllAIPlayers();
+        if (args.length > 3 && args[2].equals("--measure")) {
+            measure(args[0], args[1], Integer.parseInt(args[3]));
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            SpectatorWindow spectator = new SpectatorWindow(args[0], args[1]);
+            JFrame window = new JFrame(args[0] + " vs " + args[1]);
+            window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            window.add(spectator);
+            window.pack();
+            window.setLocationRelativeTo(null);
+            window.setVisible(true);
+        });
+    }
+
+    /**
+     * Plays in max speed mode for a while without a screen, painting the view offscreen every frame, and prints
+     * the stalls of the event dispatch thread.
+     */
+    private static void measure(String firstType, String secondType, int seconds) throws Exception {
+        SpectatorWindow[] spectator = new SpectatorWindow[1];
+        SwingUtilities.invokeAndWait(() -> {
+            spectator[0] = new SpectatorWindow(firstType, secondType);
+            spectator[0].setMaxSpeed(true);
+            spectator[0].offscreen = spectator[0].layOutOffscreen();
+        });
+        Thread.sleep(MEASURE_WARMUP_MILLIS);
+        SwingUtilities.invokeAndWait(() -> {
+            spectator[0].stalls.reset();
+            spectator[0].maxStallNanos = 0;
+            spectator[0].moves = 0;
+        });
+        Thread.sleep(seconds * 1000L);
+        SwingUtilities.invokeAndWait(() -> {
+            SpectatorWindow s = spectator[0];
+            s.stop();
+            System.out.printf("%d boards shown in %d s, %d games; event thread stalls over %d frames: p50 %.2f ms,"
+                            + " p99 %.2f ms, max %.2f ms (a frame is %d ms)%n", s.moves, seconds,
+                    s.firstWins + s.secondWins + s.draws, s.stalls.count(), s.stalls.percentile(0.5) / 1e6,
+                    s.stalls.percentile(0.99) / 1e6, s.maxStallNanos / 1e6, FRAME_MILLIS);
+        });
+    }
+
+    /**
+     * Runs on the background executor: plays games one after the other until the window is closed.
+     */
+    private void playForever() {
+        AIPlayer one = AIPlayer.createAIPlayer(firstType, true);
+        AIPlayer two = AIPlayer.createAIPlayer(secondType, false);
+        BitboardGameLogic logic = new BitboardGameLogic();
+        logic.setPlayers(one, two);
+        while (running) {
+            logic.reset();
+            publish(logic.getBitboard());
+            while (running && !logic.isGameFinished()) {
+                AIPlayer current = logic.isFirstPlayerTurn() ? one : two;
+                Move move = SearchStats.makeMove(current, logic);
+                if (move == null || !logic.locate_disc(move.position(), move.disc()))
+                    throw new IllegalStateException(current.getClass().getSimpleName() + " played an illegal move: " + move);
+                publish(logic.getBitboard());
+                pause();
+            }
+            Bitboard end = logic.getBitboard();
+            int diff = end.discCount(true) - end.discCount(false);
+            SwingUtilities.invokeLater(() -> gameOver(diff));
+            pause();
+        }
+    }
+
+    /**
+     * Runs on the watchdog thread: queues a probe on the event dispatch thread every frame, which records how
+     * long it waited there.
+     */
+    private void watch() {
+        while (running) {
+            long queued = System.nanoTime();
+            SwingUtilities.invokeLater(() -> {
+                long stall = System.nanoTime() - queued;
+                stalls.record(stall);
+                maxStallNanos = Math.max(maxStallNanos, stall);
+            });
+            try {
+                Thread.sleep(FRAME_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void publish(Bitboard board) {
+        latest.set(board);
+        if (!fastForward)
+            SwingUtilities.invokeLater(this::showLatest);
+    }
+
+    private void pause() {
+        if (fastForward)
+            return;
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void setMaxSpeed(boolean on) {
+        maxSpeed.setSelected(on);
+        fastForward = on;
+        view.setHints(!on, !on);
+    }
+
+    /**
+     * Runs on the event dispatch thread: shows the newest published board, if any,
+     * skipping the ones published since the last call.
+     */
+    private void showLatest() {
+        Bitboard board = latest.getAndSet(null);
+        if (board != null) {
+            view.show(board);
+            moves++;
+            updateStatus();
+        }
+        if (offscreen != null) {
+            Graphics2D g = offscreen.createGraphics();
+            paint(g);
+            g.dispose();
+        }
+    }
+
+    private void gameOver(int diff) {
+        if (diff > 0)
+            firstWins++;
+        else if (diff < 0)
+            secondWins++;
+        else
+            draws++;
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        status.setText(String.format("%s %d - %d %s (%d draws)   boards shown: %d"
+                        + "   event thread stalls: p99 %.1f ms, max %.1f ms (frame %d ms)",
+                firstType, firstWins, secondWins, secondType, draws, moves,
+                stalls.percentile(0.99) / 1e6, maxStallNanos / 1e6, FRAME_MILLIS));
+    }
+
+    /**
+     * Sizes and lays out the panel without a window, and makes the image it is painted to.
+     */
+    private BufferedImage layOutOffscreen() {
+        setSize(getPreferredSize());
+        layOut(this);
+        return new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static void layOut(Container container) {
+        container.doLayout();
+        for (Component child : container.getComponents())
+            if (child instanceof Container)
+                layOut((Container) child);
+    }
+
+    /**
+     * Stops the games, the watchdog and the repaint timer. The spectator cannot be restarted.
+     */
+    public void stop() {
+        running = false;
+        frameTimer.stop();
+        watchdog.interrupt();
+        if (game != null)
+            game.cancel(true);
+        executor.shutdownNow();
+    }
+}
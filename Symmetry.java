@@ -0,0 +1,174 @@
+/**
+ * The 8 symmetries of the square board (rotations and reflections), applied to {@link Bitboard} masks,
+ * squares and whole positions. The rules do not depend on the orientation of the board, so the 8 images of
+ * a position have the same value and mirrored best moves; a position can therefore be looked up under a
+ * canonical hash, the smallest Zobrist hash of its 8 images, so that the same entry serves all of them.
+ * Symmetry {@code s} transposes the board if bit 2 is set, then mirrors the columns if bit 0 is set,
+ * then mirrors the rows if bit 1 is set; symmetry 0 is the identity.
+ */
+public final class Symmetry {
+    public static final int COUNT = 8;
+    private static final int MIRROR_COLUMNS = 1;
+    private static final int MIRROR_ROWS = 2;
+    private static final int TRANSPOSE = 4;
+
+    // [symmetry][square]: the image of each square
+    private static final int[][] SQUARES = new int[COUNT][64];
+    private static final int[] INVERSE = new int[COUNT];
+
+    static {
+        for (int s = 0; s < COUNT; s++) {
+            for (int square = 0; square < 64; square++) {
+                int row = square / Bitboard.SIZE, col = square % Bitboard.SIZE;
+                if ((s & TRANSPOSE) != 0) {
+                    int t = row;
+                    row = col;
+                    col = t;
+                }
+                if ((s & MIRROR_COLUMNS) != 0)
+                    col = Bitboard.SIZE - 1 - col;
+                if ((s & MIRROR_ROWS) != 0)
+                    row = Bitboard.SIZE - 1 - row;
+                SQUARES[s][square] = Bitboard.square(row, col);
+            }
+        }
+        for (int s = 0; s < COUNT; s++)
+            for (int t = 0; t < COUNT; t++)
+                if (SQUARES[t][SQUARES[s][1]] == 1 && SQUARES[t][SQUARES[s][8]] == 8)
+                    INVERSE[s] = t;
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * @param square    A square, {@code row * 8 + col}.
+     * @param symmetry  A symmetry, from 0 to 7.
+     * @return The image of the square.
+     */
+    public static int square(int square, int symmetry) {
+        return SQUARES[symmetry][square];
+    }
+
+    /**
+     * @param symmetry A symmetry, from 0 to 7.
+     * @return The symmetry that undoes it.
+     */
+    public static int inverse(int symmetry) {
+        return INVERSE[symmetry];
+    }
+
+    /**
+     * @param mask     A set of squares.
+     * @param symmetry A symmetry, from 0 to 7.
+     * @return The image of the set.
+     */
+    public static long mask(long mask, int symmetry) {
+        if ((symmetry & TRANSPOSE) != 0)
+            mask = transpose(mask);
+        if ((symmetry & MIRROR_COLUMNS) != 0)
+            mask = mirrorColumns(mask);
+        if ((symmetry & MIRROR_ROWS) != 0)
+            mask = Long.reverseBytes(mask); // one byte per row
+        return mask;
+    }
+
+    /**
+     * Writes the 8 images of a set at once, for the price of one transposition, which is cheaper than 8 calls of
+     * {@link #mask(long, int)}.
+     *
+     * @param mask   A set of squares.
+     * @param images Receives the image under symmetry {@code s} at index {@code s}.
+     */
+    static void images(long mask, long[] images) {
+        long transposed = transpose(mask);
+        images[0] = mask;
+        images[TRANSPOSE] = transposed;
+        images[MIRROR_COLUMNS] = mirrorColumns(mask);
+        images[TRANSPOSE | MIRROR_COLUMNS] = mirrorColumns(transposed);
+        images[MIRROR_ROWS] = Long.reverseBytes(mask);
+        images[MIRROR_ROWS | MIRROR_COLUMNS] = Long.reverseBytes(images[MIRROR_COLUMNS]);
+        images[TRANSPOSE | MIRROR_ROWS] = Long.reverseBytes(transposed);
+        images[TRANSPOSE | MIRROR_ROWS | MIRROR_COLUMNS] = Long.reverseBytes(images[TRANSPOSE | MIRROR_COLUMNS]);
+    }
+
+    /**
+     * Writes the image of a position into another board. The player to move and the inventories are kept,
+     * and the hash is recomputed.
+     *
+     * @param board    The position.
+     * @param symmetry A symmetry, from 0 to 7.
+     * @param into     Receives the image; its undo stack is cleared.
+     */
+    public static void transform(Bitboard board, int symmetry, Bitboard into) {
+        into.copyFrom(board);
+        into.first = mask(board.first, symmetry);
+        into.second = mask(board.second, symmetry);
+        into.unflippable = mask(board.unflippable, symmetry);
+        into.bombs = mask(board.bombs, symmetry);
+        into.hash = Zobrist.hash(into);
+    }
+
+    /**
+     * @param board A position.
+     * @return The symmetry whose image of the position has the smallest hash (the smallest such symmetry
+     * when the position is itself symmetric).
+     */
+    public static int canonicalSymmetry(Bitboard board) {
+        int best = 0;
+        long bestHash = board.hash;
+        for (int s = 1; s < COUNT; s++) {
+            long hash = imageHash(board, s);
+            if (hash < bestHash) {
+                bestHash = hash;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param board A position.
+     * @return The smallest Zobrist hash of the 8 images of the position, the same for all of them.
+     */
+    public static long canonicalHash(Bitboard board) {
+        long best = board.hash;
+        for (int s = 1; s < COUNT; s++)
+            best = Math.min(best, imageHash(board, s));
+        return best;
+    }
+
+    /**
+     * @return The Zobrist hash of the image of the position, without building it. Only the discs move,
+     * so the keys of the player to move and of the inventories are those of the position itself.
+     */
+    static long imageHash(Bitboard board, int symmetry) {
+        long hash = board.hash;
+        for (long discs = board.first | board.second; discs != 0; discs &= discs - 1) {
+            int square = Long.numberOfTrailingZeros(discs);
+            boolean firstOwns = (board.first & (1L << square)) != 0;
+            int type = board.typeAt(square);
+            hash ^= Zobrist.disc(firstOwns, type, square) ^ Zobrist.disc(firstOwns, type, SQUARES[symmetry][square]);
+        }
+        return hash;
+    }
+
+    // Swaps rows and columns: bit row * 8 + col goes to col * 8 + row
+    private static long transpose(long x) {
+        long t = 0x0f0f0f0f00000000L & (x ^ (x << 28));
+        x ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (x ^ (x << 14));
+        x ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (x ^ (x << 7));
+        x ^= t ^ (t >>> 7);
+        return x;
+    }
+
+    // Reverses the bits of every byte: column col goes to column 7 - col
+    private static long mirrorColumns(long x) {
+        x = ((x >>> 1) & 0x5555555555555555L) | ((x & 0x5555555555555555L) << 1);
+        x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+        x = ((x >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((x & 0x0f0f0f0f0f0f0f0fL) << 4);
+        return x;
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size transposition table for AI search, stored in two primitive long arrays.
+ * Each entry packs the best move, the search depth, the bound type, a generation counter and the score
+ * into one long. The key array holds {@code hash ^ data}, so a reader can tell whether the two words of
+ * an entry belong together: an entry torn by a concurrent write simply fails the check and is ignored.
+ * This makes the table safe to share between parallel searchers without any locking.
+ * Replacement is depth-preferred: an entry is only overwritten by a deeper (or equally deep) search of
+ * another position, unless it was stored during an older search.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1; // the score is a lower bound (fail high)
+    public static final int UPPER = 2; // the score is an upper bound (fail low)
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private volatile int generation;
+
+    /**
+     * Creates a table with the given number of entries, rounded down to a power of two.
+     *
+     * @param entries The requested number of entries (each entry takes 16 bytes).
+     */
+    public TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, 2));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Creates a table using about the given amount of memory.
+     *
+     * @param megabytes The memory to use, in megabytes.
+     * @return The new table.
+     */
+    public static TranspositionTable ofMegabytes(int megabytes) {
+        return new TranspositionTable((int) Math.min(1L << 30, (long) megabytes * (1 << 20) / 16));
+    }
+
+    /**
+     * Starts a new search: entries of the previous searches may now be replaced regardless of their depth.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xff;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Looks a position up.
+     *
+     * @param hash The Zobrist hash of the position.
+     * @return The packed entry (read it with the static accessors), or 0 if the position is not in the table.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & mask;
+        long entry = data[index];
+        if ((keys[index] ^ entry) != hash)
+            return 0;
+        return entry;
+    }
+
+    /**
+     * Stores the result of a search, unless the slot holds a deeper search of another position
+     * from the current generation.
+     *
+     * @param hash  The Zobrist hash of the position.
+     * @param move  The best move found, or -1 if none.
+     * @param depth The remaining depth the position was searched to.
+     * @param bound EXACT, LOWER or UPPER.
+     * @param score The score of the position.
+     */
+    public void store(long hash, int move, int depth, int bound, int score) {
+        int index = (int) hash & mask;
+        long old = data[index];
+        boolean sameKey = (keys[index] ^ old) == hash;
+        if (old != 0 && !sameKey && generation(old) == generation && depth(old) > depth)
+            return;
+        long entry = ((long) score << 32)
+                | ((long) generation << 18)
+                | ((long) bound << 16)
+                | ((long) (depth & 0xff) << 8)
+                | ((move + 1) & 0xff);
+        data[index] = entry;
+        keys[index] = hash ^ entry;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0xff) - 1;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 8) & 0xff;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 16) & 0x3;
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 18) & 0xff;
+    }
+
+    /**
+     * @return The number of entries of the table.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+}
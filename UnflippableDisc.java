@@ -0,0 +1,30 @@
+/**
+ * A special disc that can never be flipped once it is placed on the board.
+ */
+public class UnflippableDisc implements Disc {
+    private Player owner;
+
+    /**
+     * Creates a new disc owned by the given player.
+     *
+     * @param owner The player who owns the disc.
+     */
+    public UnflippableDisc(Player owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public Player getOwner() {
+        return owner;
+    }
+
+    @Override
+    public void setOwner(Player player) {
+        this.owner = player;
+    }
+
+    @Override
+    public String getType() {
+        return "⭕";
+    }
+}
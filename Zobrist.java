@@ -0,0 +1,72 @@
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of {@link Bitboard} positions.
+ * The hash of a position is the XOR of one key per occupied square (chosen by owner and disc type),
+ * a key when the second player is to move, and one key per player for each of its remaining
+ * bomb and unflippable counts. Since every component is XORed, the hash can be updated incrementally
+ * when a move places a disc, flips discs and consumes a special disc.
+ */
+public final class Zobrist {
+    // [owner: 0 = first player, 1 = second player][type][square]
+    private static final long[][][] DISC = new long[2][3][64];
+    // The key to XOR when a disc of the given type on the square changes owner
+    static final long[][] FLIP = new long[3][64];
+    static final long SECOND_TO_MOVE;
+    // [player][remaining count]
+    private static final long[][] BOMBS = new long[2][Player.initial_number_of_bombs + 1];
+    private static final long[][] UNFLIPPABLES = new long[2][Player.initial_number_of_unflippedable + 1];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eed_0f_5eedL); // fixed seed: hashes are reproducible
+        for (int owner = 0; owner < 2; owner++)
+            for (int type = 0; type < 3; type++)
+                for (int square = 0; square < 64; square++)
+                    DISC[owner][type][square] = random.nextLong();
+        for (int type = 0; type < 3; type++)
+            for (int square = 0; square < 64; square++)
+                FLIP[type][square] = DISC[0][type][square] ^ DISC[1][type][square];
+        SECOND_TO_MOVE = random.nextLong();
+        for (int player = 0; player < 2; player++) {
+            for (int i = 0; i < BOMBS[player].length; i++)
+                BOMBS[player][i] = random.nextLong();
+            for (int i = 0; i < UNFLIPPABLES[player].length; i++)
+                UNFLIPPABLES[player][i] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    static long disc(boolean firstPlayer, int type, int square) {
+        return DISC[firstPlayer ? 0 : 1][type][square];
+    }
+
+    static long bombs(boolean firstPlayer, int remaining) {
+        return BOMBS[firstPlayer ? 0 : 1][remaining];
+    }
+
+    static long unflippables(boolean firstPlayer, int remaining) {
+        return UNFLIPPABLES[firstPlayer ? 0 : 1][remaining];
+    }
+
+    /**
+     * Computes the hash of a position from scratch.
+     *
+     * @param board The position to hash.
+     * @return The Zobrist hash of the position.
+     */
+    public static long hash(Bitboard board) {
+        long hash = 0;
+        for (int square = 0; square < 64; square++) {
+            int type = board.typeAt(square);
+            if (type >= 0)
+                hash ^= disc((board.first & (1L << square)) != 0, type, square);
+        }
+        if (!board.firstToMove)
+            hash ^= SECOND_TO_MOVE;
+        hash ^= bombs(true, board.firstBombs) ^ bombs(false, board.secondBombs);
+        hash ^= unflippables(true, board.firstUnflippables) ^ unflippables(false, board.secondUnflippables);
+        return hash;
+    }
+}